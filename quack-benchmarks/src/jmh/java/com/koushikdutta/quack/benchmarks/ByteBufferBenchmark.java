@@ -0,0 +1,44 @@
+package com.koushikdutta.quack.benchmarks;
+
+import com.koushikdutta.quack.JavaScriptObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ByteBuffers passed to JavaScript and back.
+ */
+public class ByteBufferBenchmark extends QuackBenchmark {
+    @Param({"16", "4096", "1048576"})
+    public int size;
+
+    JavaScriptObject identity;
+    JavaScriptObject create;
+    ByteBuffer heap;
+    ByteBuffer direct;
+
+    @Override
+    protected void setup() {
+        identity = quack.evaluateForJavaScriptObject("(function(b) { return b; })");
+        create = quack.evaluateForJavaScriptObject("(function(size) { return new Uint8Array(size); })");
+        heap = ByteBuffer.allocate(size);
+        direct = ByteBuffer.allocateDirect(size);
+    }
+
+    @Benchmark
+    public Object heapRoundTrip() {
+        return identity.call(heap);
+    }
+
+    @Benchmark
+    public Object directRoundTrip() {
+        return identity.call(direct);
+    }
+
+    @Benchmark
+    public Object fromJavaScript() {
+        return quack.coerceJavaScriptToJava(ByteBuffer.class, create.call(size));
+    }
+}
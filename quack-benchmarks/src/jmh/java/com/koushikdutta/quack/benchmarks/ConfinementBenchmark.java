@@ -0,0 +1,75 @@
+package com.koushikdutta.quack.benchmarks;
+
+import com.koushikdutta.quack.JavaScriptObject;
+import com.koushikdutta.quack.QuackContext;
+import com.koushikdutta.quack.QuackContextOptions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the monitor based QuackContext entry path against a thread confined context
+ * entered by its owner thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConfinementBenchmark {
+    @Param({"monitor", "confined"})
+    public String mode;
+
+    QuackContext quack;
+    JavaScriptObject array;
+    JavaScriptObject object;
+    JavaScriptObject function;
+    int index;
+
+    // thread scoped state is set up on the benchmark thread, which becomes the owner.
+    @Setup
+    public void setup() {
+        NativeLibrary.load();
+        QuackContextOptions options = new QuackContextOptions();
+        if ("confined".equals(mode))
+            options.setThreadConfined(null);
+        quack = QuackContext.create(options);
+        array = quack.evaluateForJavaScriptObject("(function() { var a = []; for (var i = 0; i < 1024; i++) a.push(i); return a; })()");
+        object = quack.evaluateForJavaScriptObject("({})");
+        function = quack.evaluateForJavaScriptObject("(function(a) { return a; })");
+    }
+
+    @TearDown
+    public void tearDown() {
+        quack.close();
+    }
+
+    @Benchmark
+    public Object getKeyInteger() {
+        index = (index + 1) & 1023;
+        return array.get(index);
+    }
+
+    @Benchmark
+    public boolean setKeyString() {
+        return object.set("key", index++);
+    }
+
+    @Benchmark
+    public Object call() {
+        return function.call(index++);
+    }
+}
@@ -0,0 +1,25 @@
+package com.koushikdutta.quack.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+public class EvaluateBenchmark extends QuackBenchmark {
+    @Override
+    protected void setup() {
+        quack.evaluate("var counter = 0; function increment() { return ++counter; }");
+    }
+
+    @Benchmark
+    public Object evaluateExpression() {
+        return quack.evaluate("1 + 2");
+    }
+
+    @Benchmark
+    public Object evaluateCall() {
+        return quack.evaluate("increment()");
+    }
+
+    @Benchmark
+    public Object evaluateFunction() {
+        return quack.evaluate("(function(a, b) { return a + b; })(1, 2)");
+    }
+}
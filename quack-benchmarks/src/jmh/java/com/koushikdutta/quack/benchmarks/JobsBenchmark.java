@@ -0,0 +1,33 @@
+package com.koushikdutta.quack.benchmarks;
+
+import com.koushikdutta.quack.JavaScriptObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Promise job draining. Jobs queued by a call are run before the call returns to Java.
+ */
+public class JobsBenchmark extends QuackBenchmark {
+    @Param({"1", "100"})
+    public int jobs;
+
+    JavaScriptObject schedule;
+
+    @Override
+    protected void setup() {
+        schedule = quack.evaluateForJavaScriptObject(
+                "(function(count) {\n" +
+                "  var total = 0;\n" +
+                "  for (var i = 0; i < count; i++) {\n" +
+                "    Promise.resolve(i).then(function(v) { total += v; });\n" +
+                "  }\n" +
+                "  return count;\n" +
+                "})");
+    }
+
+    @Benchmark
+    public Object drain() {
+        return schedule.call(jobs);
+    }
+}
@@ -0,0 +1,74 @@
+package com.koushikdutta.quack.benchmarks;
+
+import com.koushikdutta.quack.JavaScriptObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * JavaScript calling into Java methods, exercising JavaMethodObject overload resolution.
+ */
+public class MethodDispatchBenchmark extends QuackBenchmark {
+    public static class Target {
+        public int value;
+
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        public double add(double a, double b) {
+            return a + b;
+        }
+
+        public String add(String a, String b) {
+            return a + b;
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        public void noop() {
+        }
+    }
+
+    JavaScriptObject callInts;
+    JavaScriptObject callDoubles;
+    JavaScriptObject callStrings;
+    JavaScriptObject callNoop;
+    JavaScriptObject getProperty;
+
+    @Override
+    protected void setup() {
+        quack.getGlobalObject().set("target", new Target());
+        callInts = quack.evaluateForJavaScriptObject("(function() { return target.add(1, 2); })");
+        callDoubles = quack.evaluateForJavaScriptObject("(function() { return target.add(1.5, 2.5); })");
+        callStrings = quack.evaluateForJavaScriptObject("(function() { return target.add('a', 'b'); })");
+        callNoop = quack.evaluateForJavaScriptObject("(function() { target.noop(); })");
+        getProperty = quack.evaluateForJavaScriptObject("(function() { return target.value; })");
+    }
+
+    @Benchmark
+    public Object overloadInts() {
+        return callInts.call();
+    }
+
+    @Benchmark
+    public Object overloadDoubles() {
+        return callDoubles.call();
+    }
+
+    @Benchmark
+    public Object overloadStrings() {
+        return callStrings.call();
+    }
+
+    @Benchmark
+    public Object noArgs() {
+        return callNoop.call();
+    }
+
+    @Benchmark
+    public Object field() {
+        return getProperty.call();
+    }
+}
@@ -0,0 +1,19 @@
+package com.koushikdutta.quack.benchmarks;
+
+import java.io.File;
+
+class NativeLibrary {
+    private static boolean loaded;
+
+    // for non-android jvm, load the library built by quack-jni.
+    static synchronized void load() {
+        if (loaded)
+            return;
+        String dir = System.getProperty("quack.library.dir", "quack-jni/build/lib/main/release");
+        File library = new File(dir, System.mapLibraryName("quack-jni"));
+        if (!library.exists())
+            library = new File(dir, "libquack-jni.dylib");
+        System.load(library.getAbsolutePath());
+        loaded = true;
+    }
+}
@@ -0,0 +1,80 @@
+package com.koushikdutta.quack.benchmarks;
+
+import com.koushikdutta.quack.QuackContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Octane suite, loaded from the bundled test assets.
+ * Duktape does not pass the full suite due to a const limit, so only QuickJS is run
+ * by default. Individual suites can be run on either engine with -p.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Thread)
+public class OctaneBenchmark {
+    static final String[] FILES = {
+            "base.js",
+            "box2d.js",
+            "code-load.js",
+            "crypto.js",
+            "deltablue.js",
+            "earley-boyer.js",
+            "gbemu-part1.js",
+            "gbemu-part2.js",
+            "navier-stokes.js",
+            "pdfjs.js",
+            "raytrace.js",
+            "regexp.js",
+            "richards.js",
+            "splay.js",
+            "zlib-data.js",
+            "zlib.js",
+    };
+
+    @Param({"quickjs"})
+    public String engine;
+
+    String[] scripts;
+    String runner;
+
+    @Setup
+    public void setup() {
+        NativeLibrary.load();
+        scripts = new String[FILES.length];
+        for (int i = 0; i < FILES.length; i++) {
+            scripts[i] = Scripts.read("octane/" + FILES[i]);
+        }
+        runner = Scripts.read("octane.js");
+    }
+
+    @Benchmark
+    public String octane() {
+        QuackContext quack = QuackContext.create("quickjs".equals(engine));
+        try {
+            for (int i = 0; i < FILES.length; i++) {
+                quack.evaluate(scripts[i], "octane/" + FILES[i]);
+            }
+            quack.evaluate(runner, "octane.js");
+            return quack.evaluateForJavaScriptObject("getResults").call().toString();
+        }
+        finally {
+            quack.close();
+        }
+    }
+}
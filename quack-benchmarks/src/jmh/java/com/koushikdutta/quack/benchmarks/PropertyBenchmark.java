@@ -0,0 +1,140 @@
+package com.koushikdutta.quack.benchmarks;
+
+import com.koushikdutta.quack.JavaScriptObject;
+import com.koushikdutta.quack.QuackPropertyKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * JavaScriptObject.call and property get/set, boxed and primitive.
+ */
+public class PropertyBenchmark extends QuackBenchmark {
+    JavaScriptObject object;
+    JavaScriptObject array;
+    JavaScriptObject identity;
+    JavaScriptObject add;
+    QuackPropertyKey nameKey;
+    QuackPropertyKey valueKey;
+    String[] recordKeys;
+    Object[] recordValues;
+    int index;
+
+    @Override
+    protected void setup() {
+        object = quack.evaluateForJavaScriptObject("({ name: 'quack', value: 42 })");
+        array = quack.evaluateForJavaScriptObject("(function() { var a = []; for (var i = 0; i < 1024; i++) a.push(i); return a; })()");
+        identity = quack.evaluateForJavaScriptObject("(function(a) { return a; })");
+        add = quack.evaluateForJavaScriptObject("(function(a, b) { return a + b; })");
+        recordKeys = new String[50];
+        recordValues = new Object[50];
+        for (int i = 0; i < recordKeys.length; i++) {
+            recordKeys[i] = "field" + i;
+            recordValues[i] = i;
+        }
+        quack.evaluateForJavaScriptObject("(function(o) { for (var i = 0; i < 50; i++) o['field' + i] = i; })").call(object);
+        nameKey = quack.intern("name");
+        valueKey = quack.intern("value");
+    }
+
+    @Benchmark
+    public Object callNoArgs() {
+        return identity.call();
+    }
+
+    @Benchmark
+    public Object callInts() {
+        return add.call(index++, 1);
+    }
+
+    @Benchmark
+    public Object callStrings() {
+        return add.call("hello", "world");
+    }
+
+    @Benchmark
+    public Object getString() {
+        return object.get("name");
+    }
+
+    @Benchmark
+    public boolean setString() {
+        return object.set("value", index++);
+    }
+
+    @Benchmark
+    public Object getInteger() {
+        index = (index + 1) & 1023;
+        return array.get(index);
+    }
+
+    @Benchmark
+    public boolean setInteger() {
+        index = (index + 1) & 1023;
+        return array.set(index, (Object)index);
+    }
+
+    @Benchmark
+    public double callDoubles() {
+        return add.callDouble(index++, 1);
+    }
+
+    @Benchmark
+    public int getIntString() {
+        return object.getInt("value");
+    }
+
+    @Benchmark
+    public boolean setIntString() {
+        return object.setInt("value", index++);
+    }
+
+    @Benchmark
+    public double getDoubleInteger() {
+        index = (index + 1) & 1023;
+        return array.getDouble(index);
+    }
+
+    @Benchmark
+    public boolean setDoubleInteger() {
+        index = (index + 1) & 1023;
+        return array.setDouble(index, index);
+    }
+
+    @Benchmark
+    public Object getInterned() {
+        return object.get(nameKey);
+    }
+
+    @Benchmark
+    public boolean setInterned() {
+        return object.set(valueKey, index++);
+    }
+
+    @Benchmark
+    public Object getRecord() {
+        Object last = null;
+        for (String key: recordKeys) {
+            last = object.get(key);
+        }
+        return last;
+    }
+
+    @Benchmark
+    public Object[] getRecordBatched() {
+        return object.getAll(recordKeys);
+    }
+
+    @Benchmark
+    public boolean setRecord() {
+        boolean ret = true;
+        for (int i = 0; i < recordKeys.length; i++) {
+            ret &= object.set(recordKeys[i], recordValues[i]);
+        }
+        return ret;
+    }
+
+    @Benchmark
+    public boolean setRecordBatched() {
+        return object.setAll(recordKeys, recordValues);
+    }
+}
@@ -0,0 +1,53 @@
+package com.koushikdutta.quack.benchmarks;
+
+import com.koushikdutta.quack.JavaScriptObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Java interfaces implemented by JavaScript objects, via coerceJavaScriptToJava.
+ */
+public class ProxyBenchmark extends QuackBenchmark {
+    public interface Calculator {
+        int add(int a, int b);
+        String getName();
+    }
+
+    @Param({"wrapped", "direct"})
+    public String dispatch;
+
+    JavaScriptObject calculatorObject;
+    JavaScriptObject calculatorFunction;
+    Calculator calculator;
+    Runnable runnable;
+
+    @Override
+    protected void setup() {
+        quack.setDirectProxyDispatch("direct".equals(dispatch));
+        calculatorObject = quack.evaluateForJavaScriptObject("({ add: function(a, b) { return a + b; }, getName: function() { return 'calculator'; } })");
+        calculatorFunction = quack.evaluateForJavaScriptObject("(function() {})");
+        calculator = (Calculator)quack.coerceJavaScriptToJava(Calculator.class, calculatorObject);
+        runnable = (Runnable)quack.coerceJavaScriptToJava(Runnable.class, calculatorFunction);
+    }
+
+    @Benchmark
+    public Object coerce() {
+        return quack.coerceJavaScriptToJava(Calculator.class, calculatorObject);
+    }
+
+    @Benchmark
+    public int invokeAdd() {
+        return calculator.add(1, 2);
+    }
+
+    @Benchmark
+    public String invokeGetName() {
+        return calculator.getName();
+    }
+
+    @Benchmark
+    public void invokeFunctionalInterface() {
+        runnable.run();
+    }
+}
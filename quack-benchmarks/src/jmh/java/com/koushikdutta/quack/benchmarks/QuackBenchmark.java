@@ -0,0 +1,52 @@
+package com.koushikdutta.quack.benchmarks;
+
+import com.koushikdutta.quack.QuackContext;
+import com.koushikdutta.quack.QuackContextOptions;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base state for the boundary benchmarks: every suite runs against both engines.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public abstract class QuackBenchmark {
+    @Param({"quickjs", "duktape"})
+    public String engine;
+
+    protected QuackContext quack;
+
+    @Setup
+    public void setupContext() {
+        NativeLibrary.load();
+        quack = QuackContext.create(options());
+        setup();
+    }
+
+    @TearDown
+    public void tearDownContext() {
+        quack.close();
+    }
+
+    protected QuackContextOptions options() {
+        return new QuackContextOptions().setUseQuickJS("quickjs".equals(engine));
+    }
+
+    protected abstract void setup();
+}
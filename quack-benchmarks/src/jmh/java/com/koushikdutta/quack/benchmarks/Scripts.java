@@ -0,0 +1,28 @@
+package com.koushikdutta.quack.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Loads script corpora bundled as benchmark resources (see quack-benchmarks/build.gradle).
+ */
+class Scripts {
+    static String read(String resource) {
+        try (InputStream in = Scripts.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null)
+                throw new IllegalArgumentException("missing script resource: " + resource);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.koushikdutta.quack.benchmarks;
+
+import com.koushikdutta.quack.JavaScriptObject;
+import com.koushikdutta.quack.QuackContextOptions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Primitive arrays passed to JavaScript and back, as Java objects or as typed arrays.
+ */
+public class TypedArrayBenchmark extends QuackBenchmark {
+    @Param({"16", "100000"})
+    public int size;
+
+    @Param({"object", "typed"})
+    public String coercion;
+
+    JavaScriptObject sum;
+    JavaScriptObject create;
+    double[] doubles;
+
+    @Override
+    protected QuackContextOptions options() {
+        return super.options().setTypedArrayCoercion("typed".equals(coercion));
+    }
+
+    @Override
+    protected void setup() {
+        sum = quack.evaluateForJavaScriptObject("(function(a) { var t = 0; for (var i = 0; i < a.length; i++) t += a[i]; return t; })");
+        create = quack.evaluateForJavaScriptObject("(function(size) { var a = new Float64Array(size); for (var i = 0; i < size; i++) a[i] = i; return a; })");
+        doubles = new double[size];
+        for (int i = 0; i < size; i++) {
+            doubles[i] = i;
+        }
+    }
+
+    @Benchmark
+    public Object sumToJavaScript() {
+        return sum.call(doubles);
+    }
+
+    @Benchmark
+    public Object fromJavaScript() {
+        return quack.coerceJavaScriptToJava(double[].class, create.call(size));
+    }
+}
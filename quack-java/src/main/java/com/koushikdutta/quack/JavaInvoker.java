@@ -0,0 +1,284 @@
+package com.koushikdutta.quack;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * A cached invoker for a Java method, constructor, or field that is exposed to JavaScript.
+ * Invokers are built on MethodHandles where available, and fall back to reflection
+ * (ie, Android prior to API 26, or members that are not accessible to a lookup).
+ * Exceptions thrown by the target are rethrown as is, rather than wrapped in an
+ * InvocationTargetException. The coercion for each parameter is resolved when the invoker
+ * is built, and arguments that do not match a parameter after coercion are rejected with an
+ * IllegalArgumentException, as reflection does.
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+final class JavaInvoker {
+    interface Target {
+        Object invoke(Object thiz, Object[] args) throws Throwable;
+    }
+
+    // coerces a JavaScript argument to a parameter type.
+    interface Coercer {
+        Object coerce(QuackContext quackContext, Object o);
+    }
+
+    private static final Object[] NO_ARGS = new Object[0];
+    private static final boolean supportsMethodHandles = checkMethodHandles();
+
+    private static boolean checkMethodHandles() {
+        try {
+            Class.forName("java.lang.invoke.MethodHandles");
+            return true;
+        }
+        catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private final Target target;
+    private final Class[] parameterTypes;
+    private final Coercer[] coercers;
+    private final Class varargType;
+    private final Coercer varargCoercer;
+    private final Object member;
+
+    private JavaInvoker(Target target, Class[] parameterTypes, boolean isVarArgs, Object member) {
+        this.target = target;
+        this.parameterTypes = parameterTypes;
+        this.varargType = isVarArgs ? parameterTypes[parameterTypes.length - 1].getComponentType() : null;
+        this.varargCoercer = isVarArgs ? coercer(varargType) : null;
+        this.member = member;
+
+        coercers = new Coercer[isVarArgs ? parameterTypes.length - 1 : parameterTypes.length];
+        for (int i = 0; i < coercers.length; i++) {
+            coercers[i] = coercer(parameterTypes[i]);
+        }
+    }
+
+    // numbers arrive from JavaScript as doubles, so the common cases are checked before the
+    // context's coercions.
+    private static Coercer coercer(Class type) {
+        if (type == double.class || type == Double.class)
+            return (quackContext, o) -> o instanceof Double ? o : coerce(quackContext, type, o);
+        if (type == int.class || type == Integer.class)
+            return (quackContext, o) -> o instanceof Integer ? o : o instanceof Double ? (Object)((Double)o).intValue() : coerce(quackContext, type, o);
+        if (type == long.class || type == Long.class)
+            return (quackContext, o) -> o instanceof Long ? o : o instanceof Double ? (Object)((Double)o).longValue() : coerce(quackContext, type, o);
+        if (type == float.class || type == Float.class)
+            return (quackContext, o) -> o instanceof Float ? o : o instanceof Double ? (Object)((Double)o).floatValue() : coerce(quackContext, type, o);
+        if (type == short.class || type == Short.class)
+            return (quackContext, o) -> o instanceof Short ? o : o instanceof Double ? (Object)((Double)o).shortValue() : coerce(quackContext, type, o);
+        if (type == byte.class || type == Byte.class)
+            return (quackContext, o) -> o instanceof Byte ? o : o instanceof Double ? (Object)((Double)o).byteValue() : coerce(quackContext, type, o);
+        if (type == boolean.class || type == Boolean.class)
+            return (quackContext, o) -> o instanceof Boolean ? o : coerce(quackContext, type, o);
+        if (type == String.class)
+            return (quackContext, o) -> o instanceof String ? o : coerce(quackContext, type, o);
+        return (quackContext, o) -> coerce(quackContext, type, o);
+    }
+
+    private static Object coerce(QuackContext quackContext, Class type, Object o) {
+        Object coerced = quackContext.coerceJavaScriptToJava(type, o);
+        if (coerced == null) {
+            if (type.isPrimitive())
+                throw new IllegalArgumentException("null for primitive parameter " + type.getName());
+            return null;
+        }
+        if (!box(type).isInstance(coerced))
+            throw new IllegalArgumentException("argument type mismatch: " + coerced.getClass().getName() + " is not " + type.getName());
+        return coerced;
+    }
+
+    private static Class box(Class type) {
+        if (!type.isPrimitive())
+            return type;
+        if (type == int.class)
+            return Integer.class;
+        if (type == double.class)
+            return Double.class;
+        if (type == long.class)
+            return Long.class;
+        if (type == float.class)
+            return Float.class;
+        if (type == short.class)
+            return Short.class;
+        if (type == byte.class)
+            return Byte.class;
+        if (type == char.class)
+            return Character.class;
+        if (type == boolean.class)
+            return Boolean.class;
+        return Void.class;
+    }
+
+    static JavaInvoker get(Method method) {
+        return QuackContext.javaInvokers.memoize(() -> {
+            Target target = null;
+            if (supportsMethodHandles)
+                target = Handles.method(method);
+            if (target == null) {
+                target = (thiz, args) -> {
+                    try {
+                        return method.invoke(thiz, args);
+                    }
+                    catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                };
+            }
+            return new JavaInvoker(target, method.getParameterTypes(), method.isVarArgs(), method);
+        }, method.getDeclaringClass(), method);
+    }
+
+    static JavaInvoker get(Constructor constructor) {
+        return QuackContext.javaInvokers.memoize(() -> {
+            Target target = null;
+            if (supportsMethodHandles)
+                target = Handles.constructor(constructor);
+            if (target == null) {
+                target = (thiz, args) -> {
+                    try {
+                        return constructor.newInstance(args);
+                    }
+                    catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                };
+            }
+            return new JavaInvoker(target, constructor.getParameterTypes(), constructor.isVarArgs(), constructor);
+        }, constructor.getDeclaringClass(), constructor);
+    }
+
+    static JavaInvoker getter(Field field) {
+        return QuackContext.javaInvokers.memoize(() -> {
+            Target target = null;
+            if (supportsMethodHandles)
+                target = Handles.getter(field);
+            if (target == null)
+                target = (thiz, args) -> field.get(thiz);
+            return new JavaInvoker(target, new Class[0], false, field);
+        }, field.getDeclaringClass(), field, "get");
+    }
+
+    static JavaInvoker setter(Field field) {
+        return QuackContext.javaInvokers.memoize(() -> {
+            Target target = null;
+            if (supportsMethodHandles)
+                target = Handles.setter(field);
+            if (target == null) {
+                target = (thiz, args) -> {
+                    field.set(thiz, args[0]);
+                    return null;
+                };
+            }
+            return new JavaInvoker(target, new Class[] { field.getType() }, false, field);
+        }, field.getDeclaringClass(), field, "set");
+    }
+
+    /**
+     * Coerce JavaScript arguments to the parameter types of this member,
+     * collecting any trailing arguments into the varargs array.
+     */
+    Object[] coerceArgs(QuackContext quackContext, Object[] args) {
+        if (parameterTypes.length == 0) {
+            if (args.length != 0)
+                System.err.println("dropping javascript to java arguments on the floor: " + args.length + " " + member.toString());
+            return NO_ARGS;
+        }
+        int numParameters = coercers.length;
+
+        Object[] coerced = new Object[parameterTypes.length];
+        int i = 0;
+        for (; i < numParameters; i++) {
+            // missing arguments are undefined, which is rejected for primitive parameters.
+            coerced[i] = coercers[i].coerce(quackContext, i < args.length ? args[i] : null);
+        }
+        if (varargType != null) {
+            int count = Math.max(0, args.length - numParameters);
+            Object varargs = Array.newInstance(varargType, count);
+            for (int j = 0; j < count; j++, i++) {
+                Array.set(varargs, j, varargCoercer.coerce(quackContext, args[i]));
+            }
+            coerced[numParameters] = varargs;
+        }
+        else if (i < args.length) {
+            System.err.println("dropping javascript to java arguments on the floor: " + (args.length - i) + " " + member.toString());
+        }
+        return coerced;
+    }
+
+    /**
+     * Invoke the member with arguments that have already been coerced. The receiver
+     * is ignored for static members and constructors.
+     */
+    Object invoke(Object thiz, Object[] coerced) throws Throwable {
+        return target.invoke(thiz, coerced);
+    }
+
+    @Override
+    public String toString() {
+        return member.toString();
+    }
+
+    // MethodHandles are only referenced from this class, so it is never loaded
+    // where they are unavailable.
+    private static class Handles {
+        private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        // adapt a handle to (Object thiz, Object[] args)Object.
+        private static Target spread(MethodHandle handle, boolean hasReceiver, int parameterCount) {
+            if (!hasReceiver)
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            handle = handle.asType(MethodType.genericMethodType(parameterCount + 1))
+                    .asSpreader(Object[].class, parameterCount);
+            MethodHandle spreader = handle;
+            return (thiz, args) -> (Object)spreader.invokeExact(thiz, args);
+        }
+
+        static Target method(Method method) {
+            try {
+                MethodHandle handle = lookup.unreflect(method).asFixedArity();
+                return spread(handle, !Modifier.isStatic(method.getModifiers()), method.getParameterTypes().length);
+            }
+            catch (Throwable e) {
+                return null;
+            }
+        }
+
+        static Target constructor(Constructor constructor) {
+            try {
+                MethodHandle handle = lookup.unreflectConstructor(constructor).asFixedArity();
+                return spread(handle, false, constructor.getParameterTypes().length);
+            }
+            catch (Throwable e) {
+                return null;
+            }
+        }
+
+        static Target getter(Field field) {
+            try {
+                return spread(lookup.unreflectGetter(field), !Modifier.isStatic(field.getModifiers()), 0);
+            }
+            catch (Throwable e) {
+                return null;
+            }
+        }
+
+        static Target setter(Field field) {
+            try {
+                return spread(lookup.unreflectSetter(field), !Modifier.isStatic(field.getModifiers()), 1);
+            }
+            catch (Throwable e) {
+                return null;
+            }
+        }
+    }
+}
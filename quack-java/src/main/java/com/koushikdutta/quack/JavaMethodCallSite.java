@@ -0,0 +1,112 @@
+package com.koushikdutta.quack;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An inline cache of overload resolution for a Java method name on a class.
+ * JavaMethodObjects are created for every property get, so call sites are shared
+ * by (class, name) rather than held by a single JavaMethodObject.
+ * The cache is monomorphic for the first argument shape, polymorphic up to
+ * POLYMORPHIC_LIMIT shapes, and then megamorphic, at which point callers fall back to
+ * the full overload resolution (which is memoized separately). Megamorphic sites share
+ * one entry per resolved method rather than creating one per call.
+ */
+@SuppressWarnings({"rawtypes"})
+final class JavaMethodCallSite {
+    static final int POLYMORPHIC_LIMIT = 4;
+
+    static final class Entry {
+        final Class[] shape;
+        final Method method;
+        final Method interfaceMethod;
+        final JavaInvoker invoker;
+
+        Entry(Class[] shape, Method method) {
+            this.shape = shape;
+            this.method = method;
+            this.interfaceMethod = QuackContext.getInterfaceMethod(method);
+            this.invoker = JavaInvoker.get(method);
+        }
+
+        boolean matches(Object[] args) {
+            if (args.length != shape.length)
+                return false;
+            for (int i = 0; i < args.length; i++) {
+                Object arg = args[i];
+                if ((arg == null ? null : arg.getClass()) != shape[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private static final Entry[] EMPTY = new Entry[0];
+    private static final Class[] EMPTY_SHAPE = new Class[0];
+
+    // copy on write, so lookups do not lock or allocate.
+    private volatile Entry[] entries = EMPTY;
+    private volatile boolean megamorphic;
+    // bounded by the overloads of the method name, so this does not grow with shapes.
+    private final ConcurrentHashMap<Method, Entry> megamorphicEntries = new ConcurrentHashMap<>();
+
+    Entry lookup(Object[] args) {
+        Entry[] entries = this.entries;
+        for (Entry entry: entries) {
+            if (entry.matches(args))
+                return entry;
+        }
+        return null;
+    }
+
+    boolean isMegamorphic() {
+        return megamorphic;
+    }
+
+    int size() {
+        return entries.length;
+    }
+
+    /**
+     * Record the resolved method for the shape of the arguments.
+     */
+    Entry add(Object[] args, Method method) {
+        if (megamorphic)
+            return megamorphicEntry(method);
+        return addShape(args, method);
+    }
+
+    private Entry megamorphicEntry(Method method) {
+        Entry entry = megamorphicEntries.get(method);
+        if (entry != null)
+            return entry;
+        // the shape of a shared entry is not matched against.
+        entry = new Entry(EMPTY_SHAPE, method);
+        Entry existing = megamorphicEntries.putIfAbsent(method, entry);
+        return existing != null ? existing : entry;
+    }
+
+    private synchronized Entry addShape(Object[] args, Method method) {
+        if (megamorphic)
+            return megamorphicEntry(method);
+
+        Entry[] entries = this.entries;
+        if (entries.length >= POLYMORPHIC_LIMIT) {
+            megamorphic = true;
+            this.entries = EMPTY;
+            return megamorphicEntry(method);
+        }
+
+        Class[] shape = new Class[args.length];
+        for (int i = 0; i < args.length; i++) {
+            shape[i] = args[i] == null ? null : args[i].getClass();
+        }
+        Entry entry = new Entry(shape, method);
+
+        Entry[] copy = new Entry[entries.length + 1];
+        System.arraycopy(entries, 0, copy, 0, entries.length);
+        copy[entries.length] = entry;
+        this.entries = copy;
+        return entry;
+    }
+}
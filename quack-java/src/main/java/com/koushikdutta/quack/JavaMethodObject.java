@@ -2,7 +2,6 @@ package com.koushikdutta.quack;
 
 //import android.util.Log;
 
-import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -23,6 +22,15 @@ public class JavaMethodObject implements QuackMethodObject {
         return thiz;
     }
 
+    /**
+     * The class that determines the methods returned by {@link #getMethods(Object)}.
+     * Method resolution is cached by this class, so subclasses that override getMethods
+     * must override this as well.
+     */
+    protected Class getMethodsClass(Object thiz) {
+        return thiz.getClass();
+    }
+
     protected Method[] getMethods(Object thiz) {
         Method[] methods = thiz.getClass().getMethods();
         if (!(thiz instanceof Class))
@@ -42,29 +50,98 @@ public class JavaMethodObject implements QuackMethodObject {
             throw new UnsupportedOperationException("can not call " + target);
         thiz = quackContext.coerceJavaScriptToJava(Object.class, thiz);
 
-        Method[] thisMethods = getMethods(thiz);
-        ArrayList<Class> argTypes = new ArrayList<>();
-        for (Object arg: args) {
-            if (arg == null)
-                argTypes.add(null);
-            else
-                argTypes.add(arg.getClass());
+        Class methodsClass = getMethodsClass(thiz);
+        // static methods are also resolved on the target when it is a class.
+        Class staticClass = thiz instanceof Class ? (Class)thiz : null;
+        JavaMethodCallSite site = getCallSite(methodsClass, staticClass);
+        JavaMethodCallSite.Entry entry = site.lookup(args);
+        if (entry == null) {
+            Method resolved = resolve(thiz, methodsClass, staticClass, args);
+            if (resolved == null)
+                throw new UnsupportedOperationException("can not call " + target);
+            entry = site.add(args, resolved);
+        }
+
+        Method best = entry.method;
+        thiz = getThis(thiz, best);
+
+        try {
+            Method interfaceMethod = entry.interfaceMethod;
+            QuackMethodCoercion methodCoercion = interfaceMethod == null ? null : quackContext.JavaScriptToJavaMethodCoercions.get(interfaceMethod);
+            if (methodCoercion != null)
+                return methodCoercion.invoke(interfaceMethod, thiz, args);
+
+            JavaInvoker invoker = entry.invoker;
+//            System.out.println(best.getDeclaringClass().getSimpleName() + "." + best.getName());
+            return quackContext.coerceJavaToJavaScript(invoker.invoke(thiz, invoker.coerceArgs(quackContext, args)));
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Error e) {
+            throw e;
+        }
+        catch (InvocationTargetException e) {
+            // thrown by a method coercion.
+            if (e.getTargetException() instanceof RuntimeException)
+                throw (RuntimeException)e.getTargetException();
+            if (e.getTargetException() instanceof Error)
+                throw (Error)e.getTargetException();
+            throw new RuntimeException(e.getTargetException());
+        }
+        catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // the call site and the classes it was resolved for, published together so a racing
+    // call never sees a site paired with another receiver's classes.
+    private static final class CachedCallSite {
+        final Class methodsClass;
+        final Class staticClass;
+        final JavaMethodCallSite site;
+
+        CachedCallSite(Class methodsClass, Class staticClass, JavaMethodCallSite site) {
+            this.methodsClass = methodsClass;
+            this.staticClass = staticClass;
+            this.site = site;
         }
-        Method best = QuackContext.javaObjectMethodCandidates.memoize(() -> {
+    }
+
+    // the call site is cached for the common case of a JavaMethodObject that is
+    // repeatedly called on the same receiver.
+    private volatile CachedCallSite callSite;
+
+    private JavaMethodCallSite getCallSite(Class methodsClass, Class staticClass) {
+        CachedCallSite cached = callSite;
+        if (cached != null && cached.methodsClass == methodsClass && cached.staticClass == staticClass)
+            return cached.site;
+        JavaMethodCallSite site = QuackContext.javaMethodCallSites.memoize(JavaMethodCallSite::new, methodsClass, target, staticClass);
+        callSite = new CachedCallSite(methodsClass, staticClass, site);
+        return site;
+    }
+
+    // full overload resolution, used when the call site misses or is megamorphic.
+    private Method resolve(Object thiz, Class methodsClass, Class staticClass, Object[] args) {
+        Class[] argTypes = new Class[args.length];
+        for (int i = 0; i < args.length; i++) {
+            argTypes[i] = args[i] == null ? null : args[i].getClass();
+        }
+        return QuackContext.javaObjectMethodCandidates.memoize(() -> {
             Method ret = null;
             int bestScore = Integer.MAX_VALUE;
-            for (Method method: thisMethods) {
+            for (Method method: getMethods(thiz)) {
                 if (!method.getName().equals(target)) {
                     QuackMethodName annotation = method.getAnnotation(QuackMethodName.class);
                     if (annotation == null || !annotation.name().equals(target))
                         continue;
                 }
                 // parameter count is most important
-                int score = Math.abs(argTypes.size() - method.getParameterTypes().length) * 1000;
+                int score = Math.abs(argTypes.length - method.getParameterTypes().length) * 1000;
                 // tiebreak by checking parameter types
-                for (int i = 0; i < Math.min(method.getParameterTypes().length, argTypes.size()); i++) {
+                for (int i = 0; i < Math.min(method.getParameterTypes().length, argTypes.length); i++) {
                     // check if the class is assignable or both parameters are numbers
-                    Class<?> argType = argTypes.get(i);
+                    Class<?> argType = argTypes[i];
                     Class<?> paramType = method.getParameterTypes()[i];
                     if (paramType == argType) {
                         score -= 4;
@@ -85,60 +162,7 @@ public class JavaMethodObject implements QuackMethodObject {
                 }
             }
             return ret;
-        }, target, thisMethods, argTypes.toArray());
-
-        if (best == null)
-            throw new UnsupportedOperationException("can not call " + target);
-
-        thiz = getThis(thiz, best);
-
-        try {
-            Method interfaceMethod = QuackContext.getInterfaceMethod(best);
-            QuackMethodCoercion methodCoercion = quackContext.JavaScriptToJavaMethodCoercions.get(interfaceMethod);
-            if (methodCoercion != null)
-                return methodCoercion.invoke(interfaceMethod, thiz, args);
-
-            int numParameters = best.getParameterTypes().length;
-            if (best.isVarArgs())
-                numParameters--;
-            ArrayList<Object> coerced = new ArrayList<>();
-            int i = 0;
-            for (; i < numParameters; i++) {
-                if (i < args.length)
-                    coerced.add(quackContext.coerceJavaScriptToJava(best.getParameterTypes()[i], args[i]));
-                else
-                    coerced.add(null);
-            }
-            if (best.isVarArgs()) {
-                Class varargType = best.getParameterTypes()[numParameters].getComponentType();
-                ArrayList<Object> varargs = new ArrayList<>();
-                for (; i < args.length; i++) {
-                    varargs.add(quackContext.coerceJavaScriptToJava(varargType, args[i]));
-                }
-                coerced.add(toArray(varargType, varargs));
-            }
-            else if (i < args.length) {
-                System.err.println("dropping javascript to java arguments on the floor: " + (args.length - i) + " " + best.toString());
-            }
-//            System.out.println(best.getDeclaringClass().getSimpleName() + "." + best.getName());
-            return quackContext.coerceJavaToJavaScript(best.invoke(thiz, coerced.toArray()));
-        }
-        catch (RuntimeException e) {
-            throw e;
-        }
-        catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-        }
-        catch (InvocationTargetException e) {
-            if (e.getTargetException() instanceof RuntimeException)
-                throw (RuntimeException)e.getTargetException();
-            if (e.getTargetException() instanceof Error)
-                throw (Error)e.getTargetException();
-            throw new RuntimeException(e.getTargetException());
-        }
-    }
+        }, methodsClass, target, staticClass, argTypes);
 
-    static <T> T[] toArray(Class<T> varargType, ArrayList<T> varargs) {
-        return varargs.toArray((T[])Array.newInstance(varargType, 0));
     }
 }
@@ -22,46 +22,68 @@ public final class JavaObject implements QuackObject, QuackJavaObject {
         return target;
     }
 
+    public static Method getGetterMethod(String key, Class clazz) {
+        return QuackContext.javaObjectGetter.memoize(() -> findGetterMethod(key, clazz.getMethods()), clazz, key);
+    }
+
+    /**
+     * @deprecated Use {@link #getGetterMethod(String, Class)}, which is keyed by class.
+     */
+    @Deprecated
     public static Method getGetterMethod(String key, Method[] methods) {
-        return QuackContext.javaObjectGetter.memoize(() -> {
-            for (Method method : methods) {
-                // name match, no args, and a return type
-                if (method.getParameterTypes().length != 0)
-                    continue;
-                if (method.getReturnType() == void.class || method.getReturnType() == Void.class)
-                    continue;
-                QuackProperty property = method.getAnnotation(QuackProperty.class);
-                if (property == null)
-                    continue;
-                String propName = property.name();
-                if (isEmpty(propName))
-                    propName = method.getName();
-                if (propName.equals(key))
-                    return method;
-            }
-            return null;
-        }, key, methods);
+        // the methods may come from any class, so they are part of the key.
+        return QuackContext.javaObjectGetter.memoize(() -> findGetterMethod(key, methods), Method[].class, key, methods);
+    }
+
+    private static Method findGetterMethod(String key, Method[] methods) {
+        for (Method method : methods) {
+            // name match, no args, and a return type
+            if (method.getParameterTypes().length != 0)
+                continue;
+            if (method.getReturnType() == void.class || method.getReturnType() == Void.class)
+                continue;
+            QuackProperty property = method.getAnnotation(QuackProperty.class);
+            if (property == null)
+                continue;
+            String propName = property.name();
+            if (isEmpty(propName))
+                propName = method.getName();
+            if (propName.equals(key))
+                return method;
+        }
+        return null;
+    }
+
+    public static Method getSetterMethod(String key, Class clazz) {
+        return QuackContext.javaObjectSetter.memoize(() -> findSetterMethod(key, clazz.getMethods()), clazz, key);
     }
 
+    /**
+     * @deprecated Use {@link #getSetterMethod(String, Class)}, which is keyed by class.
+     */
+    @Deprecated
     public static Method getSetterMethod(String key, Method[] methods) {
-        return QuackContext.javaObjectSetter.memoize(() -> {
-            for (Method method : methods) {
-                // name match, no args, and a return type
-                if (method.getParameterTypes().length != 1)
-                    continue;
-                if (method.getReturnType() != void.class && method.getReturnType() != Void.class)
-                    continue;
-                QuackProperty property = method.getAnnotation(QuackProperty.class);
-                if (property == null)
-                    continue;
-                String propName = property.name();
-                if (isEmpty(propName))
-                    propName = method.getName();
-                if (propName.equals(key))
-                    return method;
-            }
-            return null;
-        }, key, methods);
+        // the methods may come from any class, so they are part of the key.
+        return QuackContext.javaObjectSetter.memoize(() -> findSetterMethod(key, methods), Method[].class, key, methods);
+    }
+
+    private static Method findSetterMethod(String key, Method[] methods) {
+        for (Method method : methods) {
+            // name match, no args, and a return type
+            if (method.getParameterTypes().length != 1)
+                continue;
+            if (method.getReturnType() != void.class && method.getReturnType() != Void.class)
+                continue;
+            QuackProperty property = method.getAnnotation(QuackProperty.class);
+            if (property == null)
+                continue;
+            String propName = property.name();
+            if (isEmpty(propName))
+                propName = method.getName();
+            if (propName.equals(key))
+                return method;
+        }
+        return null;
     }
 
     private static boolean hasMethod(Class clazz, String key, boolean requiresStatic) {
@@ -79,6 +101,8 @@ public final class JavaObject implements QuackObject, QuackJavaObject {
     }
 
     private Field findField(String key, Class clazz) {
+        // static fields are looked up on the target when it is a class.
+        Class staticClass = target instanceof Class ? (Class)target : null;
         return QuackContext.javaObjectFields.memoize(() -> {
             // try to get fields
             for (Field field : clazz.getDeclaredFields()) {
@@ -86,15 +110,15 @@ public final class JavaObject implements QuackObject, QuackJavaObject {
                     return field;
             }
 
-            if (target instanceof Class) {
-                for (Field field : ((Class)target).getDeclaredFields()) {
+            if (staticClass != null) {
+                for (Field field : staticClass.getDeclaredFields()) {
                     if (field.getName().equals(key) && ((field.getModifiers() & Modifier.STATIC) != 0) && ((field.getModifiers() & Modifier.PUBLIC) != 0))
                         return field;
                 }
             }
 
             return null;
-        }, key, clazz.getDeclaredFields());
+        }, clazz, key, staticClass);
     }
 
     public Object get(String key) {
@@ -113,30 +137,38 @@ public final class JavaObject implements QuackObject, QuackJavaObject {
 
             if (f != null) {
                 try {
-                    return quackContext.coerceJavaToJavaScript(f.get(target));
-                } catch (IllegalAccessException e) {
+                    return quackContext.coerceJavaToJavaScript(JavaInvoker.getter(f).invoke(target, null));
+                }
+                catch (Error e) {
+                    throw e;
+                }
+                catch (Throwable e) {
                     throw new IllegalArgumentException(e);
                 }
             }
         }
 
-        Method g = getGetterMethod(key, clazz.getMethods());
+        Method g = getGetterMethod(key, clazz);
         if (g != null) {
             try {
-                return quackContext.coerceJavaToJavaScript(g.invoke(target));
+                return quackContext.coerceJavaToJavaScript(JavaInvoker.get(g).invoke(target, null));
             }
-            catch (Exception e) {
+            catch (Error e) {
+                throw e;
+            }
+            catch (Throwable e) {
                 throw new IllegalArgumentException(e);
             }
         }
 
+        Class staticClass = target instanceof Class ? (Class)target : null;
         Boolean m = QuackContext.javaObjectMethods.memoize(() -> {
             if (hasMethod(clazz, key, false))
                 return true;
-            if (target instanceof Class)
-                return hasMethod((Class)target, key, true);
+            if (staticClass != null)
+                return hasMethod(staticClass, key, true);
             return false;
-        }, key, clazz.getMethods());
+        }, clazz, key, staticClass);
 
         if (m)
             return new JavaMethodObject(quackContext, target, key);
@@ -205,19 +237,28 @@ public final class JavaObject implements QuackObject, QuackJavaObject {
         Field f = findField(key, clazz);
         if (f != null) {
             try {
-                f.set(target, quackContext.coerceJavaScriptToJava(f.getType(), value));
+                JavaInvoker setter = JavaInvoker.setter(f);
+                setter.invoke(target, setter.coerceArgs(quackContext, new Object[] { value }));
                 return true;
-            } catch (IllegalAccessException e) {
+            }
+            catch (Error e) {
+                throw e;
+            }
+            catch (Throwable e) {
                 throw new IllegalArgumentException(e);
             }
         }
 
-        Method s = getSetterMethod(key, clazz.getMethods());
+        Method s = getSetterMethod(key, clazz);
         if (s != null) {
             try {
-                quackContext.coerceJavaToJavaScript(s.invoke(target, quackContext.coerceJavaScriptToJava(s.getParameterTypes()[0], value)));
+                JavaInvoker setter = JavaInvoker.get(s);
+                setter.invoke(target, setter.coerceArgs(quackContext, new Object[] { value }));
             }
-            catch (Exception e) {
+            catch (Error e) {
+                throw e;
+            }
+            catch (Throwable e) {
                 throw new IllegalArgumentException(e);
             }
             return true;
@@ -309,45 +350,20 @@ public final class JavaObject implements QuackObject, QuackJavaObject {
                 }
             }
             return ret;
-        }, target, constructors, argTypes.toArray());
+        }, clazz, argTypes.toArray());
 
+        JavaInvoker invoker = JavaInvoker.get(best);
+        Object[] coerced = invoker.coerceArgs(quackContext, args);
         try {
-            int numParameters = best.getParameterTypes().length;
-            if (best.isVarArgs())
-                numParameters--;
-            ArrayList<Object> coerced = new ArrayList<>();
-            int i = 0;
-            for (; i < numParameters; i++) {
-                if (i < args.length)
-                    coerced.add(quackContext.coerceJavaScriptToJava(best.getParameterTypes()[i], args[i]));
-                else
-                    coerced.add(null);
-            }
-            if (best.isVarArgs()) {
-                Class varargType = best.getParameterTypes()[numParameters].getComponentType();
-                ArrayList<Object> varargs = new ArrayList<>();
-                for (; i < args.length; i++) {
-                    varargs.add(quackContext.coerceJavaScriptToJava(varargType, args[i]));
-                }
-                coerced.add(JavaMethodObject.toArray(varargType, varargs));
-            }
-            else if (i < args.length) {
-                System.err.println("dropping javascript to java arguments on the floor: " + (args.length - i) + " " + best.toString());
-            }
-            return quackContext.coerceJavaToJavaScript(best.newInstance(coerced.toArray()));
+            return quackContext.coerceJavaToJavaScript(invoker.invoke(null, coerced));
         }
-        catch (IllegalAccessException e) {
-            throw new IllegalArgumentException(best.toString(), e);
-        }
-        catch (InvocationTargetException e) {
-            if (e.getTargetException() instanceof RuntimeException)
-                throw (RuntimeException)e.getTargetException();
+        catch (IllegalArgumentException e) {
             throw new IllegalArgumentException(best.toString(), e);
         }
-        catch (InstantiationException e) {
-            throw new IllegalArgumentException(best.toString(), e);
+        catch (RuntimeException e) {
+            throw e;
         }
-        catch (IllegalArgumentException e) {
+        catch (Throwable e) {
             throw new IllegalArgumentException(best.toString(), e);
         }
     }
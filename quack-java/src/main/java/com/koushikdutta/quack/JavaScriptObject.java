@@ -3,10 +3,10 @@ package com.koushikdutta.quack;
 import java.lang.reflect.Array;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
 
 @SuppressWarnings({"unchecked", "rawtypes"})
 public class JavaScriptObject implements QuackObject, QuackJavaScriptObject {
@@ -17,6 +17,8 @@ public class JavaScriptObject implements QuackObject, QuackJavaScriptObject {
         this.quackContext = quackContext;
         this.context = context;
         this.pointer = pointer;
+        if (quackContext != null)
+            quackContext.registerJavaScriptObject(this);
     }
 
     @Override
@@ -60,6 +62,91 @@ public class JavaScriptObject implements QuackObject, QuackJavaScriptObject {
         return quackContext.coerceJavaScriptToJava(null, quackContext.getKeyInteger(pointer, index));
     }
 
+    private static void checkKeys(String[] keys) {
+        for (String key: keys) {
+            if (key == null)
+                throw new IllegalArgumentException("keys must not be null");
+        }
+    }
+
+    /**
+     * Get several properties at once, with a single entry into the context.
+     * @return The property values, in the order of the keys.
+     */
+    public Object[] getAll(String... keys) {
+        checkKeys(keys);
+        Object[] values = quackContext.getKeys(pointer, keys);
+        if (values == null)
+            return new Object[keys.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = quackContext.coerceJavaScriptToJava(null, values[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Set several properties at once, with a single entry into the context.
+     * @return Whether every property was set.
+     */
+    public boolean setAll(String[] keys, Object[] values) {
+        if (keys.length != values.length)
+            throw new IllegalArgumentException("keys and values must be the same length");
+        checkKeys(keys);
+        return quackContext.setKeys(pointer, keys, values);
+    }
+
+    public Object get(QuackPropertyKey key) {
+        return quackContext.coerceJavaScriptToJava(null, quackContext.getKeyInterned(pointer, key));
+    }
+
+    /**
+     * Get a property as a number, without boxing. Non-number values are converted
+     * as if by the JavaScript Number() function.
+     */
+    public double getDouble(String key) {
+        return quackContext.getKeyStringDouble(pointer, key);
+    }
+
+    public double getDouble(int index) {
+        return quackContext.getKeyIntegerDouble(pointer, index);
+    }
+
+    /**
+     * Get a property as a 32 bit integer, without boxing. Values are converted
+     * as if by the JavaScript expression (value | 0).
+     */
+    public int getInt(String key) {
+        return quackContext.getKeyStringInt(pointer, key);
+    }
+
+    public int getInt(int index) {
+        return quackContext.getKeyIntegerInt(pointer, index);
+    }
+
+    public boolean setDouble(String key, double value) {
+        return quackContext.setKeyStringDouble(pointer, key, value);
+    }
+
+    public boolean setDouble(int index, double value) {
+        return quackContext.setKeyIntegerDouble(pointer, index, value);
+    }
+
+    public boolean setInt(String key, int value) {
+        return quackContext.setKeyStringInt(pointer, key, value);
+    }
+
+    public boolean setInt(int index, int value) {
+        return quackContext.setKeyIntegerInt(pointer, index, value);
+    }
+
+    /**
+     * Call this function with number arguments, and convert the result to a number,
+     * without boxing either.
+     */
+    public double callDouble(double... args) {
+        return quackContext.callDouble(pointer, args);
+    }
+
     public Object call(Object... args) {
         quackContext.coerceJavaArgsToJavaScript(args);
         return quackContext.coerceJavaScriptToJava(null, quackContext.call(pointer, args));
@@ -72,15 +159,25 @@ public class JavaScriptObject implements QuackObject, QuackJavaScriptObject {
     }
 
     public Object callProperty(Object property, Object... args) {
+        if (property instanceof QuackPropertyKey)
+            return callProperty((QuackPropertyKey)property, args);
         quackContext.coerceJavaArgsToJavaScript(args);
         return quackContext.coerceJavaScriptToJava(null, quackContext.callProperty(pointer, property, args));
     }
 
+    public Object callProperty(QuackPropertyKey key, Object... args) {
+        quackContext.coerceJavaArgsToJavaScript(args);
+        return quackContext.coerceJavaScriptToJava(null, quackContext.callPropertyInterned(pointer, key, args));
+    }
+
     @Override
     public Object get(Object key) {
         if (key instanceof String)
             return get((String)key);
 
+        if (key instanceof QuackPropertyKey)
+            return get((QuackPropertyKey)key);
+
         if (key instanceof Number) {
             Number number = (Number)key;
             if (((Integer)number.intValue()).equals(number))
@@ -98,12 +195,20 @@ public class JavaScriptObject implements QuackObject, QuackJavaScriptObject {
         return quackContext.setKeyInteger(pointer, index, value);
     }
 
+    public boolean set(QuackPropertyKey key, Object value) {
+        return quackContext.setKeyInterned(pointer, key, value);
+    }
+
     @Override
     public boolean set(Object key, Object value) {
         if (key instanceof String) {
             return set((String)key, value);
         }
 
+        if (key instanceof QuackPropertyKey) {
+            return set((QuackPropertyKey)key, value);
+        }
+
         if (key instanceof Number) {
             Number number = (Number)key;
             if (number.doubleValue() == number.intValue()) {
@@ -194,14 +299,21 @@ public class JavaScriptObject implements QuackObject, QuackJavaScriptObject {
         if (more != null)
             Collections.addAll(classes, more);
 
-        return (T)Proxy.newProxyInstance(clazz.getClassLoader(), classes.toArray(new Class[0]), createInvocationHandler());
+        Class[] interfaces = classes.toArray(new Class[0]);
+        if (quackContext.useDirectProxyDispatch())
+            return (T)JavaScriptProxy.newDirectProxy(quackContext, this, clazz.getClassLoader(), interfaces, false);
+        return (T)JavaScriptProxy.newProxyInstance(clazz.getClassLoader(), interfaces, createInvocationHandler());
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-        if (quackContext != null)
-            quackContext.finalizeJavaScriptObject(pointer);
+    /**
+     * Bridge this promise (or any value, which is resolved as if by Promise.resolve) to a
+     * CompletableFuture, which completes with the result coerced to clazz, or with the
+     * rejection as an exception. The future completes once the context runs its pending jobs,
+     * which happens after every invocation, without blocking a thread.
+     * Requires QuickJS, since Duktape has no Promise, and CompletableFuture (ie, Android API 24).
+     */
+    public <T> CompletableFuture<T> toCompletableFuture(Class<T> clazz) {
+        return QuackFutures.toCompletableFuture(this, clazz);
     }
 
     public JSValue asJSValue() {
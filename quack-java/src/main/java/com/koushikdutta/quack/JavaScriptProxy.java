@@ -0,0 +1,194 @@
+package com.koushikdutta.quack;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+
+/**
+ * Java interface proxies backed by JavaScript objects.
+ * Proxy constructors are cached per class loader and interface set, rather than resolved
+ * through Proxy.newProxyInstance on every coercion.
+ * With direct dispatch enabled, every interface method is resolved once per interface set
+ * into a flat dispatch table (property get/set, property call, or function call), and
+ * invocations go through a single handler rather than the nested wrapper chain.
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+final class JavaScriptProxy {
+    static Object newProxyInstance(ClassLoader loader, Class[] interfaces, InvocationHandler handler) {
+        Constructor constructor = QuackContext.proxyConstructors.memoize(() -> {
+            try {
+                // the proxy class is resolved by creating a throwaway instance, since
+                // Proxy.getProxyClass is deprecated.
+                Object prototype = Proxy.newProxyInstance(loader, interfaces, (proxy, method, args) -> {
+                    throw new UnsupportedOperationException("can not call " + method);
+                });
+                return prototype.getClass().getConstructor(InvocationHandler.class);
+            }
+            catch (NoSuchMethodException e) {
+                throw new AssertionError(e);
+            }
+        }, interfaces[interfaces.length - 1], loader, interfaces);
+
+        try {
+            return constructor.newInstance(handler);
+        }
+        catch (InvocationTargetException e) {
+            if (e.getTargetException() instanceof RuntimeException)
+                throw (RuntimeException)e.getTargetException();
+            throw new IllegalArgumentException(e.getTargetException());
+        }
+        catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private enum Kind {
+        OBJECT,
+        JAVASCRIPT_OBJECT,
+        GET_PROPERTY,
+        SET_PROPERTY,
+        CALL_PROPERTY,
+        CALL_FUNCTION,
+    }
+
+    private static final class Dispatch {
+        final Kind kind;
+        final String name;
+        final Class returnType;
+        final Class[] parameterTypes;
+        final Method interfaceMethod;
+
+        Dispatch(Kind kind, String name, Method method) {
+            this.kind = kind;
+            this.name = name;
+            this.returnType = method.getReturnType();
+            this.parameterTypes = method.getParameterTypes();
+            this.interfaceMethod = kind == Kind.OBJECT || kind == Kind.JAVASCRIPT_OBJECT ? null : QuackContext.getInterfaceMethod(method);
+        }
+    }
+
+    static final class DispatchTable {
+        final HashMap<Method, Dispatch> dispatches = new HashMap<>();
+    }
+
+    private static Dispatch resolve(Method method, boolean lambda) {
+        Class declaringClass = method.getDeclaringClass();
+        if (declaringClass == Object.class)
+            return new Dispatch(Kind.OBJECT, method.getName(), method);
+        if (declaringClass == QuackJavaScriptObject.class)
+            return new Dispatch(Kind.JAVASCRIPT_OBJECT, method.getName(), method);
+        if (lambda)
+            return new Dispatch(Kind.CALL_FUNCTION, method.getName(), method);
+
+        QuackProperty property = method.getAnnotation(QuackProperty.class);
+        if (property != null) {
+            if (method.getParameterTypes().length == 0)
+                return new Dispatch(Kind.GET_PROPERTY, property.name(), method);
+            return new Dispatch(Kind.SET_PROPERTY, property.name(), method);
+        }
+
+        String methodName = method.getName();
+        QuackMethodName annotation = method.getAnnotation(QuackMethodName.class);
+        if (annotation != null)
+            methodName = annotation.name();
+        return new Dispatch(Kind.CALL_PROPERTY, methodName, method);
+    }
+
+    private static DispatchTable getDispatchTable(Class[] interfaces, boolean lambda) {
+        return QuackContext.proxyDispatchTables.memoize(() -> {
+            DispatchTable table = new DispatchTable();
+            for (Method method: Object.class.getMethods()) {
+                table.dispatches.put(method, resolve(method, lambda));
+            }
+            for (Class iface: interfaces) {
+                for (Method method: iface.getMethods()) {
+                    table.dispatches.put(method, resolve(method, lambda));
+                }
+            }
+            return table;
+        }, interfaces[interfaces.length - 1], lambda, interfaces);
+    }
+
+    /**
+     * Create a proxy whose invocations are dispatched through a pre-resolved table.
+     * This is only valid when the QuackContext has no QuackInvocationHandlerWrapper.
+     * @param lambda Whether the interface methods invoke the JavaScript object as a function.
+     */
+    static Object newDirectProxy(QuackContext quackContext, JavaScriptObject jo, ClassLoader loader, Class[] interfaces, boolean lambda) {
+        return newProxyInstance(loader, interfaces, new DirectHandler(quackContext, jo, getDispatchTable(interfaces, lambda)));
+    }
+
+    private static final class DirectHandler implements InvocationHandler {
+        final QuackContext quackContext;
+        final JavaScriptObject jo;
+        final DispatchTable table;
+
+        DirectHandler(QuackContext quackContext, JavaScriptObject jo, DispatchTable table) {
+            this.quackContext = quackContext;
+            this.jo = jo;
+            this.table = table;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Dispatch dispatch = table.dispatches.get(method);
+            if (dispatch == null)
+                throw new UnsupportedOperationException("can not call " + method);
+            return JavaScriptProxy.invoke(quackContext, jo, dispatch, proxy, method, args);
+        }
+    }
+
+    // direct proxies are equal if they are backed by the same JavaScriptObject.
+    private static boolean proxyEquals(JavaScriptObject jo, Object proxy, Object other) {
+        if (proxy == other)
+            return true;
+        if (other == null || !Proxy.isProxyClass(other.getClass()))
+            return false;
+        InvocationHandler handler = Proxy.getInvocationHandler(other);
+        return handler instanceof DirectHandler && ((DirectHandler)handler).jo == jo;
+    }
+
+    private static Object invoke(QuackContext quackContext, JavaScriptObject jo, Dispatch dispatch, Object proxy, Method method, Object[] args) throws Throwable {
+        if (dispatch.kind == Kind.OBJECT) {
+            if ("equals".equals(dispatch.name))
+                return proxyEquals(jo, proxy, args[0]);
+            if ("hashCode".equals(dispatch.name))
+                return jo.hashCode();
+            if ("toString".equals(dispatch.name))
+                return jo.toString();
+        }
+
+        switch (dispatch.kind) {
+            case OBJECT:
+            case JAVASCRIPT_OBJECT:
+                try {
+                    return method.invoke(jo, args);
+                }
+                catch (InvocationTargetException e) {
+                    throw e.getTargetException();
+                }
+        }
+
+        if (dispatch.kind == Kind.CALL_FUNCTION)
+            return quackContext.coerceJavaScriptToJava(dispatch.returnType, jo.call(JavaScriptObject.coerceArgs(quackContext, method, args)));
+
+        if (dispatch.interfaceMethod != null && !quackContext.JavaToJavascriptMethodCoercions.isEmpty()) {
+            QuackMethodCoercion methodCoercion = quackContext.JavaToJavascriptMethodCoercions.get(dispatch.interfaceMethod);
+            if (methodCoercion != null)
+                return methodCoercion.invoke(dispatch.interfaceMethod, jo, args);
+        }
+
+        switch (dispatch.kind) {
+            case GET_PROPERTY:
+                return quackContext.coerceJavaScriptToJava(dispatch.returnType, jo.get(dispatch.name));
+            case SET_PROPERTY:
+                jo.set(dispatch.name, quackContext.coerceJavaScriptToJava(dispatch.parameterTypes[0], args[0]));
+                return null;
+            default:
+                return quackContext.coerceJavaScriptToJava(dispatch.returnType, jo.callProperty(dispatch.name, JavaScriptObject.coerceArgs(quackContext, method, args)));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.koushikdutta.quack;
+
+import java.util.Arrays;
+
+/**
+ * Records the most recent latencies in a ring, and reports percentiles over them.
+ */
+final class LatencyRecorder {
+    private final long[] samples;
+    private int count;
+    private int next;
+
+    LatencyRecorder(int capacity) {
+        samples = new long[capacity];
+    }
+
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        if (count < samples.length)
+            count++;
+    }
+
+    /**
+     * @param percentile The percentile, from 0 to 100 (ie, 99).
+     * @return The latency at the percentile, in nanoseconds, or 0 if nothing was recorded.
+     */
+    synchronized long getPercentile(double percentile) {
+        if (count == 0)
+            return 0;
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int)Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    synchronized int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,128 @@
+package com.koushikdutta.quack;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * An unbounded, lock-free, multiple producer single consumer queue of non zero longs
+ * (ie, native pointers). Values are stored unboxed in linked segments: producers reserve
+ * a slot with a single atomic increment, and the consumer drains every published value
+ * into one array.
+ */
+final class LongQueue {
+    private static final int SEGMENT_SIZE = 1024;
+    private static final long[] EMPTY = new long[0];
+
+    private static final class Segment {
+        // zero marks a slot that is not yet published.
+        final AtomicLongArray values = new AtomicLongArray(SEGMENT_SIZE);
+        final AtomicInteger reserved = new AtomicInteger();
+        volatile Segment next;
+    }
+
+    private static final AtomicReferenceFieldUpdater<Segment, Segment> NEXT =
+            AtomicReferenceFieldUpdater.newUpdater(Segment.class, Segment.class, "next");
+    private static final AtomicReferenceFieldUpdater<LongQueue, Segment> TAIL =
+            AtomicReferenceFieldUpdater.newUpdater(LongQueue.class, Segment.class, "tail");
+
+    private volatile Segment tail;
+    // only accessed by the consumer.
+    private Segment head;
+    private int headIndex;
+
+    private final AtomicLong added = new AtomicLong();
+    private volatile long drained;
+    private volatile long drains;
+
+    LongQueue() {
+        head = tail = new Segment();
+    }
+
+    /**
+     * Add a value. May be called from any thread.
+     */
+    void add(long value) {
+        if (value == 0)
+            throw new IllegalArgumentException("zero can not be queued");
+        while (true) {
+            Segment segment = tail;
+            int index = segment.reserved.getAndIncrement();
+            if (index < SEGMENT_SIZE) {
+                // counted first, so the size is never negative.
+                added.incrementAndGet();
+                segment.values.set(index, value);
+                return;
+            }
+
+            // the segment is full: link a new one, or follow the one another producer linked.
+            Segment next = segment.next;
+            if (next == null) {
+                Segment created = new Segment();
+                next = NEXT.compareAndSet(segment, null, created) ? created : segment.next;
+            }
+            TAIL.compareAndSet(this, segment, next);
+        }
+    }
+
+    /**
+     * Remove every published value, in the order they were added. Must only be called
+     * by one consumer at a time. A value that is still being added by a producer is left
+     * for the next drain, along with any value after it.
+     */
+    long[] drain() {
+        long[] ret = EMPTY;
+        int count = 0;
+        while (true) {
+            if (headIndex == SEGMENT_SIZE) {
+                Segment next = head.next;
+                if (next == null)
+                    break;
+                head = next;
+                headIndex = 0;
+            }
+            long value = head.values.get(headIndex);
+            if (value == 0)
+                break;
+            if (count == ret.length) {
+                long[] grown = new long[Math.max(16, count * 2)];
+                System.arraycopy(ret, 0, grown, 0, count);
+                ret = grown;
+            }
+            ret[count++] = value;
+            headIndex++;
+        }
+
+        if (count == 0)
+            return EMPTY;
+        drained += count;
+        drains++;
+        if (count == ret.length)
+            return ret;
+        long[] trimmed = new long[count];
+        System.arraycopy(ret, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    /**
+     * The number of values added, but not yet drained.
+     */
+    long size() {
+        return added.get() - drained;
+    }
+
+    /**
+     * The total number of values drained.
+     */
+    long getDrainedCount() {
+        return drained;
+    }
+
+    /**
+     * The number of drains that removed at least one value.
+     */
+    long getDrainCount() {
+        return drains;
+    }
+}
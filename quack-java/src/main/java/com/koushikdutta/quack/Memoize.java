@@ -1,8 +1,51 @@
 package com.koushikdutta.quack;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * A concurrent cache of reflection lookups. Results are stored in per class tables,
+ * keyed by the full composite key (ie, name and argument types), so distinct keys
+ * never share a result. Each table is bounded, and arbitrary entries are evicted
+ * once a table is full.
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
 public class Memoize<T> {
+  private static final int DEFAULT_MAX_ENTRIES_PER_CLASS = 256;
+  // results may legitimately be null (ie, no such method).
+  private static final Object NULL = new Object();
+
+  static final class Key {
+    private final Object[] parts;
+    private final int hash;
+
+    Key(Object[] parts) {
+      this.parts = parts;
+      this.hash = Arrays.deepHashCode(parts);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this)
+        return true;
+      if (!(obj instanceof Key))
+        return false;
+      Key other = (Key)obj;
+      return hash == other.hash && Arrays.deepEquals(parts, other.parts);
+    }
+  }
+
+  /**
+   * @deprecated The store of the hash keyed memoize methods. See {@link #memoize(MemoizeFunc, Class, Object...)}.
+   */
+  @Deprecated
   public interface MemoizeMap<V> {
     boolean containsKey(Object key);
     V get(Object key);
@@ -17,13 +60,34 @@ public class Memoize<T> {
     private static final long serialVersionUID = -4020434697394716201L;
   }
 
-  public Memoize(MemoizeMap<T> map) {
-    store = map;
+  private final ConcurrentHashMap<Class, ConcurrentHashMap<Key, Object>> tables = new ConcurrentHashMap<>();
+  private final int maxEntriesPerClass;
+  private MemoizeMap<T> store;
+
+  public Memoize(int maxEntriesPerClass) {
+    if (maxEntriesPerClass <= 0)
+      throw new IllegalArgumentException("maxEntriesPerClass must be positive");
+    this.maxEntriesPerClass = maxEntriesPerClass;
   }
+
   public Memoize() {
-    this(new MemoizeMapImpl<>());
+    this(DEFAULT_MAX_ENTRIES_PER_CLASS);
   }
 
+  /**
+   * @deprecated The map only stores the results of the hash keyed memoize methods.
+   */
+  @Deprecated
+  public Memoize(MemoizeMap<T> map) {
+    this();
+    store = map;
+  }
+
+  /**
+   * @deprecated Distinct keys may share a hash, and so a result.
+   * See {@link #memoize(MemoizeFunc, Class, Object...)}.
+   */
+  @Deprecated
   public static int hashCode(Object... objects) {
     int ret = 0;
     for (int i = 0; i < objects.length; i++) {
@@ -34,35 +98,91 @@ public class Memoize<T> {
     return ret;
   }
 
-  MemoizeMap<T> store;
+  /**
+   * @deprecated Keyed by hash, so distinct keys may share a result.
+   * See {@link #memoize(MemoizeFunc, Class, Object...)}.
+   */
+  @Deprecated
   public T memoize(MemoizeFunc<T> func, Object... args) {
-    int hash = hashCode(args);
-    return memoize(func, hash);
-  }
-
-  void clear() {
-    store.clear();
+    return memoizeHash(func, hashCode(args));
   }
 
+  /**
+   * @deprecated Keyed by hash, so distinct keys may share a result.
+   * See {@link #memoize(MemoizeFunc, Class, Object...)}.
+   */
+  @Deprecated
   public T memoize(MemoizeFunc<T> func, Object arg0, Object[] args) {
     int hash = hashCode(args);
     hash ^= arg0 == null ? 0 : arg0.hashCode();
-    return memoize(func, hash);
+    return memoizeHash(func, hash);
   }
 
+  /**
+   * @deprecated Keyed by hash, so distinct keys may share a result.
+   * See {@link #memoize(MemoizeFunc, Class, Object...)}.
+   */
+  @Deprecated
   public T memoize(MemoizeFunc<T> func, Object arg0, Object[] args0, Object[] args1) {
     int hash = hashCode(args0);
     hash ^= hashCode(args1);
     hash ^= arg0 == null ? 0 : arg0.hashCode();
-    return memoize(func, hash);
+    return memoizeHash(func, hash);
   }
 
-  private T memoize(MemoizeFunc<T> func, int hash) {
-    if (store.containsKey(hash)) {
+  private synchronized T memoizeHash(MemoizeFunc<T> func, int hash) {
+    if (store == null)
+      store = new MemoizeMapImpl<>();
+    if (store.containsKey(hash))
       return store.get(hash);
-    }
     T ret = func.process();
     store.put(hash, ret);
     return ret;
   }
+
+  /**
+   * Get the memoized result for the class and key, computing it on a miss.
+   * Arrays within the key are compared by their contents.
+   */
+  public T memoize(MemoizeFunc<T> func, Class clazz, Object... key) {
+    ConcurrentHashMap<Key, Object> table = tables.get(clazz);
+    if (table == null) {
+      table = new ConcurrentHashMap<>();
+      ConcurrentHashMap<Key, Object> existing = tables.putIfAbsent(clazz, table);
+      if (existing != null)
+        table = existing;
+    }
+
+    Key k = new Key(key);
+    Object ret = table.get(k);
+    if (ret != null)
+      return ret == NULL ? null : (T)ret;
+
+    T value = func.process();
+    if (table.size() >= maxEntriesPerClass)
+      evict(table);
+    table.put(k, value == null ? NULL : value);
+    return value;
+  }
+
+  private static void evict(ConcurrentHashMap<Key, Object> table) {
+    Iterator<Key> iterator = table.keySet().iterator();
+    if (iterator.hasNext()) {
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+  int size(Class clazz) {
+    ConcurrentHashMap<Key, Object> table = tables.get(clazz);
+    return table == null ? 0 : table.size();
+  }
+
+  void clear() {
+    tables.clear();
+    synchronized (this) {
+      if (store != null)
+        store.clear();
+    }
+  }
 }
@@ -0,0 +1,147 @@
+package com.koushikdutta.quack;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Phantom references to Java objects that own a native pointer, which is released once
+ * the object is collected. Unlike finalizers, this does not make the objects finalizable:
+ * they are allocated on the fast path, and are reclaimed in a single GC cycle.
+ * Collected pointers are polled from the queue, and released in batches by the owner.
+ * Registration pushes onto a lock-free stack. Removed references are only marked, and
+ * are unlinked in bulk once they outnumber the live ones.
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+final class NativeReferenceQueue<T> {
+    static final class Reference<T> extends PhantomReference<T> {
+        final long pointer;
+        // only written before the reference is pushed, and then by the pruner.
+        private Reference<T> next;
+        // not private, so the updater in the enclosing class may access it.
+        volatile int removed;
+
+        private Reference(T referent, long pointer, ReferenceQueue<? super T> queue) {
+            super(referent, queue);
+            this.pointer = pointer;
+        }
+    }
+
+    private static final AtomicReferenceFieldUpdater<NativeReferenceQueue, Reference> HEAD =
+            AtomicReferenceFieldUpdater.newUpdater(NativeReferenceQueue.class, Reference.class, "head");
+    private static final AtomicIntegerFieldUpdater<Reference> REMOVED =
+            AtomicIntegerFieldUpdater.newUpdater(Reference.class, "removed");
+    private static final int PRUNE_THRESHOLD = 64;
+
+    private final ReferenceQueue<T> queue = new ReferenceQueue<>();
+    // references are only enqueued if they are still reachable themselves,
+    // so every registered reference is held on this stack until it is polled.
+    private volatile Reference<T> head;
+    private final AtomicInteger size = new AtomicInteger();
+    // removed references that are still on the stack.
+    private final AtomicInteger removed = new AtomicInteger();
+    // pointers of collected objects, waiting to be released.
+    private final LongQueue pending = new LongQueue();
+
+    Reference<T> register(T referent, long pointer) {
+        Reference<T> reference = new Reference<>(referent, pointer, queue);
+        size.incrementAndGet();
+        while (true) {
+            Reference<T> top = head;
+            reference.next = top;
+            if (HEAD.compareAndSet(this, top, reference))
+                return reference;
+        }
+    }
+
+    /**
+     * Unregister a reference whose pointer was released explicitly, so it is never polled.
+     */
+    void unregister(Reference<T> reference) {
+        reference.clear();
+        remove(reference);
+    }
+
+    private void remove(Reference<T> reference) {
+        if (!REMOVED.compareAndSet(reference, 0, 1))
+            return;
+        int live = size.decrementAndGet();
+        int dead = removed.incrementAndGet();
+        if (dead >= PRUNE_THRESHOLD && dead > live)
+            prune();
+    }
+
+    // unlink removed references below the current top of the stack. references pushed
+    // meanwhile only link to the top, so registration is never blocked.
+    private synchronized void prune() {
+        Reference<T> previous = head;
+        if (previous == null)
+            return;
+        int pruned = 0;
+        for (Reference<T> reference = previous.next; reference != null; reference = reference.next) {
+            if (reference.removed != 0) {
+                previous.next = reference.next;
+                pruned++;
+            }
+            else {
+                previous = reference;
+            }
+        }
+        removed.addAndGet(-pruned);
+    }
+
+    /**
+     * Move the pointers of collected objects into the pending batch. May be called from any
+     * thread, and does not block the consumer of the batch.
+     * @return Whether there are pending pointers to release.
+     */
+    boolean poll() {
+        java.lang.ref.Reference<? extends T> polled;
+        while ((polled = queue.poll()) != null) {
+            Reference<T> reference = (Reference<T>)polled;
+            remove(reference);
+            pending.add(reference.pointer);
+        }
+        return pending.size() != 0;
+    }
+
+    /**
+     * Take the pending batch of pointers to release. Must only be called by one thread at a time.
+     * @return The pointers, or null if there are none.
+     */
+    long[] drain() {
+        poll();
+        long[] ret = pending.drain();
+        if (ret.length == 0)
+            return null;
+        return ret;
+    }
+
+    /**
+     * The number of pointers waiting to be released.
+     */
+    long getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * The total number of pointers that have been released, and the number of batches they
+     * were released in.
+     */
+    long getReleasedCount() {
+        return pending.getDrainedCount();
+    }
+
+    long getBatchCount() {
+        return pending.getDrainCount();
+    }
+
+    /**
+     * The number of registered objects that have not been polled.
+     */
+    int size() {
+        return size.get();
+    }
+}
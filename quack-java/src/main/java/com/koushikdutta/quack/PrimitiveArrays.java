@@ -0,0 +1,237 @@
+package com.koushikdutta.quack;
+
+import java.lang.reflect.Array;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Bulk conversions between Java primitive arrays, NIO buffers, and JavaScript typed arrays.
+ * Typed arrays are copied natively with a single copy, or viewed in place as buffers,
+ * rather than read element by element through the JavaScriptObject and JavaObject proxies.
+ */
+final class PrimitiveArrays {
+    private PrimitiveArrays() {
+    }
+
+    // typed array kinds, which must match TypedArrayKind in TypedArrays.h.
+    static final int INT8 = 0;
+    static final int UINT8 = 1;
+    static final int UINT8_CLAMPED = 2;
+    static final int INT16 = 3;
+    static final int UINT16 = 4;
+    static final int INT32 = 5;
+    static final int UINT32 = 6;
+    static final int FLOAT32 = 7;
+    static final int FLOAT64 = 8;
+
+    /**
+     * A view of a typed array's memory, in native byte order, with the buffer type
+     * that matches its elements. Unsigned 32 bit elements are viewed as signed.
+     */
+    static Buffer view(ByteBuffer buffer, int kind) {
+        buffer.order(ByteOrder.nativeOrder());
+        switch (kind) {
+            case INT16:
+                return buffer.asShortBuffer();
+            case UINT16:
+                return buffer.asCharBuffer();
+            case INT32:
+            case UINT32:
+                return buffer.asIntBuffer();
+            case FLOAT32:
+                return buffer.asFloatBuffer();
+            case FLOAT64:
+                return buffer.asDoubleBuffer();
+            default:
+                return buffer;
+        }
+    }
+
+    /**
+     * Copy a typed buffer into a new direct buffer of the same type, in native byte order.
+     */
+    static Buffer toDirect(Buffer buffer) {
+        ByteBuffer bytes;
+        Buffer ret;
+        if (buffer instanceof ShortBuffer) {
+            bytes = ByteBuffer.allocateDirect(buffer.remaining() * 2).order(ByteOrder.nativeOrder());
+            ret = bytes.asShortBuffer().put(((ShortBuffer)buffer).duplicate());
+        }
+        else if (buffer instanceof CharBuffer) {
+            bytes = ByteBuffer.allocateDirect(buffer.remaining() * 2).order(ByteOrder.nativeOrder());
+            ret = bytes.asCharBuffer().put(((CharBuffer)buffer).duplicate());
+        }
+        else if (buffer instanceof IntBuffer) {
+            bytes = ByteBuffer.allocateDirect(buffer.remaining() * 4).order(ByteOrder.nativeOrder());
+            ret = bytes.asIntBuffer().put(((IntBuffer)buffer).duplicate());
+        }
+        else if (buffer instanceof FloatBuffer) {
+            bytes = ByteBuffer.allocateDirect(buffer.remaining() * 4).order(ByteOrder.nativeOrder());
+            ret = bytes.asFloatBuffer().put(((FloatBuffer)buffer).duplicate());
+        }
+        else if (buffer instanceof DoubleBuffer) {
+            bytes = ByteBuffer.allocateDirect(buffer.remaining() * 8).order(ByteOrder.nativeOrder());
+            ret = bytes.asDoubleBuffer().put(((DoubleBuffer)buffer).duplicate());
+        }
+        else {
+            throw new IllegalArgumentException("unsupported buffer: " + buffer);
+        }
+        // flip through Buffer, since the covariant overrides added in Java 9 do not exist on
+        // Java 8 and Android.
+        ret.flip();
+        return ret;
+    }
+
+    static boolean isNativeOrder(Buffer buffer) {
+        ByteOrder order;
+        if (buffer instanceof ShortBuffer)
+            order = ((ShortBuffer)buffer).order();
+        else if (buffer instanceof CharBuffer)
+            order = ((CharBuffer)buffer).order();
+        else if (buffer instanceof IntBuffer)
+            order = ((IntBuffer)buffer).order();
+        else if (buffer instanceof FloatBuffer)
+            order = ((FloatBuffer)buffer).order();
+        else if (buffer instanceof DoubleBuffer)
+            order = ((DoubleBuffer)buffer).order();
+        else
+            return false;
+        return order == ByteOrder.nativeOrder();
+    }
+
+    // kinds whose elements are viewed as signed Java values of the same width.
+    static boolean isUnsigned(int kind) {
+        return kind == UINT8 || kind == UINT8_CLAMPED || kind == UINT32;
+    }
+
+    /**
+     * Copy the remaining elements of a typed buffer into a primitive array.
+     * @param unsigned Whether the buffer views an unsigned typed array, whose elements are
+     * widened without sign extension.
+     * @return The array, or null if the component type is not supported.
+     */
+    static Object fromBuffer(Buffer buffer, Class<?> componentType, boolean unsigned) {
+        if (buffer instanceof ByteBuffer)
+            return fromByteBuffer((ByteBuffer)buffer, componentType, unsigned);
+
+        Object array;
+        if (buffer instanceof ShortBuffer) {
+            short[] ret = new short[buffer.remaining()];
+            ((ShortBuffer)buffer).duplicate().get(ret);
+            array = ret;
+        }
+        else if (buffer instanceof CharBuffer) {
+            char[] ret = new char[buffer.remaining()];
+            ((CharBuffer)buffer).duplicate().get(ret);
+            array = ret;
+        }
+        else if (buffer instanceof IntBuffer) {
+            int[] ret = new int[buffer.remaining()];
+            ((IntBuffer)buffer).duplicate().get(ret);
+            array = ret;
+        }
+        else if (buffer instanceof LongBuffer) {
+            long[] ret = new long[buffer.remaining()];
+            ((LongBuffer)buffer).duplicate().get(ret);
+            array = ret;
+        }
+        else if (buffer instanceof FloatBuffer) {
+            float[] ret = new float[buffer.remaining()];
+            ((FloatBuffer)buffer).duplicate().get(ret);
+            array = ret;
+        }
+        else if (buffer instanceof DoubleBuffer) {
+            double[] ret = new double[buffer.remaining()];
+            ((DoubleBuffer)buffer).duplicate().get(ret);
+            array = ret;
+        }
+        else {
+            return null;
+        }
+        return convert(array, componentType, unsigned);
+    }
+
+    // primitive arrays which have a typed array of the same element type.
+    static final Class<?>[] TYPED_ARRAY_CLASSES = new Class<?>[] {
+        byte[].class,
+        short[].class,
+        char[].class,
+        int[].class,
+        float[].class,
+        double[].class,
+    };
+
+    static boolean isTypedArrayClass(Class<?> clazz) {
+        for (Class<?> typedArrayClass: TYPED_ARRAY_CLASSES) {
+            if (typedArrayClass == clazz)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Convert a primitive array to an array of another primitive component type,
+     * with Java's primitive narrowing and widening.
+     */
+    static Object convert(Object array, Class<?> componentType) {
+        return convert(array, componentType, false);
+    }
+
+    /**
+     * Convert a primitive array to an array of another primitive component type.
+     * @param unsigned Whether byte and int elements hold unsigned values, which are widened
+     * without sign extension.
+     */
+    static Object convert(Object array, Class<?> componentType, boolean unsigned) {
+        if (array.getClass().getComponentType() == componentType)
+            return array;
+        int length = Array.getLength(array);
+        Object ret = Array.newInstance(componentType, length);
+        for (int i = 0; i < length; i++) {
+            double value = unsigned ? getUnsigned(array, i) : Array.getDouble(array, i);
+            if (componentType == byte.class)
+                Array.setByte(ret, i, (byte)value);
+            else if (componentType == short.class)
+                Array.setShort(ret, i, (short)value);
+            else if (componentType == char.class)
+                Array.setChar(ret, i, (char)value);
+            else if (componentType == int.class)
+                Array.setInt(ret, i, (int)value);
+            else if (componentType == long.class)
+                Array.setLong(ret, i, (long)value);
+            else if (componentType == float.class)
+                Array.setFloat(ret, i, (float)value);
+            else if (componentType == double.class)
+                Array.setDouble(ret, i, value);
+            else
+                return null;
+        }
+        return ret;
+    }
+
+    /**
+     * Copy the remaining bytes of a buffer into a primitive array, converting each byte
+     * to the component type, as with the other typed buffers.
+     * @return The array, or null if the component type is not supported.
+     */
+    static Object fromByteBuffer(ByteBuffer buffer, Class<?> componentType, boolean unsigned) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return convert(bytes, componentType, unsigned);
+    }
+
+    private static double getUnsigned(Object array, int index) {
+        if (array instanceof byte[])
+            return ((byte[])array)[index] & 0xff;
+        if (array instanceof int[])
+            return ((int[])array)[index] & 0xffffffffL;
+        return Array.getDouble(array, index);
+    }
+}
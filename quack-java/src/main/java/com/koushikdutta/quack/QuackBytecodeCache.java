@@ -0,0 +1,169 @@
+package com.koushikdutta.quack;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * An on disk cache of compiled bytecode, keyed by a SHA-256 hash of the engine version and
+ * bytecode format, the file name, and the script. Contexts that evaluate the same scripts (ie,
+ * a bundle loaded at startup) skip parsing and compilation after the first time.
+ * Bytecode is only valid for the engine that compiled it. The key also includes a version,
+ * which should change whenever the library is updated (ie, the app version), in case an
+ * engine change is not reflected in its version. Every file is stored with a CRC32 of its bytecode,
+ * and files that fail the check are discarded, since loading corrupt bytecode is unsafe.
+ * The cache may be shared by multiple contexts and threads. Failures to read or write the
+ * cache fall back to compiling the script.
+ */
+public final class QuackBytecodeCache {
+    private static final String EXTENSION = ".jsbc";
+
+    private final File directory;
+    private final String version;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public QuackBytecodeCache(File directory, String version) {
+        this.directory = directory;
+        this.version = version == null ? "" : version;
+        directory.mkdirs();
+    }
+
+    /**
+     * Evaluate {@code script} from cached bytecode, compiling and caching it if necessary.
+     * See {@link QuackContext#evaluate(String, String)}.
+     */
+    public Object evaluate(QuackContext quack, String script, String fileName) {
+        return quack.evaluateBytecode(getBytecode(quack, script, fileName, false));
+    }
+
+    /**
+     * Compile a JavaScript function from cached bytecode, compiling and caching it if necessary.
+     * See {@link QuackContext#compileFunction(String, String)}.
+     */
+    public JavaScriptObject compileFunction(QuackContext quack, String script, String fileName) {
+        return quack.evaluateBytecode(JavaScriptObject.class, getBytecode(quack, script, fileName, true));
+    }
+
+    byte[] getBytecode(QuackContext quack, String script, String fileName, boolean function) {
+        File file = new File(directory, getKey(quack, script, fileName, function) + EXTENSION);
+        byte[] bytecode = read(file);
+        if (bytecode != null) {
+            hits.incrementAndGet();
+            return bytecode;
+        }
+
+        misses.incrementAndGet();
+        if (function)
+            bytecode = quack.compileFunctionToBytecode(script, fileName);
+        else
+            bytecode = quack.compileToBytecode(script, fileName);
+        write(file, bytecode);
+        return bytecode;
+    }
+
+    private String getKey(QuackContext quack, String script, String fileName, boolean function) {
+        return sha256(quack.getBuildId(), version, String.valueOf(function), String.valueOf(fileName), script);
+    }
+
+    // a hex SHA-256 of the parts, which are separated so that their boundaries are part of the hash.
+    static String sha256(String... parts) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+        for (String part: parts) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte)0);
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b: digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static int checksum(byte[] bytecode) {
+        CRC32 crc = new CRC32();
+        crc.update(bytecode, 0, bytecode.length);
+        return (int)crc.getValue();
+    }
+
+    // files are the checksum followed by the bytecode.
+    private static byte[] read(File file) {
+        if (!file.exists())
+            return null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < 4)
+                throw new IOException("truncated bytecode cache file " + file);
+            int checksum = raf.readInt();
+            byte[] bytecode = new byte[(int)raf.length() - 4];
+            raf.readFully(bytecode);
+            if (checksum(bytecode) != checksum)
+                throw new IOException("checksum mismatch in bytecode cache file " + file);
+            return bytecode;
+        }
+        catch (IOException e) {
+            Logger.getLogger(QuackBytecodeCache.class.getName()).log(Level.WARNING, "unable to read bytecode cache", e);
+            // recompiled and rewritten by the caller.
+            file.delete();
+            return null;
+        }
+    }
+
+    private void write(File file, byte[] bytecode) {
+        // written to a temporary file and renamed, so readers never see a partial file.
+        File temp = null;
+        try {
+            temp = File.createTempFile(file.getName(), ".tmp", directory);
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+                out.writeInt(checksum(bytecode));
+                out.write(bytecode);
+            }
+            if (!temp.renameTo(file) && !file.exists())
+                throw new IOException("unable to rename " + temp);
+        }
+        catch (IOException e) {
+            Logger.getLogger(QuackBytecodeCache.class.getName()).log(Level.WARNING, "unable to write bytecode cache", e);
+        }
+        finally {
+            if (temp != null)
+                temp.delete();
+        }
+    }
+
+    /**
+     * Delete every cached file.
+     */
+    public void clear() {
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+        for (File file: files) {
+            if (file.getName().endsWith(EXTENSION))
+                file.delete();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+}
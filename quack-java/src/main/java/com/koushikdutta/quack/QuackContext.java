@@ -16,12 +16,31 @@
 package com.koushikdutta.quack;
 
 import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.lang.reflect.*;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 /** A simple EMCAScript (Javascript) interpreter. */
@@ -30,9 +49,18 @@ public final class QuackContext implements Closeable {
   // mapped java objects are held as weak keys to strong javascript object references.
   // ie, a js ArrayBuffer or Uint8Array value will be mapped from the java DirectByteBuffer key.
   private final WeakExactHashMap<Object, Object> nativeMappings = new WeakExactHashMap<>();
+  // views over unsigned typed arrays, which Java buffers can not tell apart from signed ones.
+  private final WeakExactHashMap<Object, Object> unsignedViews = new WeakExactHashMap<>();
+  // property keys pinned in the native context, by name. only accessed from within the context.
+  private final HashMap<String, QuackPropertyKey> internedKeys = new HashMap<>();
 
   private final Map<Class, QuackCoercion> JavaScriptToJavaCoercions = new LinkedHashMap<>();
   private final Map<Class, QuackCoercion> JavaToJavascriptCoercions = new LinkedHashMap<>();
+  // coercions resolved by the requested class, including misses. the resolved tables
+  // are replaced whenever a coercion is registered.
+  private volatile ConcurrentHashMap<Class, QuackCoercion> resolvedJavaScriptToJavaCoercions = new ConcurrentHashMap<>();
+  private volatile ConcurrentHashMap<Class, QuackCoercion> resolvedJavaToJavascriptCoercions = new ConcurrentHashMap<>();
+  private static final QuackCoercion NO_COERCION = (clazz, o) -> null;
   final Map<Method, QuackMethodCoercion> JavaScriptToJavaMethodCoercions = new LinkedHashMap<>();
   final Map<Method, QuackMethodCoercion> JavaToJavascriptMethodCoercions = new LinkedHashMap<>();
   private QuackInvocationHandlerWrapper invocationHandlerWrapper;
@@ -58,6 +86,24 @@ public final class QuackContext implements Closeable {
     this.invocationHandlerWrapper = invocationHandlerWrapper;
   }
 
+  private boolean directProxyDispatch;
+  /**
+   * Dispatch interface proxies of JavaScript objects through a table that is resolved
+   * once per interface, rather than through the nested InvocationHandler chain.
+   * This has no effect while a QuackInvocationHandlerWrapper is set.
+   */
+  public void setDirectProxyDispatch(boolean directProxyDispatch) {
+    this.directProxyDispatch = directProxyDispatch;
+  }
+
+  public boolean getDirectProxyDispatch() {
+    return directProxyDispatch;
+  }
+
+  boolean useDirectProxyDispatch() {
+    return directProxyDispatch && invocationHandlerWrapper == null;
+  }
+
 
   // trap for Object methods.
   private static InvocationHandler wrapObjectInvocationHandler(JavaScriptObject jo, InvocationHandler handler) {
@@ -86,8 +132,11 @@ public final class QuackContext implements Closeable {
    * Register a function that coerces values JavaScript values into an object of type
    * {@code clazz} before being passed along to Java.
    */
-  public synchronized <T> void putJavaScriptToJavaCoercion(Class<T> clazz, QuackCoercion<T, Object> coercion) {
-    JavaScriptToJavaCoercions.put(clazz, coercion);
+  public <T> void putJavaScriptToJavaCoercion(Class<T> clazz, QuackCoercion<T, Object> coercion) {
+    synchronized (JavaScriptToJavaCoercions) {
+      JavaScriptToJavaCoercions.put(clazz, coercion);
+      resolvedJavaScriptToJavaCoercions = new ConcurrentHashMap<>();
+    }
   }
 
   /**
@@ -97,8 +146,11 @@ public final class QuackContext implements Closeable {
    * @param coercion
    * @param <F>
    */
-  public synchronized <F> void putJavaToJavaScriptCoercion(Class<F> clazz, QuackCoercion<Object, F> coercion) {
-    JavaToJavascriptCoercions.put(clazz, coercion);
+  public <F> void putJavaToJavaScriptCoercion(Class<F> clazz, QuackCoercion<Object, F> coercion) {
+    synchronized (JavaToJavascriptCoercions) {
+      JavaToJavascriptCoercions.put(clazz, coercion);
+      resolvedJavaToJavascriptCoercions = new ConcurrentHashMap<>();
+    }
   }
 
   /**
@@ -138,7 +190,7 @@ public final class QuackContext implements Closeable {
       o = coerced;
     }
 
-    Object ret = coerceJavaToJavaScript(JavaToJavascriptCoercions, o, clazz);
+    Object ret = coerceJavaToJavaScript(JavaToJavascriptCoercions, resolvedJavaToJavascriptCoercions, o, clazz);
     if (ret != null)
       return ret;
 
@@ -153,6 +205,11 @@ public final class QuackContext implements Closeable {
           return super.callMethod(thiz, args);
         }
 
+        @Override
+        protected Class getMethodsClass(Object thiz) {
+          return clazz;
+        }
+
         @Override
         protected Method[] getMethods(Object thiz) {
           return clazz.getMethods();
@@ -224,6 +281,21 @@ public final class QuackContext implements Closeable {
     if ((clazz == long.class || clazz == Long.class) && o instanceof Double)
       return ((Double)o).longValue();
 
+    // primitive arrays are copied in bulk from typed arrays, and from the buffers
+    // that typed arrays are received as.
+    if (clazz.isArray() && clazz.getComponentType().isPrimitive()) {
+      Object ret = null;
+      if (o instanceof Buffer)
+        ret = PrimitiveArrays.fromBuffer((Buffer)o, clazz.getComponentType(), isUnsignedView(o));
+      else if (o instanceof JavaScriptObject && ((JavaScriptObject)o).quackContext == this) {
+        Object typed = getTypedArray(((JavaScriptObject)o).pointer);
+        if (typed != null)
+          ret = PrimitiveArrays.convert(typed, clazz.getComponentType());
+      }
+      if (ret != null)
+        return ret;
+    }
+
     if (clazz.isArray() && o instanceof JavaScriptObject) {
       JavaScriptObject jo = (JavaScriptObject)o;
       int length = ((Number)jo.get("length")).intValue();
@@ -235,7 +307,7 @@ public final class QuackContext implements Closeable {
       return ret;
     }
 
-    Object ret = coerceJavaScriptToJava(JavaScriptToJavaCoercions, o, clazz);
+    Object ret = coerceJavaScriptToJava(JavaScriptToJavaCoercions, resolvedJavaScriptToJavaCoercions, o, clazz);
     if (ret != null)
       return ret;
 
@@ -245,14 +317,18 @@ public final class QuackContext implements Closeable {
 
       // single method arguments are simply callbacks
       Method lambda = getLambdaMethod(clazz);
+      Class[] interfaces = new Class[] { QuackJavaScriptObject.class, clazz };
+      if (useDirectProxyDispatch())
+        return JavaScriptProxy.newDirectProxy(this, jo, QuackJavaScriptObject.class.getClassLoader(), interfaces, lambda != null);
+
       if (lambda != null) {
-        return Proxy.newProxyInstance(QuackJavaScriptObject.class.getClassLoader(), new Class[]{QuackJavaScriptObject.class, clazz},
+        return JavaScriptProxy.newProxyInstance(QuackJavaScriptObject.class.getClassLoader(), interfaces,
                 jo.getWrappedInvocationHandler((proxy, method, args) ->
                         coerceJavaScriptToJava(method.getReturnType(), jo.call(JavaScriptObject.coerceArgs(this, method, args)))));
       }
       else {
         InvocationHandler handler = jo.createInvocationHandler();
-        return Proxy.newProxyInstance(QuackJavaScriptObject.class.getClassLoader(), new Class[] { QuackJavaScriptObject.class, clazz }, handler);
+        return JavaScriptProxy.newProxyInstance(QuackJavaScriptObject.class.getClassLoader(), interfaces, handler);
       }
     }
 
@@ -305,6 +381,10 @@ public final class QuackContext implements Closeable {
   static Memoize<Method> javaObjectSetter = new Memoize<>();
   static Memoize<Method> javaObjectMethodCandidates = new Memoize<>();
   static Memoize<Constructor> javaObjectConstructorCandidates = new Memoize<>();
+  static Memoize<JavaInvoker> javaInvokers = new Memoize<>();
+  static Memoize<JavaMethodCallSite> javaMethodCallSites = new Memoize<>();
+  static Memoize<Constructor> proxyConstructors = new Memoize<>();
+  static Memoize<JavaScriptProxy.DispatchTable> proxyDispatchTables = new Memoize<>();
   static Memoize<Method> interfaceMethods = new Memoize<>();
   static Method getInterfaceMethod(Method method) {
     return interfaceMethods.memoize(() -> {
@@ -335,17 +415,23 @@ public final class QuackContext implements Closeable {
       }
 
       return null;
-    }, method);
+    }, method.getDeclaringClass(), method);
   }
 
-  public synchronized void putJavaScriptToJavaMethodCoercion(Method method, QuackMethodCoercion coercion) {
-    JavaScriptToJavaMethodCoercions.put(method, coercion);
-    interfaceMethods.clear();
+  public void putJavaScriptToJavaMethodCoercion(Method method, QuackMethodCoercion coercion) {
+    guard(() -> {
+      JavaScriptToJavaMethodCoercions.put(method, coercion);
+      interfaceMethods.clear();
+      return null;
+    });
   }
 
-  public synchronized void putJavaToJavaScriptMethodCoercion(Method method, QuackMethodCoercion coercion) {
-    JavaToJavascriptMethodCoercions.put(method, coercion);
-    interfaceMethods.clear();
+  public void putJavaToJavaScriptMethodCoercion(Method method, QuackMethodCoercion coercion) {
+    guard(() -> {
+      JavaToJavascriptMethodCoercions.put(method, coercion);
+      interfaceMethods.clear();
+      return null;
+    });
   }
 
   private static class MethodException extends Exception {
@@ -395,41 +481,62 @@ public final class QuackContext implements Closeable {
     throw new IllegalArgumentException("interface method was not called by lambda.");
   }
 
-  private static Object coerceJavaToJavaScript(Map<Class, QuackCoercion> coerce, Object o, Class<?> clazz) {
-    QuackCoercion coercion = coerce.get(clazz);
-    if (coercion != null) {
-      return coercion.coerce(clazz, o);
+  private static Object coerceJavaToJavaScript(Map<Class, QuackCoercion> coerce, ConcurrentHashMap<Class, QuackCoercion> resolved, Object o, Class<?> clazz) {
+    QuackCoercion coercion = resolved.get(clazz);
+    if (coercion == null) {
+      coercion = resolveJavaToJavaScriptCoercion(coerce, clazz);
+      resolved.put(clazz, coercion);
     }
+    return coercion.coerce(clazz, o);
+  }
 
-    // check to see if there is a superclass converter (ie, Enum.class as a catch all).
-    for (Map.Entry<Class, QuackCoercion> check: coerce.entrySet()) {
-      if (check.getKey().isAssignableFrom(clazz))
-        return check.getValue().coerce(clazz, o);
-    }
+  private static QuackCoercion resolveJavaToJavaScriptCoercion(Map<Class, QuackCoercion> coerce, Class<?> clazz) {
+    synchronized (coerce) {
+      QuackCoercion coercion = coerce.get(clazz);
+      if (coercion != null)
+        return coercion;
+
+      // check to see if there is a superclass converter (ie, Enum.class as a catch all).
+      for (Map.Entry<Class, QuackCoercion> check: coerce.entrySet()) {
+        if (check.getKey().isAssignableFrom(clazz))
+          return check.getValue();
+      }
 
-    return null;
+      return NO_COERCION;
+    }
   }
 
-  private static Object coerceJavaScriptToJava(Map<Class, QuackCoercion> coerce, Object o, Class<?> clazz) {
-    QuackCoercion coercion = coerce.get(clazz);
-    if (coercion != null) {
-      return coercion.coerce(clazz, o);
+  private static Object coerceJavaScriptToJava(Map<Class, QuackCoercion> coerce, ConcurrentHashMap<Class, QuackCoercion> resolved, Object o, Class<?> clazz) {
+    QuackCoercion coercion = resolved.get(clazz);
+    if (coercion == null) {
+      coercion = resolveJavaScriptToJavaCoercion(coerce, clazz);
+      resolved.put(clazz, coercion);
     }
+    return coercion.coerce(clazz, o);
+  }
+
+  private static QuackCoercion resolveJavaScriptToJavaCoercion(Map<Class, QuackCoercion> coerce, Class<?> clazz) {
+    synchronized (coerce) {
+      QuackCoercion coercion = coerce.get(clazz);
+      if (coercion != null)
+        return coercion;
 
-    // check to see if there exists a more specific superclass converter.
-    for (Map.Entry<Class, QuackCoercion> check: coerce.entrySet()) {
-      if (clazz.isAssignableFrom(check.getKey())) {
-        throw new AssertionError("Superclass converter not implemented.");
+      // a converter for a more specific class (ie, CompletableFuture when Future is requested)
+      // can't produce the requested type, and must not be shadowed by a catch all either.
+      // fall through to the default coercions, which proxy interfaces.
+      for (Map.Entry<Class, QuackCoercion> check: coerce.entrySet()) {
+        if (clazz.isAssignableFrom(check.getKey()))
+          return NO_COERCION;
       }
-    }
 
-    // check to see if there is a subclass converter (ie, Enum.class as a catch all).
-    for (Map.Entry<Class, QuackCoercion> check: coerce.entrySet()) {
-      if (check.getKey().isAssignableFrom(clazz))
-        return check.getValue().coerce(clazz, o);
-    }
+      // check to see if there is a subclass converter (ie, Enum.class as a catch all).
+      for (Map.Entry<Class, QuackCoercion> check: coerce.entrySet()) {
+        if (check.getKey().isAssignableFrom(clazz))
+          return check.getValue();
+      }
 
-    return null;
+      return NO_COERCION;
+    }
   }
 
   /**
@@ -437,22 +544,184 @@ public final class QuackContext implements Closeable {
    * calls to {@link #close()} on the returned instance to avoid leaking native memory.
    */
   private boolean useQuickJS;
-  public static QuackContext create(boolean useQuickJS) {
-    QuackContext quack = new QuackContext(useQuickJS);
+  public static QuackContext create(QuackContextOptions options) {
+    destroyLeakedContexts();
+    QuackContext quack = new QuackContext(options.useQuickJS);
     // context will hold a weak ref, so this doesn't matter if it fails.
-    long context = createContext(quack, useQuickJS);
+    long context = createContext(quack, options.useQuickJS);
     if (context == 0) {
       throw new OutOfMemoryError("Cannot create Duktape instance");
     }
     quack.context = context;
-    quack.useQuickJS = useQuickJS;
+    quack.contextReference = contextReferences.register(quack, context);
+    quack.useQuickJS = options.useQuickJS;
+    if (options.typedArrayCoercion) {
+      for (Class typedArrayClass: PrimitiveArrays.TYPED_ARRAY_CLASSES) {
+        quack.putJavaToJavaScriptCoercion(typedArrayClass, (clazz, o) -> quack.newTypedArray(o));
+      }
+    }
+    if (options.threadConfined) {
+      quack.ownerThread = Thread.currentThread();
+      quack.ownerExecutor = options.ownerExecutor;
+    }
     return quack;
   }
 
+  public static QuackContext create(boolean useQuickJS) {
+    return create(new QuackContextOptions().setUseQuickJS(useQuickJS));
+  }
+
   public static QuackContext create() {
     return create(true);
   }
 
+  // a thread confined context is only entered by the owner thread, and skips the monitor.
+  // calls from other threads are handed off to the owner executor.
+  private Thread ownerThread;
+  private Executor ownerExecutor;
+
+  interface Invocation<T> {
+    T invoke();
+  }
+
+  /**
+   * Check if this context is confined to a single owner thread.
+   */
+  public boolean isThreadConfined() {
+    return ownerThread != null;
+  }
+
+  /**
+   * Check if the current thread may enter this context without a hand off.
+   */
+  public boolean isOwnerThread() {
+    return ownerThread == null || ownerThread == Thread.currentThread();
+  }
+
+  // the body of an entry point, which calls its *Locked method from within the context. the
+  // body receives the context and arguments rather than capturing them, so it is a
+  // non-capturing lambda that is only allocated once, and entering the context only allocates
+  // to hand off to the owner thread. entry points pass 0 or null for the arguments that they
+  // don't use.
+  interface Entry<A, B, R> {
+    R invoke(QuackContext quack, long object, A a, B b, int index, double value);
+  }
+
+  // an entry point with a primitive result. int results are exact as doubles.
+  interface DoubleEntry<A> {
+    double invoke(QuackContext quack, long object, A a, int index);
+  }
+
+  private static <A, B, R> R enter(QuackContext quack, Entry<A, B, R> entry, long object, A a, B b, int index, double value) {
+    Thread owner = quack.ownerThread;
+    if (owner == null) {
+      synchronized (quack) {
+        return entry.invoke(quack, object, a, b, index, value);
+      }
+    }
+    if (owner != Thread.currentThread())
+      return quack.handoff(owner, () -> entry.invoke(quack, object, a, b, index, value));
+    return entry.invoke(quack, object, a, b, index, value);
+  }
+
+  private static <A> double enterDouble(QuackContext quack, DoubleEntry<A> entry, long object, A a, int index) {
+    Thread owner = quack.ownerThread;
+    if (owner == null) {
+      synchronized (quack) {
+        return entry.invoke(quack, object, a, index);
+      }
+    }
+    if (owner != Thread.currentThread())
+      return quack.handoff(owner, () -> entry.invoke(quack, object, a, index));
+    return entry.invoke(quack, object, a, index);
+  }
+
+  // entry points that are not on the hot path, and may capture their arguments.
+  <T> T guard(Invocation<T> invocation) {
+    Thread owner = ownerThread;
+    if (owner == null) {
+      synchronized (this) {
+        return invocation.invoke();
+      }
+    }
+    if (owner == Thread.currentThread())
+      return invocation.invoke();
+    return handoff(owner, invocation);
+  }
+
+  // the number of evaluate, compile, and call invocations on the stack, so budgets only apply
+  // to the outermost one.
+  private int invocationDepth;
+
+  // must be called from within the context. returns whether this is the outermost invocation.
+  private boolean enterInvocation() {
+    if (invocationDepth++ != 0)
+      return false;
+    startInterruptBudget();
+    return true;
+  }
+
+  // must be called from within the context.
+  private void exitInvocation(boolean outermost) {
+    invocationDepth--;
+    if (!outermost)
+      return;
+    // clear the spent budget, or an interrupt that arrived during the invocation, so that it
+    // does not interrupt anything outside of an invocation.
+    if (interruptStarted || interruptRequested) {
+      interruptStarted = false;
+      interruptRequested = false;
+      if (context != 0)
+        setInterruptBudget(context, 0, 0);
+    }
+    if (isMemoryTracked())
+      checkMemoryPressure();
+  }
+
+  // must be called from within the context, before exitInvocation.
+  private QuackException checkInterrupted(boolean outermost, QuackException e) {
+    if (outermost && (interruptStarted || interruptRequested) && !(e instanceof QuackInterruptedException) && context != 0 && isInterrupted(context))
+      return new QuackInterruptedException(e);
+    return e;
+  }
+
+  // must be called from within the context, at the end of every evaluate or call.
+  private void finishInvocation(boolean outermost, long start) {
+    try {
+      totalElapsedScriptExecutionMs += System.nanoTime() / 1000000 - start;
+      handlePostInvocation();
+      // so leaked contexts are not held until some thread happens to create another.
+      if (outermost && contextReferences.poll())
+        destroyLeakedContexts();
+    }
+    finally {
+      exitInvocation(outermost);
+    }
+  }
+
+  private <T> T handoff(Thread owner, Invocation<T> invocation) {
+    if (ownerExecutor == null)
+      throw new IllegalStateException("QuackContext is confined to thread " + owner.getName());
+
+    FutureTask<T> task = new FutureTask<>(invocation::invoke);
+    ownerExecutor.execute(task);
+    try {
+      return task.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while waiting for QuackContext owner thread", e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException)cause;
+      if (cause instanceof Error)
+        throw (Error)cause;
+      throw new RuntimeException(cause);
+    }
+  }
+
   private long context;
 
   private QuackContext(boolean useQuickJS) {
@@ -501,15 +770,66 @@ public final class QuackContext implements Closeable {
     putJavaToJavaScriptCoercion(Enum.class, (clazz, o) -> o.toString());
 
     putJavaToJavaScriptCoercion(ByteBuffer.class, (clazz, o) -> {
-      // send as is to quickjs, it can handle direct buffers at any position/limit.
-      if (o.isDirect() && useQuickJS)
+      // send as is, direct buffers are viewed in place at any position/limit, and heap
+      // buffers are copied natively straight out of their backing array.
+      if ((o.isDirect() && !o.isReadOnly()) || o.hasArray())
         return o;
 
+      // read only heap buffers do not expose their backing array, and read only direct
+      // buffers (ie, READ_ONLY file mappings) would fault the process if the script wrote
+      // to the typed array viewing them.
       ByteBuffer direct = ByteBuffer.allocateDirect(o.remaining());
       direct.put(o.duplicate());
-      direct.flip();
+      ((Buffer)direct).flip();
       return direct;
     });
+
+    // typed buffers are sent as the matching typed array. writable direct buffers in native
+    // order are viewed as is, others are copied.
+    for (Class bufferClass: new Class[] { ShortBuffer.class, CharBuffer.class, IntBuffer.class, FloatBuffer.class, DoubleBuffer.class }) {
+      putJavaToJavaScriptCoercion(bufferClass, (clazz, o) -> {
+        Buffer buffer = (Buffer)o;
+        if (buffer.isDirect() && !buffer.isReadOnly() && PrimitiveArrays.isNativeOrder(buffer))
+          return buffer;
+        return PrimitiveArrays.toDirect(buffer);
+      });
+    }
+
+    // promises and completion stages are bridged where CompletableFuture is available.
+    // Duktape has no Promise.
+    if (useQuickJS && supportsCompletableFuture)
+      QuackFutures.register(this);
+  }
+
+  private static final boolean supportsCompletableFuture = checkCompletableFuture();
+
+  private static boolean checkCompletableFuture() {
+    try {
+      Class.forName("java.util.concurrent.CompletableFuture");
+      return true;
+    }
+    catch (Throwable e) {
+      return false;
+    }
+  }
+
+  // evaluated once, on first use by QuackFutures.
+  private JavaScriptObject promiseBridge;
+  JavaScriptObject getPromiseBridge(Invocation<JavaScriptObject> create) {
+    return guard(() -> {
+      if (promiseBridge == null)
+        promiseBridge = create.invoke();
+      return promiseBridge;
+    });
+  }
+
+  // settles promises from completion stages without blocking the completing thread, where possible.
+  Executor getSettleExecutor() {
+    if (jobExecutor != null)
+      return jobExecutor;
+    if (ownerThread != null && ownerExecutor != null)
+      return ownerExecutor;
+    return Runnable::run;
   }
 
   private long totalElapsedScriptExecutionMs;
@@ -536,16 +856,24 @@ public final class QuackContext implements Closeable {
    *
    * @throws QuackException if there is an error evaluating the script.
    */
-  public synchronized <T> T evaluate(Class<T> clazz, String script, String fileName) {
+  public <T> T evaluate(Class<T> clazz, String script, String fileName) {
+    return guard(() -> evaluateLocked(clazz, script, fileName));
+  }
+
+  // must be called from within the context.
+  private <T> T evaluateLocked(Class<T> clazz, String script, String fileName) {
     if (context == 0)
       return null;
+    boolean outermost = enterInvocation();
     long start = System.nanoTime() / 1000000;
     try {
       return (T)coerceJavaScriptToJava(clazz, evaluate(context, script, fileName));
     }
+    catch (QuackException e) {
+      throw checkInterrupted(outermost, e);
+    }
     finally {
-      totalElapsedScriptExecutionMs += System.nanoTime() / 1000000 - start;
-      handlePostInvocation();
+      finishInvocation(outermost, start);
     }
   }
 
@@ -555,7 +883,7 @@ public final class QuackContext implements Closeable {
    *
    * @throws QuackException if there is an error evaluating the script.
    */
-  public synchronized Object evaluate(String script, String fileName) {
+  public Object evaluate(String script, String fileName) {
     return evaluate(null, script, fileName);
   }
 
@@ -565,16 +893,24 @@ public final class QuackContext implements Closeable {
    *
    * @throws QuackException if there is an error evaluating the script.
    */
-  public synchronized JavaScriptObject evaluateModule(String script, String fileName) {
+  public JavaScriptObject evaluateModule(String script, String fileName) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.evaluateModuleLocked(a, b), 0, script, fileName, 0, 0);
+  }
+
+  // must be called from within the context.
+  private JavaScriptObject evaluateModuleLocked(String script, String fileName) {
     if (context == 0)
       return null;
+    boolean outermost = enterInvocation();
     long start = System.nanoTime() / 1000000;
     try {
       return (JavaScriptObject)coerceJavaScriptToJava(JavaScriptObject.class, evaluateModule(context, script, fileName));
     }
+    catch (QuackException e) {
+      throw checkInterrupted(outermost, e);
+    }
     finally {
-      totalElapsedScriptExecutionMs += System.nanoTime() / 1000000 - start;
-      handlePostInvocation();
+      finishInvocation(outermost, start);
     }
   }
 
@@ -584,7 +920,7 @@ public final class QuackContext implements Closeable {
    *
    * @throws QuackException if there is an error evaluating the script.
    */
-  public synchronized JavaScriptObject evaluateModule(String script) {
+  public JavaScriptObject evaluateModule(String script) {
     return evaluateModule(script, "?");
   }
 
@@ -593,7 +929,7 @@ public final class QuackContext implements Closeable {
    *
    * @throws QuackException if there is an error evaluating the script.
    */
-  public synchronized Object evaluate(String script) {
+  public Object evaluate(String script) {
     return evaluate(script, "?");
   }
 
@@ -604,8 +940,8 @@ public final class QuackContext implements Closeable {
    * @param <T>
    * @return
    */
-  public synchronized <T> T evaluate(String script, Class<T> clazz) {
-      return (T)coerceJavaScriptToJava(clazz, evaluate(script));
+  public <T> T evaluate(String script, Class<T> clazz) {
+      return evaluate(clazz, script, "?");
   }
 
   /**
@@ -613,7 +949,7 @@ public final class QuackContext implements Closeable {
    * @param script
    * @return
    */
-  public synchronized JavaScriptObject evaluateForJavaScriptObject(String script) {
+  public JavaScriptObject evaluateForJavaScriptObject(String script) {
     return evaluate(script, JavaScriptObject.class);
   }
 
@@ -622,34 +958,141 @@ public final class QuackContext implements Closeable {
    *
    * @throws QuackException if there is an error evaluating the script.
    */
-  public synchronized JavaScriptObject compileFunction(String script, String fileName) {
+  public JavaScriptObject compileFunction(String script, String fileName) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.compileFunctionLocked(a, b), 0, script, fileName, 0, 0);
+  }
+
+  private JavaScriptObject compileFunctionLocked(String script, String fileName) {
     return compileFunction(context, script, fileName);
   }
 
+  /**
+   * Compile {@code script} to bytecode, which {@link #evaluateBytecode(byte[])} runs without
+   * parsing the script again. Bytecode may only be evaluated by the engine, and the build of it,
+   * that compiled it, and is not verified when it is loaded: never evaluate untrusted bytecode.
+   * See {@link QuackBytecodeCache}.
+   *
+   * @throws QuackException if there is an error compiling the script.
+   */
+  public byte[] compileToBytecode(String script, String fileName) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.compileToBytecodeLocked(a, b), 0, script, fileName, 0, 0);
+  }
+
+  private byte[] compileToBytecodeLocked(String script, String fileName) {
+    return context == 0 ? null : compileBytecode(context, script, fileName, false);
+  }
+
+  /**
+   * Compile a JavaScript function to bytecode. Evaluating the bytecode returns the function.
+   * See {@link #compileToBytecode(String, String)}.
+   */
+  public byte[] compileFunctionToBytecode(String script, String fileName) {
+    return compileToBytecode("(" + script + ")", fileName);
+  }
+
+  /**
+   * Evaluate bytecode from {@link #compileToBytecode(String, String)}, and return the expected
+   * result of a specific type.
+   *
+   * @throws QuackException if there is an error evaluating the script.
+   */
+  public <T> T evaluateBytecode(Class<T> clazz, byte[] bytecode) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.evaluateBytecodeLocked(a, b), 0, clazz, bytecode, 0, 0);
+  }
+
+  // must be called from within the context.
+  private <T> T evaluateBytecodeLocked(Class<T> clazz, byte[] bytecode) {
+    if (context == 0)
+      return null;
+    boolean outermost = enterInvocation();
+    long start = System.nanoTime() / 1000000;
+    try {
+      return (T)coerceJavaScriptToJava(clazz, evaluateBytecode(context, bytecode));
+    }
+    catch (QuackException e) {
+      throw checkInterrupted(outermost, e);
+    }
+    finally {
+      finishInvocation(outermost, start);
+    }
+  }
+
+  public Object evaluateBytecode(byte[] bytecode) {
+    return evaluateBytecode(null, bytecode);
+  }
+
+  boolean isQuickJS() {
+    return useQuickJS;
+  }
+
+  private String buildId;
+  /**
+   * Identifies the engine version and bytecode format of this context. Bytecode is only valid
+   * for the engine that compiled it.
+   */
+  String getBuildId() {
+    String ret = buildId;
+    if (ret != null)
+      return ret;
+    ret = guard(() -> context == 0 ? null : getBuildId(context));
+    if (ret == null)
+      throw new IllegalStateException("QuackContext is closed");
+    buildId = ret;
+    return ret;
+  }
+
   /**
    * Release the native resources associated with this object. You <strong>must</strong> call this
    * method for each instance to avoid leaking native memory.
    */
-  @Override public synchronized void close() {
+  @Override public void close() {
+    guard(() -> {
+      closeInternal();
+      return null;
+    });
+  }
+
+  private void closeInternal() {
     if (context != 0) {
       long contextToClose = context;
-      context = 0;
+      synchronized (interruptLock) {
+        context = 0;
+      }
+      contextReferences.unregister(contextReference);
       destroyContext(contextToClose);
     }
     nativeMappings.clear();
+    internedKeys.clear();
   }
 
-  @Override protected synchronized void finalize() throws Throwable {
-    // this isn't THAT bad, as JavaScriptObjects may be passed around without concern for the
-    // Duktape collection.
-    if (context != 0) {
-      Logger.getLogger(getClass().getName()).warning("Duktape instance leaked!");
+  // contexts that are collected without being closed are destroyed when the next one is created,
+  // or after the next outermost invocation of any context.
+  private static final NativeReferenceQueue<QuackContext> contextReferences = new NativeReferenceQueue<>();
+  private NativeReferenceQueue.Reference<QuackContext> contextReference;
+
+  private static void destroyLeakedContexts() {
+    long[] leaked;
+    // the queue has a single consumer.
+    synchronized (contextReferences) {
+      leaked = contextReferences.drain();
+    }
+    if (leaked == null)
+      return;
+    for (long context: leaked) {
+      // this isn't THAT bad, as JavaScriptObjects may be passed around without concern for the
+      // Duktape collection.
+      Logger.getLogger(QuackContext.class.getName()).warning("Duktape instance leaked!");
+      // definitely close it though. the instance is unreachable, so there is no need to
+      // enter the context (which may be confined to a thread that no longer exists).
+      destroyContext(context);
     }
-    // definitely close it though.
-    close();
   }
 
-  synchronized public JavaScriptObject getGlobalObject() {
+  public JavaScriptObject getGlobalObject() {
+    return enter(this, (quack, o, a, b, i, v) -> quack.getGlobalObjectLocked(), 0, null, null, 0, 0);
+  }
+
+  private JavaScriptObject getGlobalObjectLocked() {
     return getGlobalObject(context);
   }
 
@@ -658,10 +1101,12 @@ public final class QuackContext implements Closeable {
    * cooperateDebuger is invoked by the caller, the caller must ensure no calls into
    * the Duktape during that time.
    */
-  public synchronized void cooperateDebugger() {
-    if (context == 0)
-      return;
-    cooperateDebugger(context);
+  public void cooperateDebugger() {
+    guard(() -> {
+      if (context != 0)
+        cooperateDebugger(context);
+      return null;
+    });
   }
 
   /**
@@ -686,178 +1131,560 @@ public final class QuackContext implements Closeable {
    * Send an custom app notification to any connected debugging client.
    * @param args
    */
-  public synchronized void debuggerAppNotify(Object... args) {
-    if (context == 0)
-      return;
-    debuggerAppNotify(context, args);
+  public void debuggerAppNotify(Object... args) {
+    guard(() -> {
+      if (context != 0)
+        debuggerAppNotify(context, args);
+      return null;
+    });
   }
 
-  synchronized Object getKeyObject(long object, Object key) {
-    if (context == 0)
-      return null;
-    return getKeyObject(context, object, key);
+  /**
+   * Copy a Java primitive array into a new JavaScript typed array of the same element type:
+   * byte[] to Int8Array, short[] to Int16Array, char[] to Uint16Array, int[] to Int32Array,
+   * float[] to Float32Array, and double[] to Float64Array.
+   * @return The typed array, as it is received from JavaScript: on QuickJS, a buffer over the
+   * typed array (ie, an IntBuffer for an Int32Array), otherwise a JavaScriptObject.
+   */
+  public Object newTypedArray(Object array) {
+    if (array == null || !PrimitiveArrays.isTypedArrayClass(array.getClass()))
+      throw new IllegalArgumentException("not a primitive array with a matching typed array: " + array);
+    return enter(this, (quack, o, a, b, i, v) -> quack.newTypedArrayLocked(a), 0, array, null, 0, 0);
   }
-  synchronized Object getKeyString(long object, String key) {
-    if (context == 0)
-      return null;
-    return getKeyString(context, object, key);
+
+  private Object newTypedArrayLocked(Object array) {
+    return context == 0 ? null : newTypedArray(context, array);
   }
-  synchronized Object getKeyInteger(long object, int index) {
-    if (context == 0)
-      return null;
-    return getKeyInteger(context, object, index);
+
+  /**
+   * Map a region of a file into memory, for scripts to read in place. The buffer is sent to
+   * JavaScript as a Uint8Array over the mapping, so the file is never copied into the
+   * JavaScript heap, and the mapping stays valid for as long as either Java or JavaScript
+   * holds it. A region is at most Integer.MAX_VALUE bytes: larger files are read through
+   * several regions.
+   * <p>
+   * <strong>READ_ONLY mappings are copied in full when sent to JavaScript</strong>, since a
+   * write from the script would fault the process. Only PRIVATE (copy on write) and READ_WRITE
+   * mappings, which require write access to the file, are viewed in place.
+   * @throws FileNotFoundException if the file does not exist. Files are never created.
+   */
+  public static MappedByteBuffer mapFile(File file, FileChannel.MapMode mode, long position, long size) throws IOException {
+    if (size > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("region larger than Integer.MAX_VALUE: " + size);
+    // opening for writing would create a missing file.
+    if (!file.isFile())
+      throw new FileNotFoundException(file.toString());
+    // the mapping remains valid after the channel is closed.
+    try (RandomAccessFile raf = new RandomAccessFile(file, mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw")) {
+      return raf.getChannel().map(mode, position, size);
+    }
   }
-  synchronized boolean setKeyObject(long object, Object key, Object value) {
-    if (context == 0)
-      return false;
-    return setKeyObject(context, object, key, value);
+
+  /**
+   * Map a whole file, of at most Integer.MAX_VALUE bytes, for scripts to read. Larger files
+   * must be mapped in regions with {@link #mapFile(File, FileChannel.MapMode, long, long)}.
+   * Files that may be written are mapped copy on write, so they are viewed in place and
+   * writes from the script are never written back. Files that may only be read are mapped
+   * READ_ONLY, and so are copied when sent to JavaScript.
+   * @throws FileNotFoundException if the file does not exist.
+   */
+  public static MappedByteBuffer mapFile(File file) throws IOException {
+    FileChannel.MapMode mode = file.canWrite() ? FileChannel.MapMode.PRIVATE : FileChannel.MapMode.READ_ONLY;
+    return mapFile(file, mode, 0, file.length());
   }
-  synchronized boolean setKeyString(long object, String key, Object value) {
-    if (context == 0)
-      return false;
-    return setKeyString(context, object, key, value);
+
+  Object getTypedArray(long object) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.getTypedArrayLocked(o), object, null, null, 0, 0);
   }
-  synchronized boolean setKeyInteger(long object, int index, Object value) {
-    if (context == 0)
-      return false;
-    return setKeyInteger(context, object, index, value);
+
+  private Object getTypedArrayLocked(long object) {
+    return context == 0 ? null : getTypedArray(context, object);
+  }
+  Object[] getKeys(long object, String[] keys) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.getKeysLocked(o, a), object, keys, null, 0, 0);
+  }
+
+  private Object[] getKeysLocked(long object, String[] keys) {
+    return context == 0 ? null : getKeys(context, object, keys);
+  }
+  boolean setKeys(long object, String[] keys, Object[] values) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.setKeysLocked(o, a, b), object, keys, values, 0, 0);
+  }
+
+  private boolean setKeysLocked(long object, String[] keys, Object[] values) {
+    return context != 0 && setKeys(context, object, keys, values);
+  }
+
+  /**
+   * Intern a property name, so that it can be used to get, set, or call properties
+   * without marshalling the name on every access. Interning the same name again returns
+   * the same key. Keys remain pinned in the context until it is closed, so this is
+   * intended for a bounded set of frequently accessed names.
+   */
+  public QuackPropertyKey intern(String name) {
+    if (name == null)
+      throw new IllegalArgumentException("name must not be null");
+    return guard(() -> {
+      if (context == 0)
+        throw new IllegalStateException("QuackContext is closed");
+      QuackPropertyKey key = internedKeys.get(name);
+      if (key == null) {
+        key = new QuackPropertyKey(this, internKey(context, name), name);
+        internedKeys.put(name, key);
+      }
+      return key;
+    });
+  }
+
+  private void checkPropertyKey(QuackPropertyKey key) {
+    if (key.quackContext != this)
+      throw new IllegalArgumentException("QuackPropertyKey belongs to another QuackContext: " + key);
+  }
+
+  Object getKeyInterned(long object, QuackPropertyKey key) {
+    checkPropertyKey(key);
+    return enter(this, (quack, o, a, b, i, v) -> quack.getKeyInternedLocked(o, a), object, key, null, 0, 0);
+  }
+
+  private Object getKeyInternedLocked(long object, QuackPropertyKey key) {
+    return context == 0 ? null : getKeyInterned(context, object, key.pointer);
+  }
+  boolean setKeyInterned(long object, QuackPropertyKey key, Object value) {
+    checkPropertyKey(key);
+    return enter(this, (quack, o, a, b, i, v) -> quack.setKeyInternedLocked(o, a, b), object, key, value, 0, 0);
+  }
+
+  private boolean setKeyInternedLocked(long object, QuackPropertyKey key, Object value) {
+    return context != 0 && setKeyInterned(context, object, key.pointer, value);
+  }
+  Object getKeyObject(long object, Object key) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.getKeyObjectLocked(o, a), object, key, null, 0, 0);
+  }
+
+  private Object getKeyObjectLocked(long object, Object key) {
+    return context == 0 ? null : getKeyObject(context, object, key);
+  }
+  Object getKeyString(long object, String key) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.getKeyStringLocked(o, a), object, key, null, 0, 0);
+  }
+
+  private Object getKeyStringLocked(long object, String key) {
+    return context == 0 ? null : getKeyString(context, object, key);
+  }
+  Object getKeyInteger(long object, int index) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.getKeyIntegerLocked(o, i), object, null, null, index, 0);
+  }
+
+  private Object getKeyIntegerLocked(long object, int index) {
+    return context == 0 ? null : getKeyInteger(context, object, index);
+  }
+  boolean setKeyObject(long object, Object key, Object value) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.setKeyObjectLocked(o, a, b), object, key, value, 0, 0);
+  }
+
+  private boolean setKeyObjectLocked(long object, Object key, Object value) {
+    return context != 0 && setKeyObject(context, object, key, value);
+  }
+  boolean setKeyString(long object, String key, Object value) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.setKeyStringLocked(o, a, b), object, key, value, 0, 0);
   }
-  synchronized Object call(long object, Object... args) {
+
+  private boolean setKeyStringLocked(long object, String key, Object value) {
+    return context != 0 && setKeyString(context, object, key, value);
+  }
+  boolean setKeyInteger(long object, int index, Object value) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.setKeyIntegerLocked(o, i, b), object, null, value, index, 0);
+  }
+
+  private boolean setKeyIntegerLocked(long object, int index, Object value) {
+    return context != 0 && setKeyInteger(context, object, index, value);
+  }
+  Object call(long object, Object... args) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.callLocked(o, a), object, args, null, 0, 0);
+  }
+
+  // must be called from within the context.
+  private Object callLocked(long object, Object[] args) {
     if (context == 0)
       return null;
+    boolean outermost = enterInvocation();
     long start = System.nanoTime() / 1000000;
     try {
       return call(context, object, args);
     }
+    catch (QuackException e) {
+      throw checkInterrupted(outermost, e);
+    }
     finally {
-      totalElapsedScriptExecutionMs += System.nanoTime() / 1000000 - start;
-      handlePostInvocation();
+      finishInvocation(outermost, start);
     }
   }
-  synchronized Object callConstructor(long object, Object... args) {
+  Object callConstructor(long object, Object... args) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.callConstructorLocked(o, a), object, args, null, 0, 0);
+  }
+
+  // must be called from within the context.
+  private Object callConstructorLocked(long object, Object[] args) {
     if (context == 0)
       return null;
+    boolean outermost = enterInvocation();
     long start = System.nanoTime() / 1000000;
     try {
       return callConstructor(context, object, args);
     }
+    catch (QuackException e) {
+      throw checkInterrupted(outermost, e);
+    }
     finally {
-      totalElapsedScriptExecutionMs += System.nanoTime() / 1000000 - start;
-      handlePostInvocation();
+      finishInvocation(outermost, start);
     }
   }
-  synchronized Object callMethod(long object, Object thiz, Object... args) {
+  Object callMethod(long object, Object thiz, Object... args) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.callMethodLocked(o, a, b), object, thiz, args, 0, 0);
+  }
+
+  // must be called from within the context.
+  private Object callMethodLocked(long object, Object thiz, Object[] args) {
     if (context == 0)
       return null;
+    boolean outermost = enterInvocation();
     long start = System.nanoTime() / 1000000;
     try {
       return callMethod(context, object, thiz, args);
     }
+    catch (QuackException e) {
+      throw checkInterrupted(outermost, e);
+    }
     finally {
-      totalElapsedScriptExecutionMs += System.nanoTime() / 1000000 - start;
-      handlePostInvocation();
+      finishInvocation(outermost, start);
     }
   }
-  synchronized Object callProperty(long object, Object property, Object... args) {
+  Object callProperty(long object, Object property, Object... args) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.callPropertyLocked(o, a, b), object, property, args, 0, 0);
+  }
+
+  // must be called from within the context.
+  private Object callPropertyLocked(long object, Object property, Object[] args) {
     if (context == 0)
       return null;
+    boolean outermost = enterInvocation();
     long start = System.nanoTime() / 1000000;
     try {
       return callProperty(context, object, property, args);
     }
+    catch (QuackException e) {
+      throw checkInterrupted(outermost, e);
+    }
     finally {
-      totalElapsedScriptExecutionMs += System.nanoTime() / 1000000 - start;
-      handlePostInvocation();
+      finishInvocation(outermost, start);
     }
   }
-  synchronized String stringify(long object) {
-      if (context == 0)
-        return null;
-      return stringify(context, object);
+  Object callPropertyInterned(long object, QuackPropertyKey key, Object... args) {
+    checkPropertyKey(key);
+    return enter(this, (quack, o, a, b, i, v) -> quack.callPropertyInternedLocked(o, a, b), object, key, args, 0, 0);
   }
-  public synchronized long getHeapSize() {
+
+  // must be called from within the context.
+  private Object callPropertyInternedLocked(long object, QuackPropertyKey key, Object[] args) {
     if (context == 0)
-      return 0;
-    return getHeapSize(context);
+      return null;
+    boolean outermost = enterInvocation();
+    long start = System.nanoTime() / 1000000;
+    try {
+      return callPropertyInterned(context, object, key.pointer, args);
+    }
+    catch (QuackException e) {
+      throw checkInterrupted(outermost, e);
+    }
+    finally {
+      finishInvocation(outermost, start);
+    }
+  }
+  double getKeyStringDouble(long object, String key) {
+    return enterDouble(this, (quack, o, a, i) -> quack.getKeyStringDoubleLocked(o, a), object, key, 0);
   }
 
-  private interface Thrower {
-    void doThrow() throws Throwable;
+  private double getKeyStringDoubleLocked(long object, String key) {
+    return context == 0 ? Double.NaN : getKeyStringDouble(context, object, key);
   }
-  private interface Catcher {
-    JavaScriptObject doCatch(Thrower thrower);
+  double getKeyIntegerDouble(long object, int index) {
+    return enterDouble(this, (quack, o, a, i) -> quack.getKeyIntegerDoubleLocked(o, i), object, null, index);
   }
 
-  public synchronized JavaScriptObject newError(Throwable t) {
+  private double getKeyIntegerDoubleLocked(long object, int index) {
+    return context == 0 ? Double.NaN : getKeyIntegerDouble(context, object, index);
+  }
+  int getKeyStringInt(long object, String key) {
+    return (int)enterDouble(this, (quack, o, a, i) -> quack.getKeyStringIntLocked(o, a), object, key, 0);
+  }
+
+  private int getKeyStringIntLocked(long object, String key) {
+    return context == 0 ? 0 : getKeyStringInt(context, object, key);
+  }
+  int getKeyIntegerInt(long object, int index) {
+    return (int)enterDouble(this, (quack, o, a, i) -> quack.getKeyIntegerIntLocked(o, i), object, null, index);
+  }
+
+  private int getKeyIntegerIntLocked(long object, int index) {
+    return context == 0 ? 0 : getKeyIntegerInt(context, object, index);
+  }
+  boolean setKeyStringDouble(long object, String key, double value) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.setKeyStringDoubleLocked(o, a, v), object, key, null, 0, value);
+  }
+
+  private boolean setKeyStringDoubleLocked(long object, String key, double value) {
+    return context != 0 && setKeyStringDouble(context, object, key, value);
+  }
+  boolean setKeyIntegerDouble(long object, int index, double value) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.setKeyIntegerDoubleLocked(o, i, v), object, null, null, index, value);
+  }
+
+  private boolean setKeyIntegerDoubleLocked(long object, int index, double value) {
+    return context != 0 && setKeyIntegerDouble(context, object, index, value);
+  }
+  boolean setKeyStringInt(long object, String key, int value) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.setKeyStringIntLocked(o, a, (int)v), object, key, null, 0, value);
+  }
+
+  private boolean setKeyStringIntLocked(long object, String key, int value) {
+    return context != 0 && setKeyStringInt(context, object, key, value);
+  }
+  boolean setKeyIntegerInt(long object, int index, int value) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.setKeyIntegerIntLocked(o, i, (int)v), object, null, null, index, value);
+  }
+
+  private boolean setKeyIntegerIntLocked(long object, int index, int value) {
+    return context != 0 && setKeyIntegerInt(context, object, index, value);
+  }
+  double callDouble(long object, double... args) {
+    return enterDouble(this, (quack, o, a, i) -> quack.callDoubleLocked(o, a), object, args, 0);
+  }
+
+  // must be called from within the context.
+  private double callDoubleLocked(long object, double[] args) {
     if (context == 0)
-      return null;
+      return Double.NaN;
+    boolean outermost = enterInvocation();
+    long start = System.nanoTime() / 1000000;
     try {
-      Thrower thrower = () -> {
-        throw t;
-      };
-      Catcher catcher = evaluate("(function(t) { try { t(); } catch (e) { return e } })", Catcher.class);
-      return catcher.doCatch(thrower);
+      return callDouble(context, object, args);
     }
-    catch (Throwable unexpected) {
-      return null;
+    catch (QuackException e) {
+      throw checkInterrupted(outermost, e);
     }
+    finally {
+      finishInvocation(outermost, start);
+    }
+  }
+  String stringify(long object) {
+    return enter(this, (quack, o, a, b, i, v) -> quack.stringifyLocked(o), object, null, null, 0, 0);
   }
 
-  public synchronized void throwObject(Object o) {
-    if (context == 0)
-      return;
-    evaluateForJavaScriptObject("(function(t) { throw t; })").call(o);
+  private String stringifyLocked(long object) {
+    return context == 0 ? null : stringify(context, object);
+  }
+  public long getHeapSize() {
+    return guard(this::getHeapSizeLocked);
   }
 
-  // to prevent from blocking the JavaScriptObject finalizer, create
-  // a finalization queue for the JS side.
-  final ArrayList<Long> finalizationQueue = new ArrayList<>();
-  // this method should NOT be synchronized at the QuackContext level, so it never blocks a finalizer
-  void finalizeJavaScriptObject(long object) {
-    if (context == 0)
-      return;
-    synchronized (finalizationQueue) {
-      finalizationQueue.add(object);
-    }
+  private long getHeapSizeLocked() {
+    return context == 0 ? 0L : getHeapSize(context);
   }
-  synchronized private void finalizeJavaScriptObjects() {
-    long[] copy;
-    synchronized (finalizationQueue) {
-      if (finalizationQueue.isEmpty())
-        return;
-      copy = new long[finalizationQueue.size()];
-      for (int i = 0; i < finalizationQueue.size(); i++) {
-        copy[i] = finalizationQueue.get(i);
+
+  private interface Thrower {
+    void doThrow() throws Throwable;
+  }
+  private interface Catcher {
+    JavaScriptObject doCatch(Thrower thrower);
+  }
+
+  public JavaScriptObject newError(Throwable t) {
+    return guard(() -> {
+      if (context == 0)
+        return null;
+      try {
+        Thrower thrower = () -> {
+          throw t;
+        };
+        Catcher catcher = evaluate("(function(t) { try { t(); } catch (e) { return e } })", Catcher.class);
+        return catcher.doCatch(thrower);
       }
-      finalizationQueue.clear();
-    }
-    if (context == 0)
-      return;
-    finalizeJavaScriptObjects(context, copy);
+      catch (Throwable unexpected) {
+        return null;
+      }
+    });
+  }
+
+  public void throwObject(Object o) {
+    guard(() -> {
+      if (context != 0)
+        evaluateForJavaScriptObject("(function(t) { throw t; })").call(o);
+      return null;
+    });
   }
-  synchronized private boolean hasPostInvocationTasks() {
-    synchronized (finalizationQueue) {
-       if (!finalizationQueue.isEmpty())
-         return true;
+
+  // JavaScriptObjects are released in batches, after they are collected, from within the context.
+  private final NativeReferenceQueue<JavaScriptObject> javaScriptObjectReferences = new NativeReferenceQueue<>();
+  // this method should NOT be synchronized at the QuackContext level, JavaScriptObjects may be
+  // created on any thread.
+  void registerJavaScriptObject(JavaScriptObject object) {
+    if (object.pointer != 0)
+      javaScriptObjectReferences.register(object, object.pointer);
+  }
+  private void finalizeJavaScriptObjects() {
+    guard(() -> {
+      finalizeJavaScriptObjectsInternal();
+      return null;
+    });
+  }
+  // must be called from within the context.
+  private void finalizeJavaScriptObjectsInternal() {
+    releaseJavaScriptObjects(0);
+  }
+  // collected pointers that were drained, but not yet released due to the post invocation budget.
+  private long[] releaseBacklog;
+  private int releaseBacklogOffset;
+  private static final int RELEASE_BATCH_SIZE = 1024;
+  // must be called from within the context. release collected JavaScriptObjects, in batches
+  // if there is a deadline, until the deadline passes. returns whether all were released.
+  private boolean releaseJavaScriptObjects(long deadline) {
+    while (true) {
+      if (releaseBacklog == null) {
+        releaseBacklog = javaScriptObjectReferences.drain();
+        releaseBacklogOffset = 0;
+        if (releaseBacklog == null)
+          return true;
+      }
+      if (context == 0) {
+        releaseBacklog = null;
+        return true;
+      }
+
+      int remaining = releaseBacklog.length - releaseBacklogOffset;
+      int count = deadline == 0 ? remaining : Math.min(RELEASE_BATCH_SIZE, remaining);
+      long[] batch = count == releaseBacklog.length ? releaseBacklog : Arrays.copyOfRange(releaseBacklog, releaseBacklogOffset, releaseBacklogOffset + count);
+      finalizeJavaScriptObjects(context, batch);
+      releaseBacklogOffset += count;
+      if (releaseBacklogOffset == releaseBacklog.length)
+        releaseBacklog = null;
+
+      if (deadline != 0 && System.nanoTime() - deadline >= 0)
+        return releaseBacklog == null;
     }
-    // this should be called outside of the queue check to prevent weird blocking.
+  }
+  // must be called from within the context.
+  private boolean hasPostInvocationTasks() {
+    if (releaseBacklog != null || javaScriptObjectReferences.poll())
+      return true;
     return hasPendingJobs(context);
   }
-  synchronized private void handlePostInvocation() {
+  /**
+   * The number of JavaScriptObjects that hold a reference into the context, and have not
+   * yet been collected and released.
+   */
+  public int getJavaScriptObjectCount() {
+    return javaScriptObjectReferences.size();
+  }
+  /**
+   * The number of collected JavaScriptObjects that are waiting to be released from within
+   * the context.
+   */
+  public long getPendingReleaseCount() {
+    javaScriptObjectReferences.poll();
+    return javaScriptObjectReferences.getPendingCount();
+  }
+  /**
+   * The total number of collected JavaScriptObjects that have been released. Sampled over time,
+   * this is the release rate.
+   */
+  public long getReleasedJavaScriptObjectCount() {
+    return javaScriptObjectReferences.getReleasedCount();
+  }
+  /**
+   * The number of batches that collected JavaScriptObjects have been released in.
+   */
+  public long getReleaseBatchCount() {
+    return javaScriptObjectReferences.getBatchCount();
+  }
+  // must be called from within the context.
+  private void handlePostInvocation() {
     if (!hasPostInvocationTasks())
         return;
     if (jobExecutor == null) {
-      runPostInvocation();
+      runPostInvocationInContext();
       return;
     }
 
+    schedulePostInvocation();
+  }
+  private void schedulePostInvocation() {
+    // a drain that is already queued will pick up any new work.
+    if (jobExecutor == null || postInvocationScheduled.getAndSet(true))
+      return;
     jobExecutor.execute(this::runPostInvocation);
   }
-  synchronized void runPostInvocation() {
+  void runPostInvocation() {
+    postInvocationScheduled.set(false);
+    guard(() -> {
+      // jobs run outside of an invocation count against the invocation budget.
+      boolean outermost = enterInvocation();
+      try {
+        runPostInvocationInContext();
+      }
+      finally {
+        exitInvocation(outermost);
+      }
+      return null;
+    });
+  }
+  // must be called from within the context.
+  private void runPostInvocationInContext() {
     if (context == 0)
       return;
-    finalizeJavaScriptObjects();
-    runJobs(context);
+    long start = System.nanoTime();
+    long deadline = postInvocationMaxNanos == 0 ? 0 : start + postInvocationMaxNanos;
+    if (releaseJavaScriptObjects(deadline)) {
+      long remaining = deadline == 0 ? 0 : Math.max(1, deadline - System.nanoTime());
+      runJobs(context, postInvocationMaxJobs, remaining);
+    }
+    postInvocationLatency.record(System.nanoTime() - start);
+
+    // work left over by a spent budget is drained by the job executor when it gets to it,
+    // otherwise, after the next invocation.
+    if ((postInvocationMaxJobs != 0 || postInvocationMaxNanos != 0) && hasPostInvocationTasks())
+      schedulePostInvocation();
+  }
+  // drains pending jobs outside of an invocation, ie, between the tasks of an event loop.
+  void drainPostInvocation() {
+    if (guard(() -> context != 0 && hasPostInvocationTasks()))
+      runPostInvocation();
+  }
+  private final AtomicBoolean postInvocationScheduled = new AtomicBoolean();
+  private int postInvocationMaxJobs;
+  private long postInvocationMaxNanos;
+  private final LatencyRecorder postInvocationLatency = new LatencyRecorder(1024);
+
+  /**
+   * Limit the work done by each post invocation drain, which runs pending jobs and releases
+   * collected JavaScriptObjects after an evaluate or call, to bound the latency it adds to that
+   * caller. Work left over by a spent budget is drained by the job executor, if there is one,
+   * otherwise after the next invocation.
+   * @param maxJobs The maximum number of jobs to run per drain, or 0 for no limit.
+   * @param maxMicros The maximum time to spend per drain, or 0 for no limit. At least one job
+   * is run per drain regardless.
+   */
+  public void setPostInvocationBudget(int maxJobs, long maxMicros) {
+    if (maxJobs < 0 || maxMicros < 0)
+      throw new IllegalArgumentException("budgets must not be negative");
+    postInvocationMaxJobs = maxJobs;
+    postInvocationMaxNanos = TimeUnit.MICROSECONDS.toNanos(maxMicros);
+  }
+
+  /**
+   * The latency of recent post invocation drains at a percentile (ie, 99), in nanoseconds.
+   */
+  public long getPostInvocationLatencyNanos(double percentile) {
+    return postInvocationLatency.getPercentile(percentile);
   }
   private Executor jobExecutor;
   public void setJobExecutor(Executor executor) {
@@ -867,7 +1694,217 @@ public final class QuackContext implements Closeable {
     return jobExecutor;
   }
 
+  private long invocationBudgetNanos;
+  private long invocationBudgetInstructions;
+  private volatile boolean interruptRequested;
+  // held while the native context is destroyed, so interrupts from other threads never race it.
+  private final Object interruptLock = new Object();
+
+  /**
+   * Limit the time, and the approximate number of instructions, that each outermost invocation
+   * (ie, evaluate or call, along with any calls back into JavaScript that they make) may run for.
+   * An invocation that exceeds either budget is aborted with a {@link QuackInterruptedException},
+   * which scripts can not catch, and the context remains usable. Time spent in Java callbacks
+   * counts against the deadline, but they are not interrupted. Property gets and sets made
+   * outside of an invocation are not budgeted.
+   * Instructions are counted in intervals, of 10000 ticks (function calls and loop iterations)
+   * for QuickJS and 262144 bytecode instructions for Duktape.
+   * @param maxMillis The maximum time per invocation, or 0 for no limit.
+   * @param maxInstructions The maximum instructions per invocation, or 0 for no limit.
+   */
+  public void setInvocationBudget(long maxMillis, long maxInstructions) {
+    if (maxMillis < 0 || maxInstructions < 0)
+      throw new IllegalArgumentException("budgets must not be negative");
+    guard(() -> {
+      invocationBudgetNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+      invocationBudgetInstructions = maxInstructions;
+      // clear any budget left over from the last invocation.
+      if (context != 0)
+        setInterruptBudget(context, 0, 0);
+      return null;
+    });
+  }
+
+  /**
+   * Interrupt the running invocation, if any, which is aborted with a
+   * {@link QuackInterruptedException}. May be called from any thread.
+   */
+  public void interrupt() {
+    synchronized (interruptLock) {
+      if (context == 0)
+        return;
+      interruptRequested = true;
+      interrupt(context);
+    }
+  }
+
+  private boolean isInterruptArmed() {
+    return invocationBudgetNanos != 0 || invocationBudgetInstructions != 0 || interruptRequested;
+  }
+
+  // whether the native budget was reset for the outermost invocation, and is cleared after it.
+  private boolean interruptStarted;
+
+  // resets the native budget for a new outermost invocation, which clears any stale interrupt.
+  private void startInterruptBudget() {
+    if (!isInterruptArmed() || context == 0)
+      return;
+    interruptRequested = false;
+    interruptStarted = true;
+    setInterruptBudget(context, invocationBudgetNanos, invocationBudgetInstructions);
+  }
+
+  private long gcThreshold;
+  private long softWatermark;
+  private long hardWatermark;
+  private QuackMemoryListener memoryListener;
+  private QuackMemoryListener.Level memoryPressure;
+
+  /**
+   * Cap the allocated size of the JavaScript heap. Allocations past the cap fail, which scripts
+   * see as out of memory errors, and the context remains usable once the memory is released.
+   * @param maxBytes The maximum heap size, or 0 for no limit.
+   */
+  public void setMemoryLimit(long maxBytes) {
+    if (maxBytes < 0)
+      throw new IllegalArgumentException("memory limit must not be negative");
+    guard(() -> {
+      if (context != 0)
+        setMemoryLimit(context, maxBytes);
+      return null;
+    });
+  }
+
+  /**
+   * Set the allocated size of the heap that triggers the next garbage collection, which is
+   * then raised as the heap grows. QuickJS collects as soon as the threshold is crossed,
+   * Duktape at the end of the outermost invocation that crossed it.
+   * @param bytes The threshold, or 0 for the engine's default.
+   */
+  public void setGCThreshold(long bytes) {
+    if (bytes < 0)
+      throw new IllegalArgumentException("GC threshold must not be negative");
+    guard(() -> {
+      gcThreshold = bytes;
+      if (context != 0)
+        setGCThreshold(context, bytes);
+      return null;
+    });
+  }
+
+  /**
+   * Notify a listener when the heap crosses a watermark, which is checked at the end of every
+   * outermost invocation. An allocation refused by the memory limit is reported as
+   * {@link QuackMemoryListener.Level#HARD} regardless of the watermarks.
+   * @param softWatermark The soft watermark in bytes, or 0 for none.
+   * @param hardWatermark The hard watermark in bytes, or 0 for none.
+   * @param listener The listener, or null to remove it.
+   */
+  public void setMemoryListener(long softWatermark, long hardWatermark, QuackMemoryListener listener) {
+    if (softWatermark < 0 || hardWatermark < 0)
+      throw new IllegalArgumentException("watermarks must not be negative");
+    guard(() -> {
+      this.softWatermark = softWatermark;
+      this.hardWatermark = hardWatermark;
+      memoryListener = listener;
+      memoryPressure = null;
+      return null;
+    });
+  }
+
+  /**
+   * The allocated size of the JavaScript heap, as measured against the memory limit and
+   * watermarks. Unlike {@link #getHeapSize()}, this does not walk the heap.
+   */
+  public long getMemoryUsage() {
+    return guard(() -> {
+      if (context == 0)
+        return 0L;
+      return pollMemoryUsage(context);
+    });
+  }
+
+  private boolean isMemoryTracked() {
+    return memoryListener != null || gcThreshold != 0;
+  }
+
+  // must be called from within the context, outside of any invocation.
+  private void checkMemoryPressure() {
+    if (context == 0)
+      return;
+    long heapSize = pollMemoryUsage(context);
+    boolean limitExceeded = takeMemoryLimitExceeded(context);
+    QuackMemoryListener listener = memoryListener;
+    if (listener == null)
+      return;
+
+    QuackMemoryListener.Level level;
+    if (limitExceeded || (hardWatermark != 0 && heapSize >= hardWatermark))
+      level = QuackMemoryListener.Level.HARD;
+    else if (softWatermark != 0 && heapSize >= softWatermark)
+      level = QuackMemoryListener.Level.SOFT;
+    else
+      level = null;
+
+    // only report increases, so a level is reported again once the heap drops below it.
+    QuackMemoryListener.Level previous = memoryPressure;
+    memoryPressure = level;
+    if (level != null && (previous == null || level.compareTo(previous) > 0))
+      listener.onMemoryPressure(this, level, heapSize);
+  }
+
+  private QuackModuleLoader moduleLoader;
+  private QuackModuleCache moduleCache;
+
+  /**
+   * Resolve and load the ES modules imported by modules in this context. Each module is loaded
+   * once per context, by its normalized name. Without a module loader, imports are loaded
+   * from the file system. QuickJS only.
+   * @param moduleCache Shares compiled modules between contexts, or null.
+   */
+  public void setModuleLoader(QuackModuleLoader moduleLoader, QuackModuleCache moduleCache) {
+    if (!useQuickJS)
+      throw new UnsupportedOperationException("modules are only supported by QuickJS");
+    this.moduleLoader = moduleLoader;
+    this.moduleCache = moduleCache;
+  }
+  public void setModuleLoader(QuackModuleLoader moduleLoader) {
+    setModuleLoader(moduleLoader, null);
+  }
+  public QuackModuleLoader getModuleLoader() {
+    return moduleLoader;
+  }
+
   // hooks from js/jni to java
+  private String quackNormalizeModule(String baseName, String moduleName) {
+    QuackModuleLoader loader = moduleLoader;
+    if (loader == null)
+      return QuackModuleLoaders.normalizePath(baseName, moduleName);
+    return loader.normalize(baseName, moduleName);
+  }
+  // returns the module source, its bytecode, or null to load it from the file system.
+  private Object quackLoadModule(String moduleName) throws IOException {
+    QuackModuleLoader loader = moduleLoader;
+    if (loader == null)
+      return null;
+    String source = loader.load(moduleName);
+    if (source == null)
+      throw new FileNotFoundException("module not found: " + moduleName);
+    QuackModuleCache cache = moduleCache;
+    if (cache == null)
+      return source;
+    // on a miss, the source is compiled by this context, and handed back to quackCacheModule.
+    byte[] bytecode = cache.get(moduleName, source);
+    return bytecode != null ? bytecode : source;
+  }
+  private boolean quackCachesModules() {
+    return moduleCache != null;
+  }
+  private void quackCacheModule(String moduleName, String source, byte[] bytecode) {
+    QuackModuleCache cache = moduleCache;
+    if (cache != null)
+      cache.put(moduleName, source, bytecode);
+  }
   private Object quackGet(QuackObject quackObject, Object key) {
     return quackObject.get(key);
   }
@@ -884,17 +1921,35 @@ public final class QuackContext implements Closeable {
   private Object quackConstruct(QuackObject quackObject, Object... args) {
     return quackObject.construct(args == null ? empty : args);
   }
-  synchronized public void quackMapNative(Object key, Object value) {
-    nativeMappings.put(key, value);
+  public void quackMapNative(Object key, Object value) {
+    enter(this, (quack, o, a, b, i, v) -> quack.nativeMappings.put(a, b), 0, key, value, 0, 0);
+  }
+  // called natively with a view over a typed array's memory, to create the typed buffer
+  // for that view. the buffer is mapped to the typed array, if there is one.
+  public Object quackTypedArrayView(ByteBuffer buffer, int kind, Object javaScriptObject) {
+    Buffer view = PrimitiveArrays.view(buffer, kind);
+    if (javaScriptObject != null)
+      quackMapNative(view, javaScriptObject);
+    if (PrimitiveArrays.isUnsigned(kind)) {
+      synchronized (unsignedViews) {
+        unsignedViews.put(view, Boolean.TRUE);
+      }
+    }
+    return view;
+  }
+  private boolean isUnsignedView(Object buffer) {
+    synchronized (unsignedViews) {
+      return unsignedViews.get(buffer) != null;
+    }
   }
   public Object quackUnmapNative(Object key) {
     return nativeMappings.get(key);
   }
-  synchronized public int purgeNativeMappings() {
-    return nativeMappings.purge();
+  public int purgeNativeMappings() {
+    return guard(nativeMappings::purge);
   }
-  synchronized public int getMappedNativeCount() {
-    return nativeMappings.size();
+  public int getMappedNativeCount() {
+    return guard(nativeMappings::size);
   }
   private long getNativePointer(QuackJavaScriptObject quackJavaScriptObject) {
     if (quackJavaScriptObject.getNativeContext() != context)
@@ -914,30 +1969,57 @@ public final class QuackContext implements Closeable {
   }
 
   private static native long getHeapSize(long context);
+  private static native String getBuildId(long context);
 
   private static native long createContext(QuackContext quackContext, boolean useQuickJS);
   private static native void destroyContext(long context);
   private static native Object evaluate(long context, String sourceCode, String fileName);
   private static native Object evaluateModule(long context, String sourceCode, String fileName);
   private static native JavaScriptObject compileFunction(long context, String script, String fileName);
+  private static native byte[] compileBytecode(long context, String script, String fileName, boolean module);
+  private static native Object evaluateBytecode(long context, byte[] bytecode);
 
   private static native void cooperateDebugger(long context);
   private static native void waitForDebugger(long context, String connectionString);
   private static native boolean isDebugging(long context);
   private static native void debuggerAppNotify(long context, Object... args);
+  private static native Object[] getKeys(long context, long object, String[] keys);
+  private static native boolean setKeys(long context, long object, String[] keys, Object[] values);
+  private static native Object newTypedArray(long context, Object array);
+  private static native Object getTypedArray(long context, long object);
+  private static native long internKey(long context, String key);
+  private static native Object getKeyInterned(long context, long object, long key);
+  private static native boolean setKeyInterned(long context, long object, long key, Object value);
   private static native Object getKeyObject(long context, long object, Object key);
   private static native Object getKeyString(long context, long object, String key);
   private static native Object getKeyInteger(long context, long object, int index);
   private static native boolean setKeyObject(long context, long object, Object key, Object value);
   private static native boolean setKeyString(long context, long object, String key, Object value);
   private static native boolean setKeyInteger(long context, long object, int index, Object value);
+  private static native double getKeyStringDouble(long context, long object, String key);
+  private static native double getKeyIntegerDouble(long context, long object, int index);
+  private static native int getKeyStringInt(long context, long object, String key);
+  private static native int getKeyIntegerInt(long context, long object, int index);
+  private static native boolean setKeyStringDouble(long context, long object, String key, double value);
+  private static native boolean setKeyIntegerDouble(long context, long object, int index, double value);
+  private static native boolean setKeyStringInt(long context, long object, String key, int value);
+  private static native boolean setKeyIntegerInt(long context, long object, int index, int value);
   private static native Object call(long context, long object, Object... args);
+  private static native double callDouble(long context, long object, double... args);
   private static native Object callConstructor(long context, long object, Object... args);
   private static native Object callMethod(long context, long object, Object thiz, Object... args);
   private static native Object callProperty(long context, long object, Object property, Object... args);
+  private static native Object callPropertyInterned(long context, long object, long key, Object... args);
   private static native JavaScriptObject getGlobalObject(long context);
   private static native String stringify(long context, long object);
   private static native void finalizeJavaScriptObjects(long context, long[] objects);
   private static native boolean hasPendingJobs(long context);
-  private static native void runJobs(long context);
+  private static native int runJobs(long context, int maxJobs, long maxNanos);
+  private static native void setInterruptBudget(long context, long maxNanos, long maxInstructions);
+  private static native void interrupt(long context);
+  private static native boolean isInterrupted(long context);
+  private static native void setMemoryLimit(long context, long limit);
+  private static native void setGCThreshold(long context, long threshold);
+  private static native long pollMemoryUsage(long context);
+  private static native boolean takeMemoryLimitExceeded(long context);
 }
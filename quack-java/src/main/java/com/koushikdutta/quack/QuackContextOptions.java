@@ -0,0 +1,54 @@
+package com.koushikdutta.quack;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Creation time options for a QuackContext. See {@link QuackContext#create(QuackContextOptions)}.
+ */
+public class QuackContextOptions {
+    boolean useQuickJS = true;
+    boolean threadConfined;
+    Executor ownerExecutor;
+    boolean typedArrayCoercion;
+
+    public QuackContextOptions setUseQuickJS(boolean useQuickJS) {
+        this.useQuickJS = useQuickJS;
+        return this;
+    }
+
+    /**
+     * Confine the context to the thread that creates it. A confined context does not
+     * take the QuackContext monitor when it is entered by the owner thread.
+     * Calls made from any other thread are queued to the ownerExecutor, which must
+     * run its tasks on the owner thread (ie, an event loop). If ownerExecutor is null,
+     * calls from other threads will throw an IllegalStateException.
+     */
+    public QuackContextOptions setThreadConfined(Executor ownerExecutor) {
+        this.threadConfined = true;
+        this.ownerExecutor = ownerExecutor;
+        return this;
+    }
+
+    /**
+     * Send Java primitive arrays to JavaScript as copies in the matching typed array
+     * (ie, int[] as an Int32Array), rather than as Java objects that are read element by element.
+     * JavaScript will no longer be able to modify the Java array in place.
+     * See {@link QuackContext#newTypedArray(Object)}.
+     */
+    public QuackContextOptions setTypedArrayCoercion(boolean typedArrayCoercion) {
+        this.typedArrayCoercion = typedArrayCoercion;
+        return this;
+    }
+
+    public boolean getUseQuickJS() {
+        return useQuickJS;
+    }
+
+    public boolean isThreadConfined() {
+        return threadConfined;
+    }
+
+    public boolean getTypedArrayCoercion() {
+        return typedArrayCoercion;
+    }
+}
@@ -0,0 +1,231 @@
+package com.koushikdutta.quack;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A fixed size pool of identically initialized QuackContexts.
+ * Every QuackContext serializes its callers on a single JavaScript heap, so a pool
+ * allows script execution to scale with the number of available cores.
+ * Contexts are leased to a thread for the duration of a task. JavaScriptObjects
+ * are owned by the context that created them, and tasks that operate on a JavaScriptObject
+ * must be run on that context: see {@link #run(JavaScriptObject, Task)}.
+ */
+public final class QuackContextPool implements Closeable {
+    /**
+     * Prepare a newly created QuackContext, ie, by evaluating bootstrap scripts or
+     * setting globals. The initializer is run once for every context in the pool.
+     */
+    public interface Initializer {
+        void initialize(QuackContext quack);
+    }
+
+    public interface Task<T> {
+        T run(QuackContext quack);
+    }
+
+    private static class Lease {
+        Thread thread;
+        int count;
+    }
+
+    private final List<QuackContext> contexts;
+    private final ArrayDeque<QuackContext> idle = new ArrayDeque<>();
+    private final HashMap<QuackContext, Lease> leases = new HashMap<>();
+    private boolean closed;
+
+    public QuackContextPool(int size, boolean useQuickJS, Initializer initializer) {
+        this(size, () -> QuackContext.create(useQuickJS), initializer);
+    }
+
+    /**
+     * Create a pool of contexts from a template, which initializes them without
+     * parsing the bootstrap scripts again.
+     */
+    public QuackContextPool(int size, QuackContextTemplate template) {
+        this(size, template::create, null);
+    }
+
+    private interface Factory {
+        QuackContext create();
+    }
+
+    private QuackContextPool(int size, Factory factory, Initializer initializer) {
+        if (size <= 0)
+            throw new IllegalArgumentException("pool size must be positive");
+
+        ArrayList<QuackContext> contexts = new ArrayList<>();
+        try {
+            for (int i = 0; i < size; i++) {
+                QuackContext quack = factory.create();
+                contexts.add(quack);
+                if (initializer != null)
+                    initializer.initialize(quack);
+            }
+        }
+        catch (RuntimeException e) {
+            for (QuackContext quack: contexts) {
+                quack.close();
+            }
+            throw e;
+        }
+        this.contexts = Collections.unmodifiableList(contexts);
+        idle.addAll(contexts);
+    }
+
+    public QuackContextPool(int size, Initializer initializer) {
+        this(size, true, initializer);
+    }
+
+    public int size() {
+        return contexts.size();
+    }
+
+    public List<QuackContext> getContexts() {
+        return contexts;
+    }
+
+    public boolean owns(QuackContext quack) {
+        return contexts.contains(quack);
+    }
+
+    /**
+     * Lease any idle context, waiting if necessary. A thread that already holds a lease
+     * will be given the same context again. Leases must be matched with calls to {@link #release(QuackContext)}.
+     */
+    public synchronized QuackContext acquire() throws InterruptedException {
+        QuackContext current = getLeased(Thread.currentThread());
+        if (current != null)
+            return lease(current);
+
+        while (idle.isEmpty()) {
+            ensureOpen();
+            wait();
+        }
+        ensureOpen();
+        return lease(idle.removeFirst());
+    }
+
+    /**
+     * Lease a specific context, waiting until it is idle. A thread may only hold a lease on
+     * one context at a time, since two threads waiting on each other's contexts would deadlock.
+     */
+    public synchronized QuackContext acquire(QuackContext quack) throws InterruptedException {
+        if (!owns(quack))
+            throw new IllegalArgumentException("QuackContext does not belong to this pool");
+
+        QuackContext current = getLeased(Thread.currentThread());
+        if (current == quack)
+            return lease(quack);
+        if (current != null)
+            throw new IllegalStateException("thread already holds a lease on another QuackContext");
+
+        while (!idle.contains(quack)) {
+            ensureOpen();
+            wait();
+        }
+        ensureOpen();
+        idle.remove(quack);
+        return lease(quack);
+    }
+
+    /**
+     * Lease the context that owns the given JavaScriptObject, waiting until it is idle.
+     */
+    public QuackContext acquire(JavaScriptObject owner) throws InterruptedException {
+        return acquire(owner.quackContext);
+    }
+
+    public synchronized void release(QuackContext quack) {
+        Lease lease = leases.get(quack);
+        if (lease == null || lease.thread != Thread.currentThread())
+            throw new IllegalStateException("QuackContext is not leased by this thread");
+        if (--lease.count > 0)
+            return;
+        leases.remove(quack);
+        if (closed) {
+            quack.close();
+            return;
+        }
+        idle.addLast(quack);
+        notifyAll();
+    }
+
+    /**
+     * Run a task on any idle context.
+     */
+    public <T> T run(Task<T> task) throws InterruptedException {
+        QuackContext quack = acquire();
+        try {
+            return task.run(quack);
+        }
+        finally {
+            release(quack);
+        }
+    }
+
+    /**
+     * Run a task on the context that owns the given JavaScriptObject.
+     */
+    public <T> T run(JavaScriptObject owner, Task<T> task) throws InterruptedException {
+        QuackContext quack = acquire(owner);
+        try {
+            return task.run(quack);
+        }
+        finally {
+            release(quack);
+        }
+    }
+
+    /**
+     * Call a JavaScript function on the context that owns it.
+     */
+    public Object call(JavaScriptObject function, Object... args) throws InterruptedException {
+        return run(function, quack -> function.call(args));
+    }
+
+    private QuackContext lease(QuackContext quack) {
+        Lease lease = leases.get(quack);
+        if (lease == null) {
+            lease = new Lease();
+            lease.thread = Thread.currentThread();
+            leases.put(quack, lease);
+        }
+        lease.count++;
+        return quack;
+    }
+
+    private QuackContext getLeased(Thread thread) {
+        for (Map.Entry<QuackContext, Lease> entry: leases.entrySet()) {
+            if (entry.getValue().thread == thread)
+                return entry.getKey();
+        }
+        return null;
+    }
+
+    private void ensureOpen() {
+        if (closed)
+            throw new IllegalStateException("QuackContextPool is closed");
+    }
+
+    /**
+     * Close all idle contexts. Contexts that are currently leased are closed
+     * when they are released.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        for (QuackContext quack: idle) {
+            quack.close();
+        }
+        idle.clear();
+        notifyAll();
+    }
+}
@@ -0,0 +1,129 @@
+package com.koushikdutta.quack;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A recipe for identically initialized QuackContexts. Bootstrap scripts are compiled to
+ * bytecode once, when the template is built, so contexts created from the template skip
+ * parsing and compilation and only run the scripts. Java initializers (ie, that set globals
+ * to Java objects) are replayed in the order they were added, interleaved with the scripts.
+ * Neither engine can copy a live heap, so the scripts still run for every context: keep
+ * expensive work that can be done lazily out of bootstrap scripts.
+ */
+public final class QuackContextTemplate {
+    private interface Step {
+        void apply(QuackContext quack);
+    }
+
+    private static final class Script {
+        final String script;
+        final String fileName;
+
+        Script(String script, String fileName) {
+            this.script = script;
+            this.fileName = fileName;
+        }
+    }
+
+    public static final class Builder {
+        private final QuackContextOptions options;
+        // either Initializers or Scripts, in the order they were added.
+        private final ArrayList<Object> steps = new ArrayList<>();
+        private QuackBytecodeCache bytecodeCache;
+
+        public Builder(QuackContextOptions options) {
+            this.options = options;
+        }
+
+        public Builder() {
+            this(new QuackContextOptions());
+        }
+
+        /**
+         * Evaluate a script in every context. {@code fileName} will be used in error reporting.
+         */
+        public Builder addScript(String script, String fileName) {
+            steps.add(new Script(script, fileName));
+            return this;
+        }
+
+        public Builder addInitializer(QuackContextPool.Initializer initializer) {
+            steps.add(initializer);
+            return this;
+        }
+
+        /**
+         * Compile the scripts through a bytecode cache, so building the template is also fast
+         * after the first time.
+         */
+        public Builder setBytecodeCache(QuackBytecodeCache bytecodeCache) {
+            this.bytecodeCache = bytecodeCache;
+            return this;
+        }
+
+        /**
+         * Compile the scripts, by initializing a context from the template. Errors in the scripts
+         * or initializers are thrown here, rather than from {@link QuackContextTemplate#create()}.
+         */
+        public QuackContextTemplate build() {
+            ArrayList<Step> built = new ArrayList<>();
+            QuackContext quack = QuackContext.create(options);
+            try {
+                for (Object step: steps) {
+                    if (step instanceof QuackContextPool.Initializer) {
+                        QuackContextPool.Initializer initializer = (QuackContextPool.Initializer)step;
+                        initializer.initialize(quack);
+                        built.add(initializer::initialize);
+                        continue;
+                    }
+
+                    Script script = (Script)step;
+                    byte[] bytecode;
+                    if (bytecodeCache != null)
+                        bytecode = bytecodeCache.getBytecode(quack, script.script, script.fileName, false);
+                    else
+                        bytecode = quack.compileToBytecode(script.script, script.fileName);
+                    Step evaluate = context -> context.evaluateBytecode(bytecode);
+                    evaluate.apply(quack);
+                    built.add(evaluate);
+                }
+            }
+            finally {
+                quack.close();
+            }
+            return new QuackContextTemplate(options, built);
+        }
+    }
+
+    private final QuackContextOptions options;
+    private final List<Step> steps;
+
+    private QuackContextTemplate(QuackContextOptions options, List<Step> steps) {
+        this.options = options;
+        this.steps = Collections.unmodifiableList(steps);
+    }
+
+    public QuackContextOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Create a new context, initialized from the template. Calls to this method
+     * <strong>must</strong> be matched with calls to {@link QuackContext#close()} on the returned instance.
+     */
+    public QuackContext create() {
+        QuackContext quack = QuackContext.create(options);
+        try {
+            for (Step step: steps) {
+                step.apply(quack);
+            }
+        }
+        catch (RuntimeException e) {
+            quack.close();
+            throw e;
+        }
+        return quack;
+    }
+}
@@ -0,0 +1,300 @@
+package com.koushikdutta.quack;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single threaded event loop that owns a QuackContext, and provides setTimeout, setInterval,
+ * clearTimeout, and clearInterval to its scripts.
+ * The context is confined to the loop thread: calls into it from any other thread are queued
+ * to the loop, as are tasks passed to {@link #execute(Runnable)}.
+ * Each turn of the loop runs expired timers, then queued tasks, as macrotasks. Pending jobs
+ * (ie, promise reactions) are drained after every macrotask. Timers are kept on a
+ * {@link TimingWheel} with millisecond ticks, and the loop thread only wakes for expiring
+ * timers and queued tasks.
+ */
+public final class QuackEventLoop implements Executor, Closeable {
+    // tasks run per turn, so a flood of tasks does not starve timers.
+    private static final int MAX_TASKS_PER_TURN = 1024;
+
+    private static final class LoopTimer extends TimingWheel.Timer {
+        final int id;
+        final Runnable runnable;
+        final long interval;
+
+        LoopTimer(int id, Runnable runnable, long interval) {
+            this.id = id;
+            this.runnable = runnable;
+            this.interval = interval;
+        }
+    }
+
+    private final QuackContext quackContext;
+    private final Thread thread;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean parked = new AtomicBoolean();
+    private final AtomicInteger timerIds = new AtomicInteger();
+    private volatile boolean closed;
+
+    // only accessed by the loop thread.
+    private final long origin = System.nanoTime();
+    private final TimingWheel wheel = new TimingWheel(0);
+    private final HashMap<Integer, LoopTimer> timers = new HashMap<>();
+    private final ArrayList<TimingWheel.Timer> expired = new ArrayList<>();
+
+    public QuackEventLoop() {
+        this(new QuackContextOptions());
+    }
+
+    /**
+     * Start the loop thread, and create its context.
+     * @param options The context options. The context is always confined to the loop thread.
+     */
+    public QuackEventLoop(QuackContextOptions options) {
+        QuackContextOptions loopOptions = new QuackContextOptions()
+                .setUseQuickJS(options.useQuickJS)
+                .setTypedArrayCoercion(options.typedArrayCoercion)
+                .setThreadConfined(this);
+
+        CountDownLatch created = new CountDownLatch(1);
+        QuackContext[] context = new QuackContext[1];
+        RuntimeException[] error = new RuntimeException[1];
+        thread = new Thread(() -> {
+            try {
+                context[0] = QuackContext.create(loopOptions);
+                installTimers(context[0]);
+            }
+            catch (RuntimeException e) {
+                error[0] = e;
+                return;
+            }
+            finally {
+                created.countDown();
+            }
+            loop(context[0]);
+        }, "QuackEventLoop");
+        thread.start();
+
+        try {
+            created.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IllegalStateException("interrupted while starting QuackEventLoop", e);
+        }
+        if (error[0] != null)
+            throw error[0];
+        quackContext = context[0];
+    }
+
+    public QuackContext getQuackContext() {
+        return quackContext;
+    }
+
+    public boolean isLoopThread() {
+        return thread == Thread.currentThread();
+    }
+
+    /**
+     * Queue a task to run on the loop thread. May be called from any thread.
+     */
+    @Override
+    public void execute(Runnable runnable) {
+        if (closed)
+            throw new IllegalStateException("QuackEventLoop is closed");
+        tasks.add(runnable);
+        // raced with close, after the loop discarded its tasks.
+        if (closed && tasks.remove(runnable))
+            throw new IllegalStateException("QuackEventLoop is closed");
+        wakeup();
+    }
+
+    private void wakeup() {
+        if (parked.compareAndSet(true, false))
+            LockSupport.unpark(thread);
+    }
+
+    /**
+     * Run a task on the loop thread after a delay. May be called from any thread.
+     * @return The timer id, for {@link #clearTimer(int)}.
+     */
+    public int setTimeout(Runnable runnable, long delayMillis) {
+        return addTimer(runnable, delayMillis, 0);
+    }
+
+    /**
+     * Run a task on the loop thread repeatedly. May be called from any thread.
+     * @return The timer id, for {@link #clearTimer(int)}.
+     */
+    public int setInterval(Runnable runnable, long intervalMillis) {
+        return addTimer(runnable, intervalMillis, Math.max(1, intervalMillis));
+    }
+
+    /**
+     * Cancel a timeout or interval. May be called from any thread.
+     */
+    public void clearTimer(int id) {
+        if (!isLoopThread()) {
+            execute(() -> clearTimer(id));
+            return;
+        }
+        LoopTimer timer = timers.remove(id);
+        if (timer != null)
+            wheel.cancel(timer);
+    }
+
+    private int addTimer(Runnable runnable, long delayMillis, long interval) {
+        int id = timerIds.incrementAndGet();
+        LoopTimer timer = new LoopTimer(id, runnable, interval);
+        if (!isLoopThread()) {
+            execute(() -> schedule(timer, delayMillis));
+            return id;
+        }
+        schedule(timer, delayMillis);
+        return id;
+    }
+
+    private void schedule(LoopTimer timer, long delayMillis) {
+        timers.put(timer.id, timer);
+        // rounded up, so timers never run early.
+        long elapsed = System.nanoTime() - origin + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        long expiry = (elapsed + TimeUnit.MILLISECONDS.toNanos(1) - 1) / TimeUnit.MILLISECONDS.toNanos(1);
+        wheel.schedule(timer, expiry);
+    }
+
+    private void installTimers(QuackContext quack) {
+        JavaScriptObject global = quack.getGlobalObject();
+        QuackMethodObject clear = new QuackMethodObject() {
+            @Override
+            public Object callMethod(Object thiz, Object... args) {
+                if (args.length != 0 && args[0] instanceof Number)
+                    clearTimer(((Number)args[0]).intValue());
+                return null;
+            }
+        };
+        global.set("setTimeout", new QuackMethodObject() {
+            @Override
+            public Object callMethod(Object thiz, Object... args) {
+                return addScriptTimer(args, false);
+            }
+        });
+        global.set("setInterval", new QuackMethodObject() {
+            @Override
+            public Object callMethod(Object thiz, Object... args) {
+                return addScriptTimer(args, true);
+            }
+        });
+        global.set("clearTimeout", clear);
+        global.set("clearInterval", clear);
+    }
+
+    private int addScriptTimer(Object[] args, boolean repeat) {
+        if (args.length == 0 || !(args[0] instanceof JavaScriptObject))
+            throw new IllegalArgumentException("timer callback must be a function");
+        JavaScriptObject callback = (JavaScriptObject)args[0];
+        long delay = args.length > 1 && args[1] instanceof Number ? ((Number)args[1]).longValue() : 0;
+        Object[] callbackArgs = args.length > 2 ? Arrays.copyOfRange(args, 2, args.length) : new Object[0];
+        // call coerces its arguments in place, so intervals pass a fresh copy each time.
+        Runnable runnable = () -> callback.call(callbackArgs.clone());
+        if (repeat)
+            return setInterval(runnable, delay);
+        return setTimeout(runnable, delay);
+    }
+
+    private long currentTick() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - origin);
+    }
+
+    private void loop(QuackContext quack) {
+        while (!closed) {
+            boolean ran = false;
+
+            expired.clear();
+            wheel.advance(currentTick(), expired);
+            for (TimingWheel.Timer expiredTimer: expired) {
+                LoopTimer timer = (LoopTimer)expiredTimer;
+                // cleared by an earlier timer in this batch.
+                if (timers.get(timer.id) != timer)
+                    continue;
+                if (timer.interval == 0)
+                    timers.remove(timer.id);
+                else
+                    wheel.schedule(timer, wheel.getCurrentTick() + timer.interval);
+                runMacrotask(quack, timer.runnable);
+                ran = true;
+            }
+
+            for (int i = 0; i < MAX_TASKS_PER_TURN; i++) {
+                Runnable task = tasks.poll();
+                if (task == null)
+                    break;
+                runMacrotask(quack, task);
+                ran = true;
+            }
+
+            if (ran)
+                continue;
+
+            parked.set(true);
+            // recheck after announcing, as a task added before the announcement would not unpark.
+            if (!tasks.isEmpty() || closed) {
+                parked.set(false);
+                continue;
+            }
+            long next = wheel.getNextTick();
+            if (next == Long.MAX_VALUE)
+                LockSupport.park(this);
+            else
+                LockSupport.parkNanos(this, origin + TimeUnit.MILLISECONDS.toNanos(next) - System.nanoTime());
+            parked.set(false);
+        }
+
+        quack.close();
+        // fail any hand offs that are waiting on the loop.
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            if (task instanceof Future)
+                ((Future)task).cancel(false);
+        }
+    }
+
+    private void runMacrotask(QuackContext quack, Runnable task) {
+        try {
+            task.run();
+            quack.drainPostInvocation();
+        }
+        catch (RuntimeException e) {
+            // an uncaught error in one task does not stop the loop.
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+
+    /**
+     * Stop the loop, and close its context. Queued tasks that have not run are discarded,
+     * along with any pending timers.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        if (isLoopThread())
+            return;
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
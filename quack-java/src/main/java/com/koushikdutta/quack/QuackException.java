@@ -21,7 +21,7 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public final class QuackException extends RuntimeException {
+public class QuackException extends RuntimeException {
   /**
    *
    */
@@ -0,0 +1,98 @@
+package com.koushikdutta.quack;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Bridges JavaScript promises and Java CompletionStages, through callbacks rather than
+ * blocking threads. Promise reactions run as jobs, which are drained after every invocation
+ * (on the job executor, if there is one).
+ * Only QuickJS contexts register these coercions, since Duktape has no Promise.
+ * CompletableFuture is only used by this class, and named in the signature of
+ * JavaScriptObject.toCompletableFuture, so it is never loaded where it is unavailable
+ * (ie, Android prior to API 24) unless that method is called.
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+final class QuackFutures {
+    private QuackFutures() {
+    }
+
+    private static final String BRIDGE_SCRIPT = "({\n" +
+            "  then: function(p, resolve, reject) { Promise.resolve(p).then(resolve, reject); },\n" +
+            "  defer: function() {\n" +
+            "    var deferred = {};\n" +
+            "    deferred.promise = new Promise(function(resolve, reject) { deferred.resolve = resolve; deferred.reject = reject; });\n" +
+            "    return deferred;\n" +
+            "  },\n" +
+            "})";
+
+    static void register(QuackContext quackContext) {
+        quackContext.putJavaToJavaScriptCoercion(CompletionStage.class, (clazz, o) -> toPromise(quackContext, o));
+        quackContext.putJavaScriptToJavaCoercion(CompletionStage.class, (clazz, o) -> o instanceof JavaScriptObject ? toCompletableFuture((JavaScriptObject)o, Object.class) : (CompletionStage)o);
+        quackContext.putJavaScriptToJavaCoercion(CompletableFuture.class, (clazz, o) -> o instanceof JavaScriptObject ? toCompletableFuture((JavaScriptObject)o, Object.class) : (CompletableFuture)o);
+    }
+
+    private static JavaScriptObject getBridge(QuackContext quackContext) {
+        return quackContext.getPromiseBridge(() -> quackContext.evaluateForJavaScriptObject(BRIDGE_SCRIPT));
+    }
+
+    static <T> CompletableFuture<T> toCompletableFuture(JavaScriptObject promise, Class<T> clazz) {
+        QuackContext quackContext = promise.quackContext;
+        if (!quackContext.isQuickJS())
+            throw new UnsupportedOperationException("promises are not supported by Duktape");
+        CompletableFuture<T> future = new CompletableFuture<>();
+        QuackMethodObject onFulfilled = new QuackMethodObject() {
+            @Override
+            public Object callMethod(Object thiz, Object... args) {
+                try {
+                    future.complete((T)quackContext.coerceJavaScriptToJava(clazz, args.length == 0 ? null : args[0]));
+                }
+                catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+                return null;
+            }
+        };
+        QuackMethodObject onRejected = new QuackMethodObject() {
+            @Override
+            public Object callMethod(Object thiz, Object... args) {
+                future.completeExceptionally(toThrowable(quackContext, args.length == 0 ? null : args[0]));
+                return null;
+            }
+        };
+        getBridge(quackContext).callProperty("then", promise, onFulfilled, onRejected);
+        return future;
+    }
+
+    private static Throwable toThrowable(QuackContext quackContext, Object error) {
+        error = quackContext.coerceJavaScriptToJava(null, error);
+        if (error instanceof Throwable)
+            return (Throwable)error;
+        // rethrow the JavaScript error to pick up its message and stack.
+        try {
+            quackContext.throwObject(error);
+        }
+        catch (Throwable e) {
+            return e;
+        }
+        return new QuackException(String.valueOf(error));
+    }
+
+    static JavaScriptObject toPromise(QuackContext quackContext, CompletionStage stage) {
+        JavaScriptObject deferred = (JavaScriptObject)getBridge(quackContext).callProperty("defer");
+        JavaScriptObject resolve = (JavaScriptObject)deferred.get("resolve");
+        JavaScriptObject reject = (JavaScriptObject)deferred.get("reject");
+        stage.whenComplete((value, error) -> quackContext.getSettleExecutor().execute(() -> {
+            if (error == null) {
+                resolve.call(value);
+                return;
+            }
+            Throwable cause = (Throwable)error;
+            if (cause instanceof CompletionException && cause.getCause() != null)
+                cause = cause.getCause();
+            reject.call(cause);
+        }));
+        return (JavaScriptObject)deferred.get("promise");
+    }
+}
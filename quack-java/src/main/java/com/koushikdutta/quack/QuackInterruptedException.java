@@ -0,0 +1,16 @@
+package com.koushikdutta.quack;
+
+/**
+ * Thrown when an invocation is interrupted, either by {@link QuackContext#interrupt()} or by
+ * spending its budget (see {@link QuackContext#setInvocationBudget(long, long)}). The script is
+ * aborted, but the context remains usable.
+ */
+public class QuackInterruptedException extends QuackException {
+  private static final long serialVersionUID = 3409216733046472613L;
+
+  QuackInterruptedException(QuackException cause) {
+    super(cause.getMessage());
+    initCause(cause);
+    setStackTrace(cause.getStackTrace());
+  }
+}
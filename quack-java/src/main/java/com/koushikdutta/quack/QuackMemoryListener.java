@@ -0,0 +1,29 @@
+package com.koushikdutta.quack;
+
+/**
+ * Notified when the heap of a context crosses a memory watermark, ie, so that a heavy
+ * context can be shed or recycled before the process runs out of memory.
+ * See {@link QuackContext#setMemoryListener(long, long, QuackMemoryListener)}.
+ */
+public interface QuackMemoryListener {
+    enum Level {
+        /**
+         * The heap has crossed the soft watermark.
+         */
+        SOFT,
+        /**
+         * The heap has crossed the hard watermark, or an allocation was refused by the
+         * memory limit.
+         */
+        HARD,
+    }
+
+    /**
+     * Called at the end of the outermost invocation that raised the memory pressure. A level
+     * is reported again only after the heap drops back below its watermark.
+     * @param quack The context, which may be used or closed by the listener.
+     * @param level The level that was reached.
+     * @param heapSize The allocated size of the heap, in bytes.
+     */
+    void onMemoryPressure(QuackContext quack, Level level, long heapSize);
+}
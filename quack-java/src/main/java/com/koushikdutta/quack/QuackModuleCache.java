@@ -0,0 +1,50 @@
+package com.koushikdutta.quack;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in memory cache of compiled module bytecode, keyed by normalized module name and
+ * a SHA-256 hash of the source. A module is compiled once, by the first context that imports
+ * it, and loaded from bytecode by every other context that shares the cache, until its source
+ * changes.
+ * See {@link QuackContext#setModuleLoader(QuackModuleLoader, QuackModuleCache)}.
+ */
+public final class QuackModuleCache {
+    private static final class Entry {
+        final String hash;
+        final byte[] bytecode;
+
+        Entry(String hash, byte[] bytecode) {
+            this.hash = hash;
+            this.bytecode = bytecode;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> modules = new ConcurrentHashMap<>();
+
+    /**
+     * @return The bytecode of the module, or null if it is not cached for this source.
+     */
+    byte[] get(String moduleName, String source) {
+        Entry entry = modules.get(moduleName);
+        if (entry != null && entry.hash.equals(QuackBytecodeCache.sha256(source)))
+            return entry.bytecode;
+        return null;
+    }
+
+    // racing compilations of the same module produce the same bytecode.
+    void put(String moduleName, String source, byte[] bytecode) {
+        modules.put(moduleName, new Entry(QuackBytecodeCache.sha256(source), bytecode));
+    }
+
+    /**
+     * The number of modules in the cache.
+     */
+    public int size() {
+        return modules.size();
+    }
+
+    public void clear() {
+        modules.clear();
+    }
+}
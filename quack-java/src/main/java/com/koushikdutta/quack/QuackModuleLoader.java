@@ -0,0 +1,29 @@
+package com.koushikdutta.quack;
+
+import java.io.IOException;
+
+/**
+ * Resolves and loads the ES modules imported by a context.
+ * See {@link QuackContext#setModuleLoader(QuackModuleLoader)}, and {@link QuackModuleLoaders}
+ * for loaders backed by memory, the file system, or the class path.
+ */
+public interface QuackModuleLoader {
+    /**
+     * Resolve a module specifier to the name the module is loaded, and cached, by.
+     * By default, relative specifiers (ie, ./util.js) are resolved against the directory of
+     * the importing module, and all others are left as they are.
+     * @param baseName The name of the importing module.
+     * @param moduleName The specifier being imported.
+     * @return The normalized name, or null if the specifier can not be resolved.
+     */
+    default String normalize(String baseName, String moduleName) {
+        return QuackModuleLoaders.normalizePath(baseName, moduleName);
+    }
+
+    /**
+     * Load the source of a module.
+     * @param moduleName The normalized name of the module.
+     * @return The source, or null if there is no such module.
+     */
+    String load(String moduleName) throws IOException;
+}
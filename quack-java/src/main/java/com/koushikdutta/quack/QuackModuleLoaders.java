@@ -0,0 +1,130 @@
+package com.koushikdutta.quack;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Module loaders for common sources of modules.
+ */
+public final class QuackModuleLoaders {
+    private QuackModuleLoaders() {
+    }
+
+    /**
+     * Load modules from a map of normalized module names to source.
+     */
+    public static QuackModuleLoader fromMap(Map<String, String> modules) {
+        return modules::get;
+    }
+
+    /**
+     * Load modules from files under a directory. Module names that resolve outside of the
+     * directory are not found.
+     */
+    public static QuackModuleLoader fromDirectory(File directory) {
+        return moduleName -> {
+            if (escapesRoot(moduleName))
+                return null;
+            File file = new File(directory, moduleName);
+            if (!file.isFile())
+                return null;
+            try (InputStream in = new FileInputStream(file)) {
+                return readFully(in);
+            }
+        };
+    }
+
+    /**
+     * Load modules from class path resources under a prefix (ie, "js/").
+     */
+    public static QuackModuleLoader fromClassLoader(ClassLoader classLoader, String prefix) {
+        return moduleName -> {
+            if (escapesRoot(moduleName))
+                return null;
+            try (InputStream in = classLoader.getResourceAsStream(prefix + moduleName)) {
+                if (in == null)
+                    return null;
+                return readFully(in);
+            }
+        };
+    }
+
+    /**
+     * Load modules from the first loader that has them. Module names are normalized by the
+     * first loader.
+     */
+    public static QuackModuleLoader chain(QuackModuleLoader... loaders) {
+        return new QuackModuleLoader() {
+            @Override
+            public String normalize(String baseName, String moduleName) {
+                return loaders[0].normalize(baseName, moduleName);
+            }
+
+            @Override
+            public String load(String moduleName) throws IOException {
+                for (QuackModuleLoader loader: loaders) {
+                    String source = loader.load(moduleName);
+                    if (source != null)
+                        return source;
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Resolve relative specifiers (those that start with a .) against the directory of the
+     * importing module, as QuickJS does by default. Other specifiers are left as they are.
+     */
+    public static String normalizePath(String baseName, String moduleName) {
+        if (!moduleName.startsWith("."))
+            return moduleName;
+
+        ArrayList<String> parts = new ArrayList<>();
+        int slash = baseName == null ? -1 : baseName.lastIndexOf('/');
+        if (slash >= 0)
+            Collections.addAll(parts, baseName.substring(0, slash).split("/", -1));
+        for (String part: moduleName.split("/")) {
+            if (part.isEmpty() || part.equals("."))
+                continue;
+            if (part.equals("..") && !parts.isEmpty()) {
+                String last = parts.get(parts.size() - 1);
+                // an empty first part is the root of an absolute path.
+                if (!last.equals("..") && !(last.isEmpty() && parts.size() == 1)) {
+                    parts.remove(parts.size() - 1);
+                    continue;
+                }
+            }
+            parts.add(part);
+        }
+
+        StringBuilder ret = new StringBuilder();
+        for (int i = 0; i < parts.size(); i++) {
+            if (i != 0)
+                ret.append('/');
+            ret.append(parts.get(i));
+        }
+        return ret.toString();
+    }
+
+    private static boolean escapesRoot(String moduleName) {
+        return moduleName.startsWith("/") || moduleName.equals("..") || moduleName.startsWith("../") || moduleName.contains("/../");
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
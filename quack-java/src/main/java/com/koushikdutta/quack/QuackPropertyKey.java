@@ -0,0 +1,29 @@
+package com.koushikdutta.quack;
+
+/**
+ * A property name interned in a QuackContext. See {@link QuackContext#intern(String)}.
+ * Accessing a property through a key avoids marshalling the name, and creating a
+ * JavaScript string or atom, on every access.
+ * Keys are only valid for the context that created them, and remain valid until
+ * that context is closed.
+ */
+public final class QuackPropertyKey {
+    final QuackContext quackContext;
+    final long pointer;
+    private final String name;
+
+    QuackPropertyKey(QuackContext quackContext, long pointer, String name) {
+        this.quackContext = quackContext;
+        this.pointer = pointer;
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,168 @@
+package com.koushikdutta.quack;
+
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel. Timers are scheduled at an absolute tick, and are held in
+ * one of four wheels of 64 slots, each wheel 64 times coarser than the one below it. Scheduling
+ * and cancellation are constant time, and timers are cascaded into finer wheels as their
+ * expiry approaches. Timers further out than the coarsest wheel are parked in it, and
+ * rescheduled when they are cascaded. Not thread safe.
+ */
+class TimingWheel {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELTA = 1L << (BITS * LEVELS);
+
+    static class Timer {
+        private Timer previous;
+        private Timer next;
+        private long expiry;
+
+        boolean isScheduled() {
+            return next != null;
+        }
+
+        long getExpiry() {
+            return expiry;
+        }
+    }
+
+    // each slot is the sentinel of a circular list, so timers unlink themselves without a lookup.
+    private final Timer[][] wheels = new Timer[LEVELS][SLOTS];
+    private long currentTick;
+    private int size;
+
+    TimingWheel(long currentTick) {
+        this.currentTick = currentTick;
+        for (Timer[] wheel: wheels) {
+            for (int i = 0; i < SLOTS; i++) {
+                Timer sentinel = new Timer();
+                sentinel.previous = sentinel.next = sentinel;
+                wheel[i] = sentinel;
+            }
+        }
+    }
+
+    long getCurrentTick() {
+        return currentTick;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Schedule a timer, or reschedule it if it is already scheduled. Timers that are due at or
+     * before the current tick expire on the next tick.
+     */
+    void schedule(Timer timer, long expiry) {
+        if (timer.isScheduled())
+            cancel(timer);
+        timer.expiry = Math.max(expiry, currentTick + 1);
+        insert(timer);
+        size++;
+    }
+
+    boolean cancel(Timer timer) {
+        if (!timer.isScheduled())
+            return false;
+        unlink(timer);
+        size--;
+        return true;
+    }
+
+    private void insert(Timer timer) {
+        long delta = timer.expiry - currentTick;
+        long slotExpiry = timer.expiry;
+        if (delta >= MAX_DELTA)
+            slotExpiry = currentTick + MAX_DELTA - 1;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1)))
+            level++;
+        Timer sentinel = wheels[level][(int)(slotExpiry >>> (BITS * level)) & MASK];
+        timer.previous = sentinel.previous;
+        timer.next = sentinel;
+        sentinel.previous.next = timer;
+        sentinel.previous = timer;
+    }
+
+    private static void unlink(Timer timer) {
+        timer.previous.next = timer.next;
+        timer.next.previous = timer.previous;
+        timer.previous = timer.next = null;
+    }
+
+    /**
+     * The earliest tick at which the wheel has work to do: either a timer expires, or a timer is
+     * cascaded into a finer wheel. This is never later than the earliest expiry.
+     * @return The tick, or Long.MAX_VALUE if no timers are scheduled.
+     */
+    long getNextTick() {
+        if (size == 0)
+            return Long.MAX_VALUE;
+        long next = Long.MAX_VALUE;
+        // the finest wheel only holds timers that expire within one rotation.
+        for (long tick = currentTick + 1; tick <= currentTick + SLOTS; tick++) {
+            Timer sentinel = wheels[0][(int)tick & MASK];
+            if (sentinel.next != sentinel) {
+                next = tick;
+                break;
+            }
+        }
+        for (int level = 1; level < LEVELS; level++) {
+            int shift = BITS * level;
+            for (long block = (currentTick >>> shift) + 1; block <= (currentTick >>> shift) + SLOTS; block++) {
+                long tick = block << shift;
+                if (tick >= next)
+                    break;
+                Timer sentinel = wheels[level][(int)block & MASK];
+                if (sentinel.next != sentinel) {
+                    next = tick;
+                    break;
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Advance the wheel to a tick, skipping over ticks that have no work.
+     * @param tick The tick to advance to.
+     * @param expired Receives the timers that expired, in order of expiry.
+     */
+    void advance(long tick, List<Timer> expired) {
+        while (currentTick < tick) {
+            long next = getNextTick();
+            if (next > tick) {
+                currentTick = tick;
+                return;
+            }
+            currentTick = next;
+            cascade();
+            Timer sentinel = wheels[0][(int)currentTick & MASK];
+            while (sentinel.next != sentinel) {
+                Timer timer = sentinel.next;
+                unlink(timer);
+                size--;
+                expired.add(timer);
+            }
+        }
+    }
+
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            int shift = BITS * level;
+            if ((currentTick & ((1L << shift) - 1)) != 0)
+                return;
+            Timer sentinel = wheels[level][(int)(currentTick >>> shift) & MASK];
+            while (sentinel.next != sentinel) {
+                Timer timer = sentinel.next;
+                unlink(timer);
+                insert(timer);
+            }
+        }
+    }
+}
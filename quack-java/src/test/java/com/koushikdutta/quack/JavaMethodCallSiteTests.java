@@ -0,0 +1,51 @@
+package com.koushikdutta.quack;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class JavaMethodCallSiteTests {
+    @Test
+    public void testInlineCache() throws Exception {
+        Method method = Object.class.getMethod("toString");
+        JavaMethodCallSite site = new JavaMethodCallSite();
+
+        Object[] ints = new Object[] { 1, 2 };
+        assertNull(site.lookup(ints));
+        site.add(ints, method);
+        assertSame(method, site.lookup(new Object[] { 3, 4 }).method);
+        assertNull(site.lookup(new Object[] { 3 }));
+        assertNull(site.lookup(new Object[] { 3, "4" }));
+
+        // null arguments are part of the shape.
+        site.add(new Object[] { null, 2 }, method);
+        assertSame(method, site.lookup(new Object[] { null, 5 }).method);
+        assertEquals(2, site.size());
+        assertFalse(site.isMegamorphic());
+    }
+
+    @Test
+    public void testMegamorphic() throws Exception {
+        Method method = Object.class.getMethod("toString");
+        JavaMethodCallSite site = new JavaMethodCallSite();
+        Object[][] shapes = new Object[][] {
+                { 1 }, { "1" }, { 1.0 }, { 1L }, { 'c' },
+        };
+        for (Object[] shape: shapes) {
+            site.add(shape, method);
+        }
+        assertTrue(site.isMegamorphic());
+        assertEquals(0, site.size());
+        assertNull(site.lookup(shapes[0]));
+
+        // megamorphic sites share an entry per method.
+        assertSame(site.add(new Object[] { 2 }, method), site.add(new Object[] { "2" }, method));
+        assertEquals(0, site.size());
+    }
+}
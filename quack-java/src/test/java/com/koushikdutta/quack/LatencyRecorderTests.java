@@ -0,0 +1,35 @@
+package com.koushikdutta.quack;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyRecorderTests {
+    @Test
+    public void testPercentiles() {
+        LatencyRecorder recorder = new LatencyRecorder(100);
+        assertEquals(0, recorder.getPercentile(99));
+
+        for (int i = 100; i >= 1; i--) {
+            recorder.record(i);
+        }
+        assertEquals(50, recorder.getPercentile(50));
+        assertEquals(99, recorder.getPercentile(99));
+        assertEquals(100, recorder.getPercentile(100));
+        assertEquals(1, recorder.getPercentile(0));
+    }
+
+    @Test
+    public void testMostRecent() {
+        LatencyRecorder recorder = new LatencyRecorder(4);
+        for (int i = 0; i < 4; i++) {
+            recorder.record(1000);
+        }
+        // older samples are overwritten.
+        for (int i = 0; i < 4; i++) {
+            recorder.record(1);
+        }
+        assertEquals(4, recorder.getCount());
+        assertEquals(1, recorder.getPercentile(99));
+    }
+}
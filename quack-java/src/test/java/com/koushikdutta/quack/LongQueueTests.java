@@ -0,0 +1,72 @@
+package com.koushikdutta.quack;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class LongQueueTests {
+    @Test
+    public void testOrderAcrossSegments() {
+        LongQueue queue = new LongQueue();
+        assertEquals(0, queue.drain().length);
+
+        long[] expected = new long[5000];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = i + 1;
+            queue.add(i + 1);
+        }
+        assertEquals(expected.length, queue.size());
+        assertArrayEquals(expected, queue.drain());
+        assertEquals(0, queue.size());
+        assertEquals(expected.length, queue.getDrainedCount());
+        assertEquals(1, queue.getDrainCount());
+
+        queue.add(42);
+        assertArrayEquals(new long[] { 42 }, queue.drain());
+        assertEquals(2, queue.getDrainCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZero() {
+        new LongQueue().add(0);
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        LongQueue queue = new LongQueue();
+        final int producers = 4;
+        final int count = 100000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final long base = (long)p * count;
+            threads[p] = new Thread(() -> {
+                for (int i = 1; i <= count; i++) {
+                    queue.add(base + i);
+                }
+            });
+            threads[p].start();
+        }
+
+        // drain while the producers are running.
+        long[] all = new long[producers * count];
+        int drained = 0;
+        while (drained < all.length) {
+            long[] batch = queue.drain();
+            System.arraycopy(batch, 0, all, drained, batch.length);
+            drained += batch.length;
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+
+        // every value arrives exactly once.
+        assertEquals(0, queue.drain().length);
+        Arrays.sort(all);
+        for (int i = 0; i < all.length; i++) {
+            assertEquals(i + 1, all[i]);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.koushikdutta.quack;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MemoizeTests {
+    @Test
+    public void testCompositeKeys() {
+        Memoize<String> memoize = new Memoize<>();
+        // these keys produced identical hashes with the previous xor based hashing.
+        assertEquals("ab", memoize.memoize(() -> "ab", Object.class, "a", "b"));
+        assertEquals("ba", memoize.memoize(() -> "ba", Object.class, "b", "a"));
+        assertEquals("ab", memoize.memoize(() -> "wrong", Object.class, "a", "b"));
+
+        // arrays within keys are compared by contents.
+        assertEquals("array", memoize.memoize(() -> "array", Object.class, "a", new Object[] { String.class, null }));
+        assertEquals("array", memoize.memoize(() -> "wrong", Object.class, "a", new Object[] { String.class, null }));
+        assertEquals("other", memoize.memoize(() -> "other", Object.class, "a", new Object[] { null, String.class }));
+
+        // the same key in a different class is a different entry.
+        assertEquals("string", memoize.memoize(() -> "string", String.class, "a", "b"));
+    }
+
+    @Test
+    public void testNullResult() {
+        Memoize<String> memoize = new Memoize<>();
+        AtomicInteger calls = new AtomicInteger();
+        assertNull(memoize.memoize(() -> {
+            calls.incrementAndGet();
+            return null;
+        }, Object.class, "missing"));
+        assertNull(memoize.memoize(() -> {
+            calls.incrementAndGet();
+            return null;
+        }, Object.class, "missing"));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testHashKeyed() {
+        Memoize<String> memoize = new Memoize<>();
+        assertEquals("a", memoize.memoize(() -> "a", "key", "a"));
+        assertEquals("a", memoize.memoize(() -> "wrong", "key", "a"));
+        assertEquals(Memoize.hashCode("key", "a"), Memoize.hashCode("key", "a"));
+
+        // the getter lookup by methods finds the same method as the lookup by class.
+        assertEquals(JavaObject.getGetterMethod("length", String.class), JavaObject.getGetterMethod("length", String.class.getMethods()));
+    }
+
+    @Test
+    public void testBounded() {
+        Memoize<Integer> memoize = new Memoize<>(16);
+        for (int i = 0; i < 1000; i++) {
+            int value = i;
+            assertEquals(value, (int)memoize.memoize(() -> value, Object.class, value));
+        }
+        assertTrue(memoize.size(Object.class) <= 16);
+    }
+}
@@ -0,0 +1,56 @@
+package com.koushikdutta.quack;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class NativeReferenceQueueTests {
+    @Test
+    public void testUnregister() {
+        NativeReferenceQueue<Object> queue = new NativeReferenceQueue<>();
+        ArrayList<Object> referents = new ArrayList<>();
+        ArrayList<NativeReferenceQueue.Reference<Object>> references = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            Object referent = new Object();
+            referents.add(referent);
+            references.add(queue.register(referent, i));
+        }
+        assertEquals(1000, queue.size());
+
+        // enough to prune the stack, which must keep the live references.
+        for (int i = 0; i < 999; i++) {
+            queue.unregister(references.get(i));
+            // unregistering twice is harmless.
+            queue.unregister(references.get(i));
+        }
+        assertEquals(1, queue.size());
+        assertNull(queue.drain());
+    }
+
+    @Test
+    public void testConcurrentRegistration() throws InterruptedException {
+        NativeReferenceQueue<Object> queue = new NativeReferenceQueue<>();
+        Object referent = new Object();
+        final int producers = 4;
+        final int count = 10000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread(() -> {
+                for (int i = 1; i <= count; i++) {
+                    NativeReferenceQueue.Reference<Object> reference = queue.register(referent, i);
+                    // every other reference is released explicitly while others register.
+                    if ((i & 1) == 0)
+                        queue.unregister(reference);
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        assertEquals(producers * count / 2, queue.size());
+    }
+}
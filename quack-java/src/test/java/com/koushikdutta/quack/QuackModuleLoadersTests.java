@@ -0,0 +1,46 @@
+package com.koushikdutta.quack;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class QuackModuleLoadersTests {
+    @Test
+    public void testNormalizePath() {
+        assertEquals("lib/a.js", QuackModuleLoaders.normalizePath("main.js", "./lib/a.js"));
+        assertEquals("util.js", QuackModuleLoaders.normalizePath("lib/a.js", "../util.js"));
+        assertEquals("../util.js", QuackModuleLoaders.normalizePath("main.js", "../util.js"));
+        assertEquals("/abs/b.js", QuackModuleLoaders.normalizePath("/abs/lib/a.js", "../b.js"));
+        assertEquals("/b.js", QuackModuleLoaders.normalizePath("/a.js", "./b.js"));
+        // bare specifiers are left alone.
+        assertEquals("std", QuackModuleLoaders.normalizePath("main.js", "std"));
+    }
+
+    @Test
+    public void testSources() throws IOException {
+        QuackModuleLoader map = QuackModuleLoaders.fromMap(Collections.singletonMap("a.js", "export default 1;"));
+        assertEquals("export default 1;", map.load("a.js"));
+        assertNull(map.load("b.js"));
+
+        File directory = File.createTempFile("quack", "modules");
+        directory.delete();
+        directory.mkdirs();
+        File file = new File(directory, "b.js");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("export default 2;".getBytes(StandardCharsets.UTF_8));
+        }
+        QuackModuleLoader chain = QuackModuleLoaders.chain(map, QuackModuleLoaders.fromDirectory(directory));
+        assertEquals("export default 1;", chain.load("a.js"));
+        assertEquals("export default 2;", chain.load("b.js"));
+        assertNull(chain.load("../b.js"));
+        file.delete();
+        directory.delete();
+    }
+}
@@ -4,11 +4,27 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
@@ -36,16 +52,20 @@ public class QuackTests {
     }
 
     // takes a long time. Duktape does not pass due to a const limit. quickjs works.
+    // see quack-benchmarks OctaneBenchmark.
     // @Test
     public void testOctane() throws IOException {
         QuackContext quack = QuackContext.create(false);
-        File files[] = new File("/Volumes/Dev/Scrypted/quack.android/tests/src/main/assets/octane").listFiles();
+        File assets = new File("quack-java/src/test/assets");
+        if (!assets.exists())
+            assets = new File("src/test/assets");
+        File files[] = new File(assets, "octane").listFiles();
         Arrays.sort(files, (a, b) -> a.getAbsolutePath().compareTo(b.getAbsolutePath()));
         for (File file: files) {
             String script = StreamUtility.readFile(file);
             quack.evaluate(script, file.getAbsolutePath());
         }
-        String script = StreamUtility.readFile("/Volumes/Dev/Scrypted/quack.android/tests/src/main/assets/octane.js");
+        String script = StreamUtility.readFile(new File(assets, "octane.js"));
         quack.evaluate(script);
         String ret = quack.evaluateForJavaScriptObject("getResults").call().toString();
         System.out.println(ret);
@@ -800,6 +820,147 @@ public class QuackTests {
         assertTrue(semaphore.tryAcquire(500, TimeUnit.MILLISECONDS));
     }
 
+    @Test
+    public void testPostInvocationBudget() {
+        QuackContext quack = QuackContext.create();
+        quack.evaluate("var count = 0;");
+
+        // each drain runs at most one job, so the rest wait for later invocations.
+        quack.setPostInvocationBudget(1, 0);
+        quack.evaluate("for (var i = 0; i < 10; i++) Promise.resolve().then(function() { count++; });");
+        assertEquals(1, quack.evaluate("count"));
+        assertEquals(2, quack.evaluate("count"));
+
+        quack.setPostInvocationBudget(0, 0);
+        quack.evaluate("0");
+        assertEquals(10, quack.evaluate("count"));
+        assertTrue(quack.getPostInvocationLatencyNanos(99) > 0);
+
+        quack.close();
+    }
+
+    @Test
+    public void testPromiseFutures() throws Exception {
+        QuackContext quack = QuackContext.create();
+
+        CompletableFuture<Integer> resolved = quack.evaluateForJavaScriptObject("Promise.resolve(42)").toCompletableFuture(Integer.class);
+        assertEquals(42, (int)resolved.get(1, TimeUnit.SECONDS));
+
+        CompletableFuture<Object> rejected = quack.evaluateForJavaScriptObject("Promise.reject(new Error('nope'))").toCompletableFuture(Object.class);
+        try {
+            rejected.get(1, TimeUnit.SECONDS);
+            fail("expected rejection");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage().contains("nope"));
+        }
+
+        // a java future becomes a native promise.
+        CompletableFuture<String> future = new CompletableFuture<>();
+        JavaScriptObject await = quack.evaluateForJavaScriptObject("(function(p) { p.then(function(v) { result = v; }); })");
+        await.call(future);
+        assertEquals(null, quack.evaluate("typeof result === 'undefined' ? null : result"));
+        future.complete("hello");
+        assertEquals("hello", quack.evaluate("result"));
+
+        // Future is a superclass of the registered CompletableFuture coercion, and is
+        // still proxied like any other interface.
+        Future<?> proxied = (Future<?>)quack.coerceJavaScriptToJava(Future.class, quack.evaluateForJavaScriptObject("({ isDone: function() { return true; } })"));
+        assertTrue(proxied.isDone());
+
+        quack.close();
+
+        // duktape has no promises, so futures are not bridged.
+        QuackContext duktape = QuackContext.create(false);
+        JavaScriptObject object = duktape.evaluateForJavaScriptObject("({})");
+        try {
+            object.toCompletableFuture(Object.class);
+            fail("expected UnsupportedOperationException");
+        }
+        catch (UnsupportedOperationException e) {
+        }
+        assertFalse(duktape.coerceJavaScriptToJava(CompletionStage.class, object) instanceof CompletableFuture);
+        duktape.close();
+    }
+
+    @Test
+    public void testEventLoop() throws Exception {
+        QuackEventLoop loop = new QuackEventLoop();
+        QuackContext quack = loop.getQuackContext();
+
+        // calls from this thread are handed off to the loop.
+        quack.evaluate("var order = []; var ticks = 0;\n" +
+                "setTimeout(function(v) { order.push(v); }, 20, 'late');\n" +
+                "setTimeout(function(v) {\n" +
+                "  order.push(v);\n" +
+                "  Promise.resolve().then(function() { order.push('microtask'); });\n" +
+                "}, 5, 'early');\n" +
+                "setTimeout(function() { order.push('macrotask'); }, 5);\n" +
+                "var cancelled = setTimeout(function() { order.push('cancelled'); }, 10);\n" +
+                "clearTimeout(cancelled);\n" +
+                "var interval = setInterval(function() { if (++ticks == 3) clearInterval(interval); }, 1);");
+
+        Semaphore semaphore = new Semaphore(0);
+        loop.setTimeout(semaphore::release, 50);
+        assertTrue(semaphore.tryAcquire(5, TimeUnit.SECONDS));
+
+        assertEquals("early,microtask,macrotask,late", quack.evaluate("order.join()"));
+        assertEquals(3, ((Number)quack.evaluate("ticks")).intValue());
+
+        loop.close();
+    }
+
+    @Test
+    public void testBytecode() throws IOException {
+        QuackContext quack = QuackContext.create(useQuickJS);
+        byte[] script = quack.compileToBytecode("var bytecodeGlobal = 'loaded'; 6 * 7", "script.js");
+        byte[] function = quack.compileFunctionToBytecode("function(a, b) { return a + b; }", "function.js");
+        quack.close();
+
+        // bytecode is portable across contexts of the same engine.
+        quack = QuackContext.create(useQuickJS);
+        assertEquals(42, ((Number)quack.evaluateBytecode(script)).intValue());
+        assertEquals("loaded", quack.evaluate("bytecodeGlobal"));
+        JavaScriptObject add = quack.evaluateBytecode(JavaScriptObject.class, function);
+        assertEquals(3, ((Number)add.call(1, 2)).intValue());
+
+        try {
+            quack.compileToBytecode("var x = ;", "broken.js");
+            fail("expected syntax error");
+        }
+        catch (QuackException e) {
+        }
+        quack.close();
+
+        File directory = File.createTempFile("quack", "cache");
+        directory.delete();
+        QuackBytecodeCache cache = new QuackBytecodeCache(directory, "test");
+        for (int i = 0; i < 2; i++) {
+            quack = QuackContext.create(useQuickJS);
+            assertEquals(42, ((Number)cache.evaluate(quack, "6 * 7", "cached.js")).intValue());
+            assertEquals(3, ((Number)cache.compileFunction(quack, "function(a, b) { return a + b; }", "cached.js").call(1, 2)).intValue());
+            quack.close();
+        }
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+
+        // corrupt bytecode fails its checksum, and is compiled again.
+        for (File file: directory.listFiles()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.seek(raf.length() - 1);
+                int last = raf.read();
+                raf.seek(raf.length() - 1);
+                raf.write(last ^ 0xff);
+            }
+        }
+        quack = QuackContext.create(useQuickJS);
+        assertEquals(42, ((Number)cache.evaluate(quack, "6 * 7", "cached.js")).intValue());
+        quack.close();
+        assertEquals(3, cache.getMissCount());
+        cache.clear();
+        assertTrue(directory.delete());
+    }
+
     public static class Foo2 {
         public void hello(String str) {
             System.out.println(str);
@@ -1143,6 +1304,186 @@ public class QuackTests {
         quack.close();
     }
 
+    interface TypedArrayInterface {
+        int[] getInts();
+        double[] getDoubles();
+        byte[] getBytes();
+    }
+
+    @Test
+    public void testTypedArrays() {
+        QuackContext quack = QuackContext.create(new QuackContextOptions().setUseQuickJS(useQuickJS).setTypedArrayCoercion(true));
+        TypedArrayInterface iface = quack.evaluate(TypedArrayInterface.class, "({ getInts: function() { return new Int32Array([2, 3, 4]); }, getDoubles: function() { return new Float32Array([0.5, 1.5]); }, getBytes: function() { return new Uint8Array([1, 2, 255]); } })", "?");
+        assertArrayEquals(new int[] { 2, 3, 4 }, iface.getInts());
+        assertArrayEquals(new double[] { 0.5, 1.5 }, iface.getDoubles(), 0);
+        assertArrayEquals(new byte[] { 1, 2, (byte)255 }, iface.getBytes());
+
+        JavaScriptObject describe = quack.compileFunction("function(a) { return Object.prototype.toString.call(a) + ':' + a.length + ':' + a[a.length - 1]; }", "?");
+        assertEquals("[object Int32Array]:3:7", describe.call(new int[] { 5, 6, 7 }));
+        assertEquals("[object Float64Array]:2:2.5", describe.call(new double[] { 1, 2.5 }));
+        assertEquals("[object Uint16Array]:1:65", describe.call(new char[] { 'A' }));
+
+        Object typed = quack.newTypedArray(new short[] { -1, 2 });
+        assertArrayEquals(new short[] { -1, 2 }, (short[])quack.coerceJavaScriptToJava(short[].class, typed));
+
+        // byte buffers convert element by element, rather than reinterpreting the bytes, and
+        // views over unsigned typed arrays are widened without sign extension.
+        assertArrayEquals(new int[] { 1, 2, 255 }, (int[])quack.coerceJavaScriptToJava(int[].class, quack.evaluate("new Uint8Array([1, 2, 255])")));
+        assertArrayEquals(new int[] { 1, 2, -1 }, (int[])quack.coerceJavaScriptToJava(int[].class, quack.evaluate("new Int8Array([1, 2, -1])")));
+        assertArrayEquals(new long[] { 4294967295L }, (long[])quack.coerceJavaScriptToJava(long[].class, quack.evaluate("new Uint32Array([4294967295])")));
+        assertArrayEquals(new int[] { 1, 2, -1 }, (int[])quack.coerceJavaScriptToJava(int[].class, ByteBuffer.wrap(new byte[] { 1, 2, -1 })));
+
+        // plain arrays still convert element by element.
+        assertArrayEquals(new int[] { 1, 2 }, (int[])quack.coerceJavaScriptToJava(int[].class, quack.evaluate("[1, 2]")));
+
+        quack.close();
+    }
+
+    @Test
+    public void testTypedArrayViews() {
+        QuackContext quack = QuackContext.create(useQuickJS);
+        JavaScriptObject ints = quack.evaluateForJavaScriptObject("var ints = new Int32Array([1, 2, 3]); (function() { return ints; })");
+        IntBuffer intBuffer = (IntBuffer)ints.call();
+        assertEquals(3, intBuffer.remaining());
+        assertEquals(2, intBuffer.get(1));
+        // the view shares memory with the typed array.
+        quack.evaluate("ints[1] = 20;");
+        assertEquals(20, intBuffer.get(1));
+        intBuffer.put(2, 30);
+        assertEquals(30, ((Number)quack.evaluate("ints[2]")).intValue());
+        // and maps back to the same typed array.
+        assertEquals(true, quack.compileFunction("function(a) { return a === ints; }", "?").call(intBuffer));
+
+        DoubleBuffer doubles = (DoubleBuffer)quack.evaluate("new Float64Array([0.5, 1.5]).subarray(1)");
+        assertEquals(1, doubles.remaining());
+        assertEquals(1.5, doubles.get(0), 0);
+
+        ByteBuffer view = (ByteBuffer)quack.evaluate("var dv = new DataView(new ArrayBuffer(8), 4); dv.setInt8(0, 7); dv;");
+        assertEquals(4, view.remaining());
+        assertEquals(7, view.get(0));
+
+        IntBuffer direct = ByteBuffer.allocateDirect(12).order(ByteOrder.nativeOrder()).asIntBuffer();
+        direct.put(new int[] { 4, 5, 6 }).flip();
+        JavaScriptObject increment = quack.compileFunction("function(a) { a[0]++; return Object.prototype.toString.call(a) + ':' + a.length; }", "?");
+        assertEquals("[object Int32Array]:3", increment.call(direct));
+        assertEquals(5, direct.get(0));
+
+        FloatBuffer heap = FloatBuffer.wrap(new float[] { 1, 2 });
+        assertEquals("[object Float32Array]:2", increment.call(heap));
+        assertEquals(1, heap.get(0), 0);
+
+        quack.close();
+    }
+
+    @Test
+    public void testByteBufferStaging() {
+        QuackContext quack = QuackContext.create(useQuickJS);
+        JavaScriptObject sum = quack.compileFunction("function(a) { var s = 0; for (var i = 0; i < a.length; i++) s += a[i]; a[0] = 100; return s; }", "?");
+
+        // heap buffers are copied from their position to their limit.
+        ByteBuffer heap = ByteBuffer.wrap(new byte[] { 1, 2, 3, 4 }, 1, 2);
+        assertEquals(5, ((Number)sum.call(heap)).intValue());
+        assertEquals(2, heap.get(1));
+
+        ByteBuffer readOnly = ByteBuffer.wrap(new byte[] { 1, 2, 3, 4 }).asReadOnlyBuffer();
+        assertEquals(10, ((Number)sum.call(readOnly)).intValue());
+
+        // set sends buffers uncoerced, and read-only heap buffers have no accessible array.
+        JavaScriptObject global = quack.getGlobalObject();
+        ByteBuffer readOnlySlice = ByteBuffer.wrap(new byte[] { 1, 2, 3, 4 }).asReadOnlyBuffer();
+        readOnlySlice.position(1);
+        global.set("readOnly", readOnlySlice);
+        assertEquals(9, ((Number)quack.evaluate("var s = 0; for (var i = 0; i < readOnly.length; i++) s += readOnly[i]; s")).intValue());
+        assertEquals(1, readOnlySlice.position());
+
+        // direct buffers are viewed in place.
+        ByteBuffer direct = ByteBuffer.allocateDirect(4);
+        direct.put(new byte[] { 1, 2, 3, 4 }).flip();
+        direct.position(2);
+        assertEquals(7, ((Number)sum.call(direct)).intValue());
+        assertEquals(100, direct.get(2));
+
+        // and a buffer received from javascript is sent back as the same object.
+        JavaScriptObject identity = quack.compileFunction("function(a) { return a; }", "?");
+        ByteBuffer received = (ByteBuffer)identity.call(direct);
+        assertEquals(2, received.remaining());
+        assertEquals(true, quack.compileFunction("function(a, b) { b[1] = 9; return a[1] == 9; }", "?").call(received, received));
+
+        quack.close();
+    }
+
+    @Test
+    public void testMapFile() throws IOException {
+        File file = File.createTempFile("quack", ".bin");
+        file.deleteOnExit();
+        final int size = 1 << 20;
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte)i;
+        }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes);
+        }
+
+        QuackContext quack = QuackContext.create(useQuickJS);
+        JavaScriptObject checksum = quack.compileFunction("function(a) { var s = 0; for (var i = 0; i < a.length; i++) s = (s + a[i]) | 0; return Object.prototype.toString.call(a) + ':' + a.length + ':' + s; }", "?");
+        long expected = 0;
+        for (byte b: bytes) {
+            expected += b & 0xff;
+        }
+
+        // the mapping is read in place, rather than copied into the javascript heap.
+        long before = quack.getHeapSize();
+        assertEquals("[object Uint8Array]:" + size + ":" + expected, checksum.call(QuackContext.mapFile(file)));
+        assertTrue(quack.getHeapSize() - before < size);
+
+        // a region of the file.
+        assertEquals("[object Uint8Array]:2:" + (16 + 17), checksum.call(QuackContext.mapFile(file, FileChannel.MapMode.READ_ONLY, 16, 2)));
+
+        // scripts may write to the default copy on write mapping, which is not written back
+        // to the file, and read only mappings are copied rather than written in place.
+        JavaScriptObject write = quack.compileFunction("function(a) { a[0] = 99; return a[0]; }", "?");
+        ByteBuffer mapped = QuackContext.mapFile(file);
+        assertEquals(99, ((Number)write.call(mapped)).intValue());
+        assertEquals(99, mapped.get(0));
+        assertEquals(99, ((Number)write.call(QuackContext.mapFile(file, FileChannel.MapMode.READ_ONLY, 0, 16))).intValue());
+        assertEquals(0, QuackContext.mapFile(file, FileChannel.MapMode.READ_ONLY, 0, 16).get(0));
+
+        // files that may only be read are still mapped, and missing files are not created.
+        assertTrue(file.setReadOnly());
+        assertEquals("[object Uint8Array]:" + size + ":" + expected, checksum.call(QuackContext.mapFile(file)));
+        File missing = new File(file.getPath() + ".missing");
+        try {
+            QuackContext.mapFile(missing, FileChannel.MapMode.PRIVATE, 0, 16);
+            fail("expected FileNotFoundException");
+        }
+        catch (FileNotFoundException e) {
+        }
+        assertFalse(missing.exists());
+
+        quack.close();
+        file.delete();
+    }
+
+    @Test
+    public void testJavaScriptObjectRelease() {
+        QuackContext quack = QuackContext.create(useQuickJS);
+        JavaScriptObject create = quack.compileFunction("function() { return {}; }", "?");
+        int before = quack.getJavaScriptObjectCount();
+        for (int i = 0; i < 1000; i++) {
+            assertNotNull(create.call());
+        }
+        assertTrue(quack.getJavaScriptObjectCount() >= before + 1000);
+
+        // collected objects are released in a batch, without finalizers.
+        quack.gc();
+        assertTrue(quack.getJavaScriptObjectCount() < before + 1000);
+        // and the context remains usable.
+        assertNotNull(create.call());
+
+        quack.close();
+    }
+
     @Test
     public void testDotConstructBug() {
         QuackContext quack = QuackContext.create(useQuickJS);
@@ -1216,4 +1557,391 @@ public class QuackTests {
         assertEquals(2, purged);
         quack.close();
     }
+
+    @Test
+    public void testModuleLoader() {
+        HashMap<String, String> modules = new HashMap<>();
+        modules.put("lib/a.js", "import { add } from '../util.js'; export const three = add(1, 2);");
+        modules.put("lib/b.js", "import { add } from '../util.js'; export const four = add(2, 2);");
+        modules.put("util.js", "globalThis.utilLoads = (globalThis.utilLoads || 0) + 1; export function add(a, b) { return a + b; }");
+        QuackModuleCache cache = new QuackModuleCache();
+
+        for (int i = 0; i < 2; i++) {
+            QuackContext quack = QuackContext.create();
+            quack.setModuleLoader(QuackModuleLoaders.fromMap(modules), cache);
+            quack.evaluateModule("import { three } from './lib/a.js'; import { four } from './lib/b.js'; globalThis.result = three + four;", "main.js");
+            assertEquals(7, ((Number)quack.evaluate("result")).intValue());
+            // shared imports are loaded once per context.
+            assertEquals(1, ((Number)quack.evaluate("utilLoads")).intValue());
+
+            try {
+                quack.evaluateModule("import './missing.js';", "main.js");
+                fail("expected missing module");
+            }
+            catch (QuackException e) {
+                assertTrue(e.getMessage().contains("missing.js"));
+            }
+            quack.close();
+        }
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void testMemoryLimits() {
+        QuackContext quack = QuackContext.create(useQuickJS);
+        long baseline = quack.getMemoryUsage();
+        assertTrue(baseline > 0);
+
+        ArrayList<QuackMemoryListener.Level> levels = new ArrayList<>();
+        quack.setMemoryListener(baseline + 1024 * 1024, baseline + 64 * 1024 * 1024, (q, level, heapSize) -> {
+            assertSame(quack, q);
+            levels.add(level);
+        });
+
+        quack.evaluate("var big = []; for (var i = 0; i < 100000; i++) { big.push({ i: i }); }");
+        assertEquals(Arrays.asList(QuackMemoryListener.Level.SOFT), levels);
+        // still over the soft watermark, so it is not reported again.
+        quack.evaluate("big.length");
+        assertEquals(1, levels.size());
+
+        quack.setMemoryLimit(quack.getMemoryUsage() + 8 * 1024 * 1024);
+        try {
+            quack.evaluate("var bigger = []; while (true) { bigger.push({ i: bigger.length }); }");
+            fail("expected out of memory");
+        }
+        catch (QuackException e) {
+        }
+        assertEquals(Arrays.asList(QuackMemoryListener.Level.SOFT, QuackMemoryListener.Level.HARD), levels);
+
+        // the context remains usable once the memory is released.
+        quack.evaluate("big = null; bigger = null;");
+        quack.setGCThreshold(baseline / 2);
+        quack.evaluate("for (var i = 0; i < 10000; i++) { ({ i: i }); }");
+        assertEquals(2, ((Number)quack.evaluate("1 + 1")).intValue());
+        assertTrue(quack.getMemoryUsage() < baseline + 1024 * 1024);
+
+        quack.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testInvocationBudget() throws InterruptedException {
+        QuackContext quack = QuackContext.create(useQuickJS);
+
+        quack.setInvocationBudget(50, 0);
+        try {
+            // scripts can not catch the interruption.
+            quack.evaluate("try { while (true) {} } catch (e) { 'caught' }");
+            fail("expected interruption");
+        }
+        catch (QuackInterruptedException e) {
+        }
+        // the context remains usable.
+        assertEquals(2, ((Number)quack.evaluate("1 + 1")).intValue());
+
+        quack.setInvocationBudget(0, 1000000);
+        JavaScriptObject spin = quack.compileFunction("function() { var i = 0; while (true) { i++; } }", "?");
+        try {
+            spin.call();
+            fail("expected interruption");
+        }
+        catch (QuackInterruptedException e) {
+        }
+
+        quack.setInvocationBudget(0, 0);
+        assertEquals(3, ((Number)quack.evaluate("1 + 2")).intValue());
+        Thread interrupter = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            }
+            catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            quack.interrupt();
+        });
+        interrupter.start();
+        try {
+            spin.call();
+            fail("expected interruption");
+        }
+        catch (QuackInterruptedException e) {
+        }
+        interrupter.join();
+        assertEquals(4, ((Number)quack.evaluate("2 + 2")).intValue());
+
+        quack.close();
+    }
+
+    @Test
+    public void testContextTemplate() throws InterruptedException {
+        int[] initialized = new int[1];
+        QuackContextTemplate template = new QuackContextTemplate.Builder(new QuackContextOptions().setUseQuickJS(useQuickJS))
+                .addInitializer(quack -> {
+                    initialized[0]++;
+                    quack.getGlobalObject().set("base", 10);
+                })
+                .addScript("var add = function(a, b) { return base + a + b; };", "bootstrap.js")
+                .build();
+        // the build initializes a context to compile the scripts.
+        assertEquals(1, initialized[0]);
+
+        QuackContext first = template.create();
+        QuackContext second = template.create();
+        assertEquals(2, initialized[0]);
+        first.evaluate("base = 100");
+        assertEquals(103, ((Number)first.evaluate("add(1, 2)")).intValue());
+        // contexts do not share state.
+        assertEquals(13, ((Number)second.evaluate("add(1, 2)")).intValue());
+        first.close();
+        second.close();
+
+        QuackContextPool pool = new QuackContextPool(2, template);
+        assertEquals(13, ((Number)pool.run(quack -> quack.evaluate("add(1, 2)"))).intValue());
+        pool.close();
+
+        try {
+            new QuackContextTemplate.Builder().addScript("var x = ;", "broken.js").build();
+            fail("expected syntax error");
+        }
+        catch (QuackException e) {
+        }
+    }
+
+    @Test
+    public void testContextPool() throws InterruptedException {
+        QuackContextPool pool = new QuackContextPool(4, useQuickJS, quack -> quack.evaluate("var add = function(a, b) { return a + b; };"));
+
+        JavaScriptObject add = pool.run(quack -> (JavaScriptObject)quack.getGlobalObject().get("add"));
+        assertNotNull(add);
+        assertEquals(3, ((Number)pool.call(add, 1, 2)).intValue());
+
+        Thread[] threads = new Thread[8];
+        int[] results = new int[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    results[index] = pool.run(quack -> ((Number)quack.evaluate("add(" + index + ", 1)")).intValue());
+                }
+                catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+            assertEquals(i + 1, results[i]);
+        }
+
+        // a thread can not wait on a second context while holding one.
+        QuackContext first = pool.acquire(pool.getContexts().get(0));
+        assertSame(first, pool.acquire(first));
+        try {
+            pool.acquire(pool.getContexts().get(1));
+            fail("expected IllegalStateException");
+        }
+        catch (IllegalStateException e) {
+        }
+        pool.release(first);
+        pool.release(first);
+
+        pool.close();
+    }
+
+    @Test
+    public void testThreadConfinedContext() throws Exception {
+        ExecutorService owner = Executors.newSingleThreadExecutor();
+        QuackContext quack = owner.submit(() -> QuackContext.create(new QuackContextOptions().setUseQuickJS(useQuickJS).setThreadConfined(owner))).get();
+        assertTrue(quack.isThreadConfined());
+        assertFalse(quack.isOwnerThread());
+
+        // calls from this thread are handed off to the owner.
+        JavaScriptObject add = quack.evaluateForJavaScriptObject("(function(a, b) { return a + b; })");
+        assertEquals(3, ((Number)add.call(1, 2)).intValue());
+        assertEquals(5, (int)owner.submit(() -> ((Number)add.call(2, 3)).intValue()).get());
+
+        try {
+            quack.evaluate("throw new Error('confined')");
+            fail("expected exception");
+        }
+        catch (QuackException e) {
+            assertTrue(e.getMessage().contains("confined"));
+        }
+
+        // a confined context without an owner executor rejects other threads.
+        QuackContext unowned = QuackContext.create(new QuackContextOptions().setUseQuickJS(useQuickJS).setThreadConfined(null));
+        boolean[] rejected = new boolean[1];
+        Thread thread = new Thread(() -> {
+            try {
+                unowned.evaluate("2");
+            }
+            catch (IllegalStateException e) {
+                rejected[0] = true;
+            }
+        });
+        thread.start();
+        thread.join();
+        assertTrue(rejected[0]);
+        unowned.close();
+
+        quack.close();
+        owner.shutdown();
+    }
+
+    public static class CoercionBase {
+    }
+
+    public static class CoercionDerived extends CoercionBase {
+    }
+
+    @Test
+    public void testCoercionCacheInvalidation() {
+        QuackContext quack = QuackContext.create(useQuickJS);
+
+        // misses are cached, and must be invalidated by a new registration.
+        CoercionDerived derived = new CoercionDerived();
+        assertSame(derived, quack.coerceJavaToJavaScript(derived));
+
+        quack.putJavaToJavaScriptCoercion(CoercionBase.class, (clazz, o) -> "base");
+        assertEquals("base", quack.coerceJavaToJavaScript(derived));
+        assertEquals("base", quack.coerceJavaToJavaScript(derived));
+
+        quack.putJavaToJavaScriptCoercion(CoercionDerived.class, (clazz, o) -> "derived");
+        assertEquals("derived", quack.coerceJavaToJavaScript(derived));
+        assertEquals("base", quack.coerceJavaToJavaScript(new CoercionBase()));
+
+        quack.close();
+    }
+
+    public interface DirectDispatchInterface extends InterfaceWithProperty {
+        int add(int a, int b);
+        @QuackMethodName(name = "concat")
+        String join(String a, String b);
+    }
+
+    public interface DirectDispatchLambda {
+        int apply(int value);
+    }
+
+    @Test
+    public void testDirectProxyDispatch() {
+        QuackContext quack = QuackContext.create(useQuickJS);
+        quack.setDirectProxyDispatch(true);
+
+        DirectDispatchInterface test = quack.evaluate(DirectDispatchInterface.class, "({ foo: 'hello', add: function(a, b) { return a + b; }, concat: function(a, b) { return a + b; } })", "?");
+        assertEquals("hello", test.getFoo());
+        test.setFoo("goober");
+        assertEquals("goober", test.getFoo());
+        assertEquals(3, test.add(1, 2));
+        assertEquals("ab", test.join("a", "b"));
+        assertTrue(test instanceof QuackJavaScriptObject);
+        assertEquals(test, test);
+        assertNotEquals(test, ((QuackJavaScriptObject)test).getJavaScriptObject());
+        DirectDispatchInterface same = ((QuackJavaScriptObject)test).getJavaScriptObject().proxyInterface(DirectDispatchInterface.class);
+        assertEquals(test, same);
+        assertNotEquals(test, quack.evaluate(DirectDispatchInterface.class, "({ foo: 'hello' })", "?"));
+        assertNotNull(((QuackJavaScriptObject)test).getJavaScriptObject());
+
+        DirectDispatchLambda lambda = quack.evaluate(DirectDispatchLambda.class, "(function(v) { return v * 2; })", "?");
+        assertEquals(4, lambda.apply(2));
+
+        // proxies of the same interface share a proxy class.
+        DirectDispatchLambda other = quack.evaluate(DirectDispatchLambda.class, "(function(v) { return v * 3; })", "?");
+        assertSame(lambda.getClass(), other.getClass());
+        assertEquals(6, other.apply(2));
+
+        quack.close();
+    }
+
+    @Test
+    public void testPrimitiveEntryPoints() {
+        QuackContext quack = QuackContext.create(useQuickJS);
+        JavaScriptObject obj = quack.evaluateForJavaScriptObject("({ a: 1.5, b: '7', c: [2, 3] })");
+        assertEquals(1.5, obj.getDouble("a"), 0);
+        assertEquals(1, obj.getInt("a"));
+        assertEquals(7, obj.getInt("b"));
+        assertTrue(Double.isNaN(obj.getDouble("missing")));
+
+        JavaScriptObject array = (JavaScriptObject)obj.get("c");
+        assertEquals(3, array.getInt(1));
+        array.setDouble(0, 0.25);
+        array.setInt(2, 5);
+        assertEquals(0.25, array.getDouble(0), 0);
+        assertEquals(5, array.getInt(2));
+
+        obj.setDouble("d", 2.5);
+        obj.setInt("e", 4);
+        assertEquals("{\"a\":1.5,\"b\":\"7\",\"c\":[0.25,3,5],\"d\":2.5,\"e\":4}", obj.stringify());
+
+        JavaScriptObject func = quack.compileFunction("function(a, b) { return a * b; }", "?");
+        assertEquals(7.5, func.callDouble(2.5, 3), 0);
+
+        JavaScriptObject thrower = quack.compileFunction("function() { throw new Error('nope'); }", "?");
+        try {
+            thrower.callDouble();
+            fail("expected exception");
+        }
+        catch (QuackException e) {
+            assertTrue(e.getMessage().contains("nope"));
+        }
+
+        quack.close();
+    }
+
+    @Test
+    public void testInternedPropertyKeys() {
+        QuackContext quack = QuackContext.create(useQuickJS);
+        QuackPropertyKey price = quack.intern("price");
+        QuackPropertyKey total = quack.intern("total");
+        assertSame(price, quack.intern("price"));
+        assertEquals("price", price.getName());
+
+        JavaScriptObject obj = quack.evaluateForJavaScriptObject("({ price: 3, total: function(n) { return this.price * n; } })");
+        assertEquals(3, obj.get(price));
+        assertTrue(obj.set(price, 4));
+        assertEquals(4, obj.get("price"));
+        assertEquals(8, obj.callProperty(total, 2));
+        // keys are also accepted where arbitrary property objects are.
+        assertEquals(4, obj.get((Object)price));
+        assertEquals(12, obj.callProperty((Object)total, 3));
+
+        // numeric keys behave as their index.
+        JavaScriptObject array = quack.evaluateForJavaScriptObject("([5, 6])");
+        assertEquals(6, array.get(quack.intern("1")));
+
+        QuackContext other = QuackContext.create(useQuickJS);
+        try {
+            obj.get(other.intern("price"));
+            fail("expected exception");
+        }
+        catch (IllegalArgumentException e) {
+        }
+        other.close();
+
+        quack.close();
+    }
+
+    @Test
+    public void testBatchedProperties() {
+        QuackContext quack = QuackContext.create(useQuickJS);
+        JavaScriptObject obj = quack.evaluateForJavaScriptObject("({ a: 1, b: 'two', c: { d: 3 } })");
+        Object[] values = obj.getAll("a", "b", "c", "missing");
+        assertEquals(4, values.length);
+        assertEquals(1, values[0]);
+        assertEquals("two", values[1]);
+        assertEquals(3, ((JavaScriptObject)values[2]).get("d"));
+        assertNull(values[3]);
+
+        assertTrue(obj.setAll(new String[] { "a", "e", "f" }, new Object[] { "one", 5, null }));
+        assertEquals("{\"a\":\"one\",\"b\":\"two\",\"c\":{\"d\":3},\"e\":5,\"f\":null}", obj.stringify());
+
+        try {
+            obj.setAll(new String[] { "a" }, new Object[0]);
+            fail("expected exception");
+        }
+        catch (IllegalArgumentException e) {
+        }
+
+        quack.close();
+    }
 }
@@ -0,0 +1,94 @@
+package com.koushikdutta.quack;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTests {
+    @Test
+    public void testExpiresInOrder() {
+        TimingWheel wheel = new TimingWheel(1000);
+        Random random = new Random(42);
+        ArrayList<TimingWheel.Timer> timers = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            TimingWheel.Timer timer = new TimingWheel.Timer();
+            // spans every wheel, and past the coarsest one.
+            long delta = 1 + (long)Math.pow(2, random.nextDouble() * 26);
+            wheel.schedule(timer, 1000 + delta);
+            timers.add(timer);
+        }
+        assertEquals(timers.size(), wheel.size());
+
+        ArrayList<TimingWheel.Timer> expired = new ArrayList<>();
+        long tick = 1000;
+        int count = 0;
+        while (wheel.size() > 0) {
+            long previous = tick;
+            tick += 1 + random.nextInt(5000);
+            expired.clear();
+            wheel.advance(tick, expired);
+            long last = previous;
+            for (TimingWheel.Timer timer: expired) {
+                // never early, never late, and in order of expiry.
+                assertTrue(timer.getExpiry() > previous);
+                assertTrue(timer.getExpiry() <= tick);
+                assertTrue(timer.getExpiry() >= last);
+                assertFalse(timer.isScheduled());
+                last = timer.getExpiry();
+            }
+            count += expired.size();
+        }
+        assertEquals(timers.size(), count);
+    }
+
+    @Test
+    public void testNextTick() {
+        TimingWheel wheel = new TimingWheel(0);
+        assertEquals(Long.MAX_VALUE, wheel.getNextTick());
+
+        TimingWheel.Timer timer = new TimingWheel.Timer();
+        wheel.schedule(timer, 10);
+        assertEquals(10, wheel.getNextTick());
+
+        // a far timer only wakes the wheel to cascade it.
+        wheel.schedule(timer, 100000);
+        long next = wheel.getNextTick();
+        assertTrue(next > 0 && next <= 100000);
+
+        ArrayList<TimingWheel.Timer> expired = new ArrayList<>();
+        int wakeups = 0;
+        while (wheel.size() > 0) {
+            wheel.advance(wheel.getNextTick(), expired);
+            wakeups++;
+        }
+        assertEquals(1, expired.size());
+        assertEquals(100000, wheel.getCurrentTick());
+        assertTrue(wakeups <= 4);
+    }
+
+    @Test
+    public void testCancel() {
+        TimingWheel wheel = new TimingWheel(0);
+        TimingWheel.Timer a = new TimingWheel.Timer();
+        TimingWheel.Timer b = new TimingWheel.Timer();
+        wheel.schedule(a, 5);
+        wheel.schedule(b, 5000);
+        assertTrue(wheel.cancel(b));
+        assertFalse(wheel.cancel(b));
+        assertEquals(1, wheel.size());
+
+        // past due timers expire on the next tick.
+        wheel.schedule(b, -1);
+        ArrayList<TimingWheel.Timer> expired = new ArrayList<>();
+        wheel.advance(10000, expired);
+        assertEquals(2, expired.size());
+        assertEquals(b, expired.get(0));
+        assertEquals(a, expired.get(1));
+        assertEquals(0, wheel.size());
+    }
+}
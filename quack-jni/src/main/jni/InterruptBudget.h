@@ -0,0 +1,50 @@
+#ifndef INTERRUPT_BUDGET_H
+#define INTERRUPT_BUDGET_H
+
+#include <atomic>
+#include <chrono>
+#include <jni.h>
+
+// A deadline and instruction budget for the outermost invocation of a context, checked
+// periodically by the engine's interrupt hook. Once the budget is spent (or interrupt is called),
+// every check fails until the budget is reset, so the error can not be caught by scripts.
+class InterruptBudget {
+public:
+    // either limit is ignored if not positive. instructions are counted in whole check
+    // intervals, so the budget is approximate.
+    void reset(jlong maxNanos, jlong maxInstructions, jlong instructionsPerCheck) {
+        interrupted = false;
+        hasDeadline = maxNanos > 0;
+        if (hasDeadline)
+            deadline = std::chrono::steady_clock::now() + std::chrono::nanoseconds(maxNanos);
+        remainingChecks = maxInstructions > 0 ? (maxInstructions + instructionsPerCheck - 1) / instructionsPerCheck : 0;
+    }
+
+    // may be called from any thread.
+    void interrupt() {
+        interrupted = true;
+    }
+
+    bool isInterrupted() const {
+        return interrupted;
+    }
+
+    // returns true to interrupt the running script.
+    bool check() {
+        if (interrupted)
+            return true;
+        if (remainingChecks > 0 && --remainingChecks == 0)
+            interrupted = true;
+        else if (hasDeadline && std::chrono::steady_clock::now() >= deadline)
+            interrupted = true;
+        return interrupted;
+    }
+
+private:
+    std::atomic<bool> interrupted{false};
+    bool hasDeadline = false;
+    std::chrono::steady_clock::time_point deadline;
+    jlong remainingChecks = 0;
+};
+
+#endif
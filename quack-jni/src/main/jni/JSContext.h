@@ -2,6 +2,11 @@
 #define JS_CONTEXT_H
 
 #include <jni.h>
+#include "InterruptBudget.h"
+
+// bump whenever the engine configuration changes the bytecode the engines write,
+// without changing their versions.
+#define QUACK_BYTECODE_FORMAT 1
 
 inline JNIEnv* getEnvFromJavaVM(JavaVM* javaVM) {
   if (javaVM == nullptr) {
@@ -28,6 +33,9 @@ public:
     virtual jobject evaluate(JNIEnv *env, jstring code, jstring filename) = 0;
     virtual jobject evaluateModule(JNIEnv *env, jstring code, jstring filename) = 0;
     virtual jobject compile(JNIEnv* env, jstring code, jstring filename) = 0;
+    // serialized bytecode, which may only be loaded by the engine build that produced it.
+    virtual jbyteArray compileBytecode(JNIEnv* env, jstring code, jstring filename, jboolean module) = 0;
+    virtual jobject evaluateBytecode(JNIEnv* env, jbyteArray bytecode) = 0;
 
     virtual jobject getGlobalObject(JNIEnv *env) = 0;
     virtual jstring stringify(JNIEnv *env, jlong object) = 0;
@@ -39,19 +47,79 @@ public:
     virtual jboolean setKeyInteger(JNIEnv* env, jlong object, jint index, jobject value) = 0;
     virtual jboolean setKeyObject(JNIEnv* env, jlong object, jobject key, jobject value) = 0;
 
+    // primitive specializations, which neither box nor coerce through Java objects.
+    virtual jdouble getKeyStringDouble(JNIEnv* env, jlong object, jstring key) = 0;
+    virtual jdouble getKeyIntegerDouble(JNIEnv* env, jlong object, jint index) = 0;
+    virtual jint getKeyStringInt(JNIEnv* env, jlong object, jstring key) = 0;
+    virtual jint getKeyIntegerInt(JNIEnv* env, jlong object, jint index) = 0;
+    virtual jboolean setKeyStringDouble(JNIEnv* env, jlong object, jstring key, jdouble value) = 0;
+    virtual jboolean setKeyIntegerDouble(JNIEnv* env, jlong object, jint index, jdouble value) = 0;
+    virtual jboolean setKeyStringInt(JNIEnv* env, jlong object, jstring key, jint value) = 0;
+    virtual jboolean setKeyIntegerInt(JNIEnv* env, jlong object, jint index, jint value) = 0;
+
+    // batched property access, for moving whole records in one transition.
+    virtual jobjectArray getKeys(JNIEnv* env, jlong object, jobjectArray keys) = 0;
+    virtual jboolean setKeys(JNIEnv* env, jlong object, jobjectArray keys, jobjectArray values) = 0;
+
+    // copies between Java primitive arrays and JavaScript typed arrays.
+    virtual jobject newTypedArray(JNIEnv* env, jobject array) = 0;
+    virtual jobject getTypedArray(JNIEnv* env, jlong object) = 0;
+
+    // interned property keys, which remain valid for the lifetime of the context.
+    virtual jlong internKey(JNIEnv* env, jstring key) = 0;
+    virtual jobject getKeyInterned(JNIEnv* env, jlong object, jlong key) = 0;
+    virtual jboolean setKeyInterned(JNIEnv* env, jlong object, jlong key, jobject value) = 0;
+
     virtual jobject callConstructor(JNIEnv *env, jlong object, jobjectArray args) = 0;
     virtual jobject call(JNIEnv *env, jlong object, jobjectArray args) = 0;
+    virtual jdouble callDouble(JNIEnv *env, jlong object, jdoubleArray args) = 0;
     virtual jobject callProperty(JNIEnv *env, jlong object, jobject property, jobjectArray args) = 0;
+    virtual jobject callPropertyInterned(JNIEnv *env, jlong object, jlong key, jobjectArray args) = 0;
     virtual jobject callMethod(JNIEnv *env, jlong method, jobject object, jobjectArray args) = 0;
 
     virtual jboolean hasPendingJobs(JNIEnv *env) = 0;
-    virtual void runJobs(JNIEnv *env) = 0;
+    // run pending jobs until none remain, or either budget is spent (ignored if not positive).
+    // returns the number of jobs run.
+    virtual jint runJobs(JNIEnv *env, jint maxJobs, jlong maxNanos) = 0;
 
     virtual void waitForDebugger(JNIEnv *env, jstring connectionString) = 0;
     virtual void cooperateDebugger() = 0;
     virtual jboolean isDebugging() = 0;
     virtual void debuggerAppNotify(JNIEnv *env, jobjectArray args) = 0;
     virtual jlong getHeapSize(JNIEnv *env) = 0;
+    // identifies the engine version and bytecode format, since bytecode is only valid for
+    // the engine that compiled it. the id is stable across rebuilds of the same sources, so
+    // it must include QUACK_BYTECODE_FORMAT.
+    virtual jstring getBuildId(JNIEnv *env) = 0;
+
+    // budgets for the outermost invocation, enforced by the engine's interrupt hook.
+    virtual void setInterruptBudget(JNIEnv *env, jlong maxNanos, jlong maxInstructions) = 0;
+    // may be called from any thread.
+    void interrupt() { interruptBudget.interrupt(); }
+    jboolean isInterrupted() { return interruptBudget.isInterrupted() ? JNI_TRUE : JNI_FALSE; }
+    bool checkInterrupt() { return interruptBudget.check(); }
+
+    // cap the allocated size of the heap, in bytes, or no cap if not positive. allocations past
+    // the cap fail, which scripts see as out of memory errors.
+    virtual void setMemoryLimit(JNIEnv *env, jlong limit) = 0;
+    // the allocated size that triggers the next collection, which is then raised with the heap,
+    // or the engine's default if not positive.
+    virtual void setGCThreshold(JNIEnv *env, jlong threshold) = 0;
+    // run any collection deferred by the GC threshold, and return the allocated size of the heap.
+    // must be called outside of any invocation.
+    virtual jlong pollMemoryUsage(JNIEnv *env) = 0;
+    // whether an allocation was refused by the memory limit since the last call.
+    jboolean takeMemoryLimitExceeded() {
+        bool ret = memoryLimitExceeded;
+        memoryLimitExceeded = false;
+        return ret ? JNI_TRUE : JNI_FALSE;
+    }
+    // called by the allocator.
+    void onMemoryLimitExceeded() { memoryLimitExceeded = true; }
+
+protected:
+    InterruptBudget interruptBudget;
+    bool memoryLimitExceeded = false;
 };
 
 #endif
\ No newline at end of file
@@ -0,0 +1,154 @@
+#ifndef TYPED_ARRAYS_H
+#define TYPED_ARRAYS_H
+
+#include <cstddef>
+#include <jni.h>
+
+// JavaScript typed array kinds. These values are shared with PrimitiveArrays.java.
+// Kinds with a Java primitive array of the same element type are copied to and from
+// those arrays in a single copy.
+enum TypedArrayKind {
+    TYPED_ARRAY_INT8 = 0,
+    TYPED_ARRAY_UINT8,
+    TYPED_ARRAY_UINT8_CLAMPED,
+    TYPED_ARRAY_INT16,
+    TYPED_ARRAY_UINT16,
+    TYPED_ARRAY_INT32,
+    TYPED_ARRAY_UINT32,
+    TYPED_ARRAY_FLOAT32,
+    TYPED_ARRAY_FLOAT64,
+    TYPED_ARRAY_KIND_COUNT,
+};
+
+// JavaScript constructor names, by kind.
+static const char* const TYPED_ARRAY_NAMES[] = {
+    "Int8Array",
+    "Uint8Array",
+    "Uint8ClampedArray",
+    "Int16Array",
+    "Uint16Array",
+    "Int32Array",
+    "Uint32Array",
+    "Float32Array",
+    "Float64Array",
+};
+
+// Java primitive array class names, by kind, if any.
+static const char* const TYPED_ARRAY_JAVA_ARRAYS[] = {
+    "[B",
+    nullptr,
+    nullptr,
+    "[S",
+    "[C",
+    "[I",
+    nullptr,
+    "[F",
+    "[D",
+};
+
+// Java NIO buffer class names, by kind, for buffers that are sent as typed arrays.
+// ByteBuffers are always sent as Uint8Arrays.
+static const char* const TYPED_ARRAY_JAVA_BUFFERS[] = {
+    nullptr,
+    nullptr,
+    nullptr,
+    "java/nio/ShortBuffer",
+    "java/nio/CharBuffer",
+    "java/nio/IntBuffer",
+    nullptr,
+    "java/nio/FloatBuffer",
+    "java/nio/DoubleBuffer",
+};
+
+static const size_t TYPED_ARRAY_ELEMENT_SIZES[] = {
+    1,
+    1,
+    1,
+    2,
+    2,
+    4,
+    4,
+    4,
+    8,
+};
+
+class TypedArrayClasses {
+public:
+    void init(JNIEnv *env) {
+        for (int i = 0; i < TYPED_ARRAY_KIND_COUNT; i++) {
+            arrays[i] = findClass(env, TYPED_ARRAY_JAVA_ARRAYS[i]);
+            buffers[i] = findClass(env, TYPED_ARRAY_JAVA_BUFFERS[i]);
+            // order() is declared by each typed buffer class, and resolved once here
+            // rather than per conversion.
+            orders[i] = buffers[i] == nullptr ? nullptr : env->GetMethodID(buffers[i], "order", "()Ljava/nio/ByteOrder;");
+        }
+        bufferClass = findClass(env, "java/nio/Buffer");
+        jclass byteOrderClass = env->FindClass("java/nio/ByteOrder");
+        jmethodID nativeOrder = env->GetStaticMethodID(byteOrderClass, "nativeOrder", "()Ljava/nio/ByteOrder;");
+        nativeByteOrder = env->NewGlobalRef(env->CallStaticObjectMethod(byteOrderClass, nativeOrder));
+        env->DeleteLocalRef(byteOrderClass);
+    }
+
+    // the kind of a Java primitive array, or -1 if it is not a supported array.
+    int getArrayKind(JNIEnv *env, jobject array) const {
+        return getKind(env, arrays, array);
+    }
+
+    // the kind of a direct Java NIO buffer in native byte order, or -1 if it is not a supported buffer.
+    int getBufferKind(JNIEnv *env, jobject buffer) const {
+        if (!env->IsInstanceOf(buffer, bufferClass))
+            return -1;
+        int kind = getKind(env, buffers, buffer);
+        if (kind < 0 || env->GetDirectBufferAddress(buffer) == nullptr)
+            return -1;
+        jobject byteOrder = env->CallObjectMethod(buffer, orders[kind]);
+        bool isNativeOrder = env->IsSameObject(byteOrder, nativeByteOrder);
+        env->DeleteLocalRef(byteOrder);
+        return isNativeOrder ? kind : -1;
+    }
+
+    static jarray newArray(JNIEnv *env, int kind, jsize length) {
+        switch (kind) {
+            case TYPED_ARRAY_INT8:
+                return env->NewByteArray(length);
+            case TYPED_ARRAY_INT16:
+                return env->NewShortArray(length);
+            case TYPED_ARRAY_UINT16:
+                return env->NewCharArray(length);
+            case TYPED_ARRAY_INT32:
+                return env->NewIntArray(length);
+            case TYPED_ARRAY_FLOAT32:
+                return env->NewFloatArray(length);
+            case TYPED_ARRAY_FLOAT64:
+                return env->NewDoubleArray(length);
+            default:
+                return nullptr;
+        }
+    }
+
+private:
+    static jclass findClass(JNIEnv *env, const char *className) {
+        if (className == nullptr)
+            return nullptr;
+        jclass clazz = env->FindClass(className);
+        jclass ret = (jclass)env->NewGlobalRef(clazz);
+        env->DeleteLocalRef(clazz);
+        return ret;
+    }
+
+    static int getKind(JNIEnv *env, const jclass *classes, jobject object) {
+        for (int i = 0; i < TYPED_ARRAY_KIND_COUNT; i++) {
+            if (classes[i] != nullptr && env->IsInstanceOf(object, classes[i]))
+                return i;
+        }
+        return -1;
+    }
+
+    jclass arrays[TYPED_ARRAY_KIND_COUNT];
+    jclass buffers[TYPED_ARRAY_KIND_COUNT];
+    jmethodID orders[TYPED_ARRAY_KIND_COUNT];
+    jclass bufferClass;
+    jobject nativeByteOrder;
+};
+
+#endif
@@ -142,12 +142,113 @@ Java_com_koushikdutta_quack_QuackContext_setKeyString(JNIEnv *env, jclass type,
     return reinterpret_cast<JSContext *>(context)->setKeyString(env, object, key, value);
 }
 
+JNIEXPORT jdouble JNICALL
+Java_com_koushikdutta_quack_QuackContext_getKeyStringDouble(JNIEnv *env, jclass type, jlong context, jlong object, jstring key) {
+    return reinterpret_cast<JSContext *>(context)->getKeyStringDouble(env, object, key);
+}
+
+JNIEXPORT jdouble JNICALL
+Java_com_koushikdutta_quack_QuackContext_getKeyIntegerDouble(JNIEnv *env, jclass type, jlong context, jlong object, jint index) {
+    return reinterpret_cast<JSContext *>(context)->getKeyIntegerDouble(env, object, index);
+}
+
+JNIEXPORT jint JNICALL
+Java_com_koushikdutta_quack_QuackContext_getKeyStringInt(JNIEnv *env, jclass type, jlong context, jlong object, jstring key) {
+    return reinterpret_cast<JSContext *>(context)->getKeyStringInt(env, object, key);
+}
+
+JNIEXPORT jint JNICALL
+Java_com_koushikdutta_quack_QuackContext_getKeyIntegerInt(JNIEnv *env, jclass type, jlong context, jlong object, jint index) {
+    return reinterpret_cast<JSContext *>(context)->getKeyIntegerInt(env, object, index);
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_koushikdutta_quack_QuackContext_setKeyStringDouble(JNIEnv *env, jclass type, jlong context, jlong object, jstring key, jdouble value) {
+    return reinterpret_cast<JSContext *>(context)->setKeyStringDouble(env, object, key, value);
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_koushikdutta_quack_QuackContext_setKeyIntegerDouble(JNIEnv *env, jclass type, jlong context, jlong object, jint index, jdouble value) {
+    return reinterpret_cast<JSContext *>(context)->setKeyIntegerDouble(env, object, index, value);
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_koushikdutta_quack_QuackContext_setKeyStringInt(JNIEnv *env, jclass type, jlong context, jlong object, jstring key, jint value) {
+    return reinterpret_cast<JSContext *>(context)->setKeyStringInt(env, object, key, value);
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_koushikdutta_quack_QuackContext_setKeyIntegerInt(JNIEnv *env, jclass type, jlong context, jlong object, jint index, jint value) {
+    return reinterpret_cast<JSContext *>(context)->setKeyIntegerInt(env, object, index, value);
+}
+
+JNIEXPORT jobjectArray JNICALL
+Java_com_koushikdutta_quack_QuackContext_getKeys(JNIEnv *env, jclass type, jlong context, jlong object, jobjectArray keys) {
+    return reinterpret_cast<JSContext *>(context)->getKeys(env, object, keys);
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_koushikdutta_quack_QuackContext_setKeys(JNIEnv *env, jclass type, jlong context, jlong object, jobjectArray keys, jobjectArray values) {
+    return reinterpret_cast<JSContext *>(context)->setKeys(env, object, keys, values);
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_koushikdutta_quack_QuackContext_newTypedArray(JNIEnv *env, jclass type, jlong context, jobject array) {
+    return reinterpret_cast<JSContext *>(context)->newTypedArray(env, array);
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_koushikdutta_quack_QuackContext_getTypedArray(JNIEnv *env, jclass type, jlong context, jlong object) {
+    return reinterpret_cast<JSContext *>(context)->getTypedArray(env, object);
+}
+
+JNIEXPORT jlong JNICALL
+Java_com_koushikdutta_quack_QuackContext_internKey(JNIEnv *env, jclass type, jlong context, jstring key) {
+    return reinterpret_cast<JSContext *>(context)->internKey(env, key);
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_koushikdutta_quack_QuackContext_getKeyInterned(JNIEnv *env, jclass type, jlong context, jlong object, jlong key) {
+    return reinterpret_cast<JSContext *>(context)->getKeyInterned(env, object, key);
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_koushikdutta_quack_QuackContext_setKeyInterned(JNIEnv *env, jclass type, jlong context, jlong object, jlong key, jobject value) {
+    return reinterpret_cast<JSContext *>(context)->setKeyInterned(env, object, key, value);
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_koushikdutta_quack_QuackContext_callPropertyInterned(JNIEnv *env, jclass type,
+                                           jlong context, jlong object,
+                                           jlong key, jobjectArray args) {
+    return reinterpret_cast<JSContext *>(context)->callPropertyInterned(env, object, key, args);
+}
+
+JNIEXPORT jdouble JNICALL
+Java_com_koushikdutta_quack_QuackContext_callDouble(JNIEnv *env, jclass type,
+                                           jlong context, jlong object,
+                                           jdoubleArray args) {
+    return reinterpret_cast<JSContext *>(context)->callDouble(env, object, args);
+}
+
 JNIEXPORT jobject JNICALL
 Java_com_koushikdutta_quack_QuackContext_compileFunction(
         JNIEnv* env, jclass type, jlong context, jstring code, jstring fname) {
     return reinterpret_cast<JSContext *>(context)->compile(env, code, fname);
 }
 
+JNIEXPORT jbyteArray JNICALL
+Java_com_koushikdutta_quack_QuackContext_compileBytecode(
+        JNIEnv* env, jclass type, jlong context, jstring code, jstring fname, jboolean module) {
+    return reinterpret_cast<JSContext *>(context)->compileBytecode(env, code, fname, module);
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_koushikdutta_quack_QuackContext_evaluateBytecode(
+        JNIEnv* env, jclass type, jlong context, jbyteArray bytecode) {
+    return reinterpret_cast<JSContext *>(context)->evaluateBytecode(env, bytecode);
+}
+
 JNIEXPORT jobject JNICALL
 Java_com_koushikdutta_quack_QuackContext_evaluate(
     JNIEnv* env, jclass type, jlong context, jstring code, jstring fname) {
@@ -165,14 +266,54 @@ Java_com_koushikdutta_quack_QuackContext_getHeapSize__J(JNIEnv *env, jclass type
     return reinterpret_cast<JSContext *>(context)->getHeapSize(env);
 }
 
+JNIEXPORT void JNICALL
+Java_com_koushikdutta_quack_QuackContext_setInterruptBudget(JNIEnv *env, jclass type, jlong context, jlong maxNanos, jlong maxInstructions) {
+    reinterpret_cast<JSContext *>(context)->setInterruptBudget(env, maxNanos, maxInstructions);
+}
+
+JNIEXPORT void JNICALL
+Java_com_koushikdutta_quack_QuackContext_interrupt__J(JNIEnv *env, jclass type, jlong context) {
+    reinterpret_cast<JSContext *>(context)->interrupt();
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_koushikdutta_quack_QuackContext_isInterrupted(JNIEnv *env, jclass type, jlong context) {
+    return reinterpret_cast<JSContext *>(context)->isInterrupted();
+}
+
+JNIEXPORT void JNICALL
+Java_com_koushikdutta_quack_QuackContext_setMemoryLimit__JJ(JNIEnv *env, jclass type, jlong context, jlong limit) {
+    reinterpret_cast<JSContext *>(context)->setMemoryLimit(env, limit);
+}
+
+JNIEXPORT void JNICALL
+Java_com_koushikdutta_quack_QuackContext_setGCThreshold__JJ(JNIEnv *env, jclass type, jlong context, jlong threshold) {
+    reinterpret_cast<JSContext *>(context)->setGCThreshold(env, threshold);
+}
+
+JNIEXPORT jlong JNICALL
+Java_com_koushikdutta_quack_QuackContext_pollMemoryUsage(JNIEnv *env, jclass type, jlong context) {
+    return reinterpret_cast<JSContext *>(context)->pollMemoryUsage(env);
+}
+
+JNIEXPORT jstring JNICALL
+Java_com_koushikdutta_quack_QuackContext_getBuildId(JNIEnv *env, jclass type, jlong context) {
+    return reinterpret_cast<JSContext *>(context)->getBuildId(env);
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_koushikdutta_quack_QuackContext_takeMemoryLimitExceeded(JNIEnv *env, jclass type, jlong context) {
+    return reinterpret_cast<JSContext *>(context)->takeMemoryLimitExceeded();
+}
+
 JNIEXPORT jboolean  JNICALL
 Java_com_koushikdutta_quack_QuackContext_hasPendingJobs(JNIEnv *env, jclass type, jlong context) {
     return reinterpret_cast<JSContext *>(context)->hasPendingJobs(env);
 }
 
-JNIEXPORT void JNICALL
-Java_com_koushikdutta_quack_QuackContext_runJobs(JNIEnv *env, jclass type, jlong context) {
-    reinterpret_cast<JSContext *>(context)->runJobs(env);
+JNIEXPORT jint JNICALL
+Java_com_koushikdutta_quack_QuackContext_runJobs(JNIEnv *env, jclass type, jlong context, jint maxJobs, jlong maxNanos) {
+    return reinterpret_cast<JSContext *>(context)->runJobs(env, maxJobs, maxNanos);
 }
 
 } // extern "C"
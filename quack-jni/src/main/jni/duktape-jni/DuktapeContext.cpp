@@ -14,6 +14,7 @@
  * limitations under the License.
  */
 #include "DuktapeContext.h"
+#include <algorithm>
 #include <memory>
 #include <string>
 #include <stdexcept>
@@ -33,6 +34,22 @@ const char* JAVA_THIS_PROP_NAME = "\xff\xffjava_this";
 const char* JAVASCRIPT_THIS_PROP_NAME = "__javascript_this";
 const char* DUKTAPE_CONTEXT_PROP_NAME = "\xff\xffjava_duktapecontext";
 const char* JAVA_EXCEPTION_PROP_NAME = "\xff\xffjava_exception";
+const char* INTERNED_KEYS_PROP_NAME = "\xff\xffinterned_keys";
+// split, or the b of buffer is read as part of the hex escape.
+const char* BUFFER_OWNER_PROP_NAME = "\xff\xff" "buffer_owner";
+
+// buffer object flags, by TypedArrayKind.
+const duk_uint_t TYPED_ARRAY_BUFOBJ_FLAGS[] = {
+  DUK_BUFOBJ_INT8ARRAY,
+  DUK_BUFOBJ_UINT8ARRAY,
+  DUK_BUFOBJ_UINT8CLAMPEDARRAY,
+  DUK_BUFOBJ_INT16ARRAY,
+  DUK_BUFOBJ_UINT16ARRAY,
+  DUK_BUFOBJ_INT32ARRAY,
+  DUK_BUFOBJ_UINT32ARRAY,
+  DUK_BUFOBJ_FLOAT32ARRAY,
+  DUK_BUFOBJ_FLOAT64ARRAY,
+};
 
 JNIEnv* getJNIEnv(duk_context *ctx) {
   duk_push_global_stash(ctx);
@@ -106,6 +123,23 @@ duk_ret_t javascriptObjectFinalizer(duk_context *ctx) {
   return 0;
 }
 
+// Conversions that may invoke valueOf/toString, run through duk_safe_call.
+duk_ret_t toNumberUnsafe(duk_context *ctx, void *udata) {
+  duk_to_number(ctx, -1);
+  return 1;
+}
+
+duk_ret_t toInt32Unsafe(duk_context *ctx, void *udata) {
+  duk_to_int32(ctx, -1);
+  return 1;
+}
+
+duk_ret_t loadAndCallUnsafe(duk_context *ctx, void *udata) {
+  duk_load_function(ctx);
+  duk_call(ctx, 0);
+  return 1;
+}
+
 void fatalErrorHandler(void* udata, const char* msg) {
 #ifndef NDEBUG
   DuktapeContext* context = reinterpret_cast<DuktapeContext*>(udata);
@@ -120,17 +154,38 @@ void fatalErrorHandler(void* udata, const char* msg) {
 
 } // anonymous namespace
 
+// refused allocations are retried by Duktape after an emergency collection.
+static bool tracked_alloc_allowed(DuktapeContext* context, size_t growth) {
+  if (context->m_memoryLimit <= 0 || context->m_heapSize + (long)growth <= context->m_memoryLimit)
+    return true;
+  context->onMemoryLimitExceeded();
+  return false;
+}
+// collections can not run from within the allocator, so they are deferred to pollMemoryUsage.
+static void tracked_alloc_check_gc(DuktapeContext* context) {
+  if (context->m_gcThreshold > 0 && context->m_heapSize > context->m_gcThreshold)
+    context->m_gcRequested = true;
+}
+
 static void* tracked_alloc(void *udata, duk_size_t size) {
   DuktapeContext* context = reinterpret_cast<DuktapeContext*>(udata);
+  if (!tracked_alloc_allowed(context, size))
+    return nullptr;
   void* ret = malloc(size);
   if (ret != nullptr) {
       context->pointers[ret] = size;
       context->m_heapSize += size;
+      tracked_alloc_check_gc(context);
   }
   return ret;
 }
 static void *tracked_realloc(void *udata, void *ptr, duk_size_t size) {
   DuktapeContext* context = reinterpret_cast<DuktapeContext*>(udata);
+  size_t existing = 0;
+  if (context->pointers.find(ptr) != context->pointers.end())
+    existing = context->pointers[ptr];
+  if (size > existing && !tracked_alloc_allowed(context, size - existing))
+    return nullptr;
   void* ret = realloc(ptr, size);
   if (ret != nullptr) {
       if (context->pointers.find(ptr) != context->pointers.end()) {
@@ -140,6 +195,7 @@ static void *tracked_realloc(void *udata, void *ptr, duk_size_t size) {
       }
       context->pointers[ret] = size;
       context->m_heapSize += size;
+      tracked_alloc_check_gc(context);
   }
   return ret;
 }
@@ -204,12 +260,32 @@ DuktapeContext::DuktapeContext(JavaVM* javaVM, jobject javaDuktape)
   m_javaObjectConstructor = env->GetMethodID(m_javaObjectClass, "<init>", "(Lcom/koushikdutta/quack/QuackContext;Ljava/lang/Object;)V");
   m_javaObjectGetObject = env->GetMethodID(duktapeJavaObject, "getObject", "()Ljava/lang/Object;");
   m_byteBufferAllocateDirect = env->GetStaticMethodID(m_byteBufferClass, "allocateDirect", "(I)Ljava/nio/ByteBuffer;");
+  m_byteBufferArray = env->GetMethodID(m_byteBufferClass, "array", "()[B");
+  m_byteBufferArrayOffset = env->GetMethodID(m_byteBufferClass, "arrayOffset", "()I");
+  m_byteBufferHasArray = env->GetMethodID(m_byteBufferClass, "hasArray", "()Z");
+  m_byteBufferDuplicate = env->GetMethodID(m_byteBufferClass, "duplicate", "()Ljava/nio/ByteBuffer;");
+  m_byteBufferGetArray = env->GetMethodID(m_byteBufferClass, "get", "([B)Ljava/nio/ByteBuffer;");
+  jclass bufferClass = env->FindClass("java/nio/Buffer");
+  m_bufferGetPosition = env->GetMethodID(bufferClass, "position", "()I");
+  m_bufferGetLimit = env->GetMethodID(bufferClass, "limit", "()I");
+  env->DeleteLocalRef(bufferClass);
+  m_quackMapNative = env->GetMethodID(m_duktapeClass, "quackMapNative", "(Ljava/lang/Object;Ljava/lang/Object;)V");
+  m_quackUnmapNative = env->GetMethodID(m_duktapeClass, "quackUnmapNative", "(Ljava/lang/Object;)Ljava/lang/Object;");
+  m_quackTypedArrayView = env->GetMethodID(m_duktapeClass, "quackTypedArrayView", "(Ljava/nio/ByteBuffer;ILjava/lang/Object;)Ljava/lang/Object;");
 
   m_contextField = env->GetFieldID(m_javaScriptObjectClass, "context", "J");
   m_pointerField = env->GetFieldID(m_javaScriptObjectClass, "pointer", "J");
 
   m_jsonField = env->GetFieldID(m_jsonObjectClass, "json", "Ljava/lang/String;");
 
+  m_typedArrayClasses.init(env);
+  for (int i = 0; i < TYPED_ARRAY_KIND_COUNT; i++) {
+    duk_get_global_string(m_context, TYPED_ARRAY_NAMES[i]);
+    duk_get_prop_string(m_context, -1, "prototype");
+    m_typedArrayPrototypes[i] = duk_get_heapptr(m_context, -1);
+    duk_pop_2(m_context);
+  }
+
   m_DebuggerSocket.client_sock = -1;
 
   // Stash the JVM object in the context, so we can find our way back from a Duktape C callback.
@@ -255,6 +331,34 @@ jlong DuktapeContext::getHeapSize(JNIEnv *env) {
   return m_heapSize;
 }
 
+jstring DuktapeContext::getBuildId(JNIEnv *env) {
+  std::string id = "duktape " + std::to_string(DUK_VERSION)
+      + " format " + std::to_string(QUACK_BYTECODE_FORMAT)
+      + " " + std::to_string(sizeof(void *) * 8) + " bit";
+  return env->NewStringUTF(id.c_str());
+}
+
+void DuktapeContext::setMemoryLimit(JNIEnv *env, jlong limit) {
+  m_memoryLimit = limit > 0 ? (long)limit : 0;
+}
+
+void DuktapeContext::setGCThreshold(JNIEnv *env, jlong threshold) {
+  // Duktape's own voluntary collections still run regardless.
+  m_gcThreshold = threshold > 0 ? (long)threshold : 0;
+  m_gcRequested = false;
+}
+
+jlong DuktapeContext::pollMemoryUsage(JNIEnv *env) {
+  if (m_gcRequested) {
+    m_gcRequested = false;
+    duk_gc(m_context, 0);
+    // raise the threshold with the heap, as QuickJS does, so a large live heap is not
+    // collected on every poll.
+    m_gcThreshold = std::max(m_gcThreshold, m_heapSize + m_heapSize / 2);
+  }
+  return m_heapSize;
+}
+
 jclass DuktapeContext::findClass(JNIEnv *env, const char *className) {
     return (jclass)env->NewGlobalRef(env->FindClass(className));
 }
@@ -273,107 +377,138 @@ jobject DuktapeContext::popObject(JNIEnv *env) const {
     return m_objectType->pop(m_context, env, false).l;
   }
   else if (duk_is_buffer_data(m_context, -1)) {
-      duk_size_t size;
-      void* p = duk_get_buffer_data(m_context, -1, &size);
-      jobject byteBuffer = env->CallStaticObjectMethod(m_byteBufferClass, m_byteBufferAllocateDirect, (jint)size);
-      memcpy(env->GetDirectBufferAddress(byteBuffer), p, size);
+    // plain buffers can not hold a Java counterpart, so view them through a Uint8Array.
+    if (duk_is_buffer(m_context, -1)) {
+      duk_size_t plainSize;
+      duk_get_buffer(m_context, -1, &plainSize);
+      duk_push_buffer_object(m_context, -1, 0, plainSize, DUK_BUFOBJ_UINT8ARRAY);
+      duk_remove(m_context, -2);
+    }
+
+    duk_size_t size;
+    void* p = duk_get_buffer_data(m_context, -1, &size);
+    int kind = getTypedArrayKind(-1);
+    if (p == nullptr || size == 0) {
       duk_pop(m_context);
-      return byteBuffer;
+      return env->CallStaticObjectMethod(m_byteBufferClass, m_byteBufferAllocateDirect, 0);
+    }
+
+    // the ByteBuffer views the JavaScript memory, which is held for as long as the
+    // ByteBuffer is by mapping it to the JavaScript object.
+    jobject byteBuffer = env->NewDirectByteBuffer(p, (jlong)size);
+    jobject javaThis = popJavaScriptObject(env);
+    jobject ret;
+    if (kind <= TYPED_ARRAY_UINT8_CLAMPED) {
+      env->CallVoidMethod(m_javaDuktape, m_quackMapNative, byteBuffer, javaThis);
+      ret = byteBuffer;
+    }
+    else {
+      // wider typed arrays are received as a view of the matching type.
+      ret = env->CallObjectMethod(m_javaDuktape, m_quackTypedArrayView, byteBuffer, (jint)kind, javaThis);
+      env->DeleteLocalRef(byteBuffer);
+    }
+    env->DeleteLocalRef(javaThis);
+    return ret;
   }
   else if (duk_get_type(m_context, -1) == DUK_TYPE_OBJECT) {
-    jobject javaThis = nullptr;
+    return popJavaScriptObject(env);
+  } else {
+    // The result is an unsupported type, undefined, or null.
+    duk_pop(m_context);
+    return nullptr;
+  }
+}
 
-    // JavaScriptObject and JavaObject both contain an internal "this" which points to the Java
-    // instance of that object. Try to extract that object.
+// Pop the object on top of the stack as a JavaScriptObject (or its existing Java counterpart).
+jobject DuktapeContext::popJavaScriptObject(JNIEnv *env) const {
+  jobject javaThis = nullptr;
 
-    // Duktape Java Proxy can NOT be queried for JAVA_THIS_PROP_NAME since it is a special hidden
-    // key (check the string prefix). So, query for JAVASCRIPT_THIS_PROP_NAME, which is
-    // a "normal" key. The proxy trap will not be invoked otherwise. This key is not enumerated
-    // due to the Java side proxy implementation.
+  // JavaScriptObject and JavaObject both contain an internal "this" which points to the Java
+  // instance of that object. Try to extract that object.
 
-    // However, Duktape JavaScript objects should use JAVA_THIS_PROP_NAME, because
-    // JAVASCRIPT_THIS_PROP_NAME is publicly visible and this causes key iteration pollution issues.
+  // Duktape Java Proxy can NOT be queried for JAVA_THIS_PROP_NAME since it is a special hidden
+  // key (check the string prefix). So, query for JAVASCRIPT_THIS_PROP_NAME, which is
+  // a "normal" key. The proxy trap will not be invoked otherwise. This key is not enumerated
+  // due to the Java side proxy implementation.
 
-    duk_bool_t hasThis = duk_has_prop_string(m_context, -1, JAVASCRIPT_THIS_PROP_NAME);
-    if (hasThis) {
-        duk_get_prop_string(m_context, -1, JAVASCRIPT_THIS_PROP_NAME);
-    }
-    else {
-        // this code will not be trapped on Duktape Java Proxy due to the key name.
-        hasThis = duk_has_prop_string(m_context, -1, JAVA_THIS_PROP_NAME);
-        if (hasThis) {
-            duk_get_prop_string(m_context, -1, JAVA_THIS_PROP_NAME);
-        }
-    }
+  // However, Duktape JavaScript objects should use JAVA_THIS_PROP_NAME, because
+  // JAVASCRIPT_THIS_PROP_NAME is publicly visible and this causes key iteration pollution issues.
 
-    if (hasThis) {
-      javaThis = reinterpret_cast<jobject>(duk_get_pointer(m_context, -1));
-      // pop the pointer
-      duk_pop(m_context);
-      // Duktape JavaScript objects only hold weak references to their Java counterparts, which
-      // may be invalid. Check this, and delete as necessary.
-      if (javaThis && env->IsSameObject(javaThis, nullptr)) {
-        env->DeleteWeakGlobalRef(javaThis);
-        javaThis = nullptr;
-        duk_del_prop_string(m_context, -1, JAVA_THIS_PROP_NAME);
+  duk_bool_t hasThis = duk_has_prop_string(m_context, -1, JAVASCRIPT_THIS_PROP_NAME);
+  if (hasThis) {
+      duk_get_prop_string(m_context, -1, JAVASCRIPT_THIS_PROP_NAME);
+  }
+  else {
+      // this code will not be trapped on Duktape Java Proxy due to the key name.
+      hasThis = duk_has_prop_string(m_context, -1, JAVA_THIS_PROP_NAME);
+      if (hasThis) {
+          duk_get_prop_string(m_context, -1, JAVA_THIS_PROP_NAME);
       }
-    }
+  }
 
-    if (javaThis != nullptr) {
-      // found an existing Java proxy tucked away in this object. Must create a
-      // local ref before popping, because the pop finalizer may destroy the global (weak) ref.
-      javaThis = env->NewLocalRef(javaThis);
-      duk_pop(m_context);
-      return javaThis;
+  if (hasThis) {
+    javaThis = reinterpret_cast<jobject>(duk_get_pointer(m_context, -1));
+    // pop the pointer
+    duk_pop(m_context);
+    // Duktape JavaScript objects only hold weak references to their Java counterparts, which
+    // may be invalid. Check this, and delete as necessary.
+    if (javaThis && env->IsSameObject(javaThis, nullptr)) {
+      env->DeleteWeakGlobalRef(javaThis);
+      javaThis = nullptr;
+      duk_del_prop_string(m_context, -1, JAVA_THIS_PROP_NAME);
     }
+  }
 
-    // get the pointer to this JavaScript object
-    void* ptr = duk_get_heapptr(m_context, -1);
-
-    // hold a reference to this JavaScript object in the stash by mapping the JavaScript object pointer to
-    // object itself.
-    duk_push_global_stash(m_context);
-    duk_dup(m_context, -2);
-    // use the pointer as an index for uniqueness. might be risky due to precision loss, but probably not.
-    // can't use use duk_put_prop_heapptr since Objects as keys clobber each other:
-    //      > f[{}] = 0
-    //      0
-    //      > f
-    //              { '[object Object]': 0 }
-    //      > f[{}] = 2
-    //      2
-    //      > f
-    //              { '[object Object]': 2 }
-    //      > f[{2:3}] = 4
-    //      4
-    //      > f
-    //              { '[object Object]': 4 }
-    duk_uarridx_t heapIndex = (duk_uarridx_t)reinterpret_cast<long>(ptr);
-    duk_put_prop_index(m_context, -2, heapIndex);
-    // pop the stash containing the hard reference
+  if (javaThis != nullptr) {
+    // found an existing Java proxy tucked away in this object. Must create a
+    // local ref before popping, because the pop finalizer may destroy the global (weak) ref.
+    javaThis = env->NewLocalRef(javaThis);
     duk_pop(m_context);
+    return javaThis;
+  }
 
-    // create a new holder for this JavaScript object
-    javaThis = env->NewObject(m_javaScriptObjectClass, m_javaScriptObjectConstructor, m_javaDuktape, reinterpret_cast<jlong>(this), reinterpret_cast<jlong>(ptr));
+  // get the pointer to this JavaScript object
+  void* ptr = duk_get_heapptr(m_context, -1);
 
-    jweak weakRef = env->NewWeakGlobalRef(javaThis);
-    // set a finalizer for the weak ref
-    duk_push_c_function(m_context, javascriptObjectFinalizer, 1);
-    duk_set_finalizer(m_context, -2);
+  // hold a reference to this JavaScript object in the stash by mapping the JavaScript object pointer to
+  // object itself.
+  duk_push_global_stash(m_context);
+  duk_dup(m_context, -2);
+  // use the pointer as an index for uniqueness. might be risky due to precision loss, but probably not.
+  // can't use use duk_put_prop_heapptr since Objects as keys clobber each other:
+  //      > f[{}] = 0
+  //      0
+  //      > f
+  //              { '[object Object]': 0 }
+  //      > f[{}] = 2
+  //      2
+  //      > f
+  //              { '[object Object]': 2 }
+  //      > f[{2:3}] = 4
+  //      4
+  //      > f
+  //              { '[object Object]': 4 }
+  duk_uarridx_t heapIndex = (duk_uarridx_t)reinterpret_cast<long>(ptr);
+  duk_put_prop_index(m_context, -2, heapIndex);
+  // pop the stash containing the hard reference
+  duk_pop(m_context);
 
-    // attach the Java object's weak reference to the JavaScript object
-    duk_push_pointer(m_context, weakRef);
-    duk_put_prop_string(m_context, -2, JAVA_THIS_PROP_NAME);
+  // create a new holder for this JavaScript object
+  javaThis = env->NewObject(m_javaScriptObjectClass, m_javaScriptObjectConstructor, m_javaDuktape, reinterpret_cast<jlong>(this), reinterpret_cast<jlong>(ptr));
 
-    // pop the JavaScript object, it is hard referenced
-    duk_pop(m_context);
+  jweak weakRef = env->NewWeakGlobalRef(javaThis);
+  // set a finalizer for the weak ref
+  duk_push_c_function(m_context, javascriptObjectFinalizer, 1);
+  duk_set_finalizer(m_context, -2);
 
-    return javaThis;
-  } else {
-    // The result is an unsupported type, undefined, or null.
-    duk_pop(m_context);
-    return nullptr;
-  }
+  // attach the Java object's weak reference to the JavaScript object
+  duk_push_pointer(m_context, weakRef);
+  duk_put_prop_string(m_context, -2, JAVA_THIS_PROP_NAME);
+
+  // pop the JavaScript object, it is hard referenced
+  duk_pop(m_context);
+
+  return javaThis;
 }
 
 jobject DuktapeContext::popObject2(JNIEnv *env) const {
@@ -672,19 +807,27 @@ void DuktapeContext::pushObject(JNIEnv *env, jobject object, bool deleteLocalRef
     // pointer can't be used.
   }
   else if (env->IsAssignableFrom(objectClass, m_byteBufferClass)) {
-    jlong capacity = env->GetDirectBufferCapacity(object);
-    void *p = duk_push_fixed_buffer(m_context, (duk_size_t)capacity);
-    memcpy(p, env->GetDirectBufferAddress(object), (size_t)capacity);
-    // duk_push_buffer_object(m_context, -1, 0, capacity, DUK_BUFOBJ_ARRAYBUFFER);
-    // duk_swap_top(m_context, -2);
-    // duk_pop(m_context);
+    pushBuffer(env, object, TYPED_ARRAY_UINT8);
 
     if (deleteLocalRef)
       env->DeleteLocalRef(object);
     env->DeleteLocalRef(objectClass);
     return;
   }
-  else if (env->IsAssignableFrom(objectClass, m_jsonObjectClass)) {
+  else {
+    // direct typed buffers in native order are viewed as the matching typed array.
+    int kind = m_typedArrayClasses.getBufferKind(env, object);
+    if (kind >= 0) {
+      pushBuffer(env, object, kind);
+
+      if (deleteLocalRef)
+        env->DeleteLocalRef(object);
+      env->DeleteLocalRef(objectClass);
+      return;
+    }
+  }
+
+  if (env->IsAssignableFrom(objectClass, m_jsonObjectClass)) {
     jstring json = (jstring)env->GetObjectField(object, m_jsonField);
     JString jString(env, json);
     duk_push_string(m_context, jString);
@@ -758,6 +901,30 @@ jobject DuktapeContext::call(JNIEnv *env, jlong object, jobjectArray args) {
   return popObject(env);
 }
 
+jdouble DuktapeContext::callDouble(JNIEnv *env, jlong object, jdoubleArray args) {
+  CHECK_STACK(m_context);
+
+  pushObject(env, object);
+
+  jsize length = 0;
+  if (args != nullptr) {
+      length = env->GetArrayLength(args);
+      jdouble* elements = env->GetDoubleArrayElements(args, nullptr);
+      for (int i = 0; i < length; i++) {
+          duk_push_number(m_context, elements[i]);
+      }
+      env->ReleaseDoubleArrayElements(args, elements, JNI_ABORT);
+  }
+
+  if (duk_pcall(m_context, length) != DUK_EXEC_SUCCESS) {
+      queueJavaExceptionForDuktapeError(env, m_context);
+      return 0;
+  }
+
+  duk_gc(m_context, 0);
+  return popDouble(env);
+}
+
 jobject DuktapeContext::callMethod(JNIEnv *env, jlong object, jobject thiz, jobjectArray args) {
   CHECK_STACK(m_context);
 
@@ -813,6 +980,34 @@ jobject DuktapeContext::callProperty(JNIEnv *env, jlong object, jobject property
   return popObject2(env);
 }
 
+jobject DuktapeContext::callPropertyInterned(JNIEnv *env, jlong object, jlong key, jobjectArray args) {
+  CHECK_STACK(m_context);
+
+  pushObject(env, object);
+  duk_idx_t objectIndex = duk_normalize_index(m_context, -1);
+  duk_push_heapptr(m_context, reinterpret_cast<void*>(key));
+
+  jsize length = 0;
+  if (args != nullptr) {
+      length = env->GetArrayLength(args);
+      for (int i = 0; i < length; i++) {
+          jobject arg = env->GetObjectArrayElement(args, i);
+          pushObject(env, arg);
+      }
+  }
+
+  if (duk_pcall_prop(m_context, objectIndex, length) != DUK_EXEC_SUCCESS) {
+      queueJavaExceptionForDuktapeError(env, m_context);
+      // pop off indexed object before rethrowing error
+      duk_pop(m_context);
+      return nullptr;
+  }
+
+  duk_gc(m_context, 0);
+  // pop twice since property call does not pop the indexed object
+  return popObject2(env);
+}
+
 jobject DuktapeContext::getGlobalObject(JNIEnv *env) {
   CHECK_STACK(m_context);
 
@@ -852,6 +1047,295 @@ jobject DuktapeContext::getKeyString(JNIEnv *env, jlong object, jstring key) {
   return popObject2(env);
 }
 
+jobjectArray DuktapeContext::getKeys(JNIEnv *env, jlong object, jobjectArray keys) {
+  CHECK_STACK(m_context);
+
+  jsize length = env->GetArrayLength(keys);
+  jobjectArray ret = env->NewObjectArray(length, m_objectClass, nullptr);
+  pushObject(env, object);
+  for (jsize i = 0; i < length; i++) {
+    jstring key = (jstring)env->GetObjectArrayElement(keys, i);
+    {
+      const JString instanceKey(env, key);
+      duk_get_prop_string(m_context, -1, instanceKey);
+    }
+    env->DeleteLocalRef(key);
+    jobject element = popObject(env);
+    if (env->ExceptionCheck()) {
+      // pop indexed object
+      duk_pop(m_context);
+      env->DeleteLocalRef(ret);
+      return nullptr;
+    }
+    env->SetObjectArrayElement(ret, i, element);
+    env->DeleteLocalRef(element);
+  }
+  // pop indexed object
+  duk_pop(m_context);
+  return ret;
+}
+
+jboolean DuktapeContext::setKeys(JNIEnv *env, jlong object, jobjectArray keys, jobjectArray values) {
+  CHECK_STACK(m_context);
+
+  jsize length = env->GetArrayLength(keys);
+  jboolean ret = JNI_TRUE;
+  pushObject(env, object);
+  for (jsize i = 0; i < length; i++) {
+    jstring key = (jstring)env->GetObjectArrayElement(keys, i);
+    // pushObject deletes the local ref to the value
+    pushObject(env, env->GetObjectArrayElement(values, i));
+    {
+      const JString instanceKey(env, key);
+      if (duk_put_prop_string(m_context, -2, instanceKey) != 1)
+        ret = JNI_FALSE;
+    }
+    env->DeleteLocalRef(key);
+  }
+  // pop indexed object
+  duk_pop(m_context);
+  return ret;
+}
+
+jobject DuktapeContext::newTypedArray(JNIEnv *env, jobject array) {
+  CHECK_STACK(m_context);
+
+  int kind = m_typedArrayClasses.getArrayKind(env, array);
+  if (kind < 0)
+    return nullptr;
+
+  jsize length = env->GetArrayLength((jarray)array);
+  size_t size = length * TYPED_ARRAY_ELEMENT_SIZES[kind];
+  void* p = duk_push_fixed_buffer(m_context, (duk_size_t)size);
+  void *elements = env->GetPrimitiveArrayCritical((jarray)array, nullptr);
+  memcpy(p, elements, size);
+  env->ReleasePrimitiveArrayCritical((jarray)array, elements, JNI_ABORT);
+
+  duk_push_buffer_object(m_context, -1, 0, (duk_size_t)size, TYPED_ARRAY_BUFOBJ_FLAGS[kind]);
+  // the view holds the plain buffer
+  duk_remove(m_context, -2);
+  // popObject would copy the view into a ByteBuffer.
+  return popJavaScriptObject(env);
+}
+
+void DuktapeContext::pushBuffer(JNIEnv *env, jobject buffer, int kind) {
+  // a buffer received from JavaScript is unmapped back to its JavaScript object.
+  jobject nativeValue = env->CallObjectMethod(m_javaDuktape, m_quackUnmapNative, buffer);
+  if (nativeValue != nullptr) {
+    pushObject(env, nativeValue);
+    return;
+  }
+
+  jint position = env->CallIntMethod(buffer, m_bufferGetPosition);
+  jint limit = env->CallIntMethod(buffer, m_bufferGetLimit);
+  size_t size = (size_t)(limit - position) * TYPED_ARRAY_ELEMENT_SIZES[kind];
+  char* address = reinterpret_cast<char*>(env->GetDirectBufferAddress(buffer));
+
+  if (address == nullptr) {
+    // heap buffers are copied once, straight out of the backing array.
+    // read-only heap buffers don't expose their array, and are read through a
+    // duplicate, which leaves the position of the original untouched.
+    jbyteArray array;
+    jint offset;
+    if (env->CallBooleanMethod(buffer, m_byteBufferHasArray)) {
+      array = (jbyteArray)env->CallObjectMethod(buffer, m_byteBufferArray);
+      offset = env->CallIntMethod(buffer, m_byteBufferArrayOffset) + position;
+    }
+    else {
+      array = env->NewByteArray((jsize)size);
+      offset = 0;
+      if (array != nullptr) {
+        jobject duplicate = env->CallObjectMethod(buffer, m_byteBufferDuplicate);
+        if (duplicate != nullptr) {
+          env->DeleteLocalRef(env->CallObjectMethod(duplicate, m_byteBufferGetArray, array));
+          env->DeleteLocalRef(duplicate);
+        }
+      }
+    }
+    if (array == nullptr || env->ExceptionCheck()) {
+      // the pending exception is thrown once control returns to Java.
+      if (array != nullptr)
+        env->DeleteLocalRef(array);
+      duk_push_undefined(m_context);
+      return;
+    }
+    void* p = duk_push_fixed_buffer(m_context, (duk_size_t)size);
+    env->GetByteArrayRegion(array, offset, (jsize)size, reinterpret_cast<jbyte*>(p));
+    env->DeleteLocalRef(array);
+    duk_push_buffer_object(m_context, -1, 0, (duk_size_t)size, TYPED_ARRAY_BUFOBJ_FLAGS[kind]);
+    duk_remove(m_context, -2);
+    return;
+  }
+
+  // direct buffers are viewed in place.
+  duk_push_external_buffer(m_context);
+  duk_config_buffer(m_context, -1, address + position * TYPED_ARRAY_ELEMENT_SIZES[kind], (duk_size_t)size);
+  duk_push_buffer_object(m_context, -1, 0, (duk_size_t)size, TYPED_ARRAY_BUFOBJ_FLAGS[kind]);
+  duk_remove(m_context, -2);
+
+  // the Java buffer must outlive the view, so the view holds an owner object whose
+  // finalizer releases the Java buffer.
+  duk_push_object(m_context);
+  duk_push_pointer(m_context, env->NewGlobalRef(buffer));
+  duk_put_prop_string(m_context, -2, JAVASCRIPT_THIS_PROP_NAME);
+  duk_push_c_function(m_context, javaObjectFinalizer, 1);
+  duk_set_finalizer(m_context, -2);
+  duk_put_prop_string(m_context, -2, BUFFER_OWNER_PROP_NAME);
+}
+
+int DuktapeContext::getTypedArrayKind(duk_idx_t index) const {
+  duk_get_prototype(m_context, index);
+  void* prototype = duk_get_heapptr(m_context, -1);
+  duk_pop(m_context);
+
+  for (int i = 0; i < TYPED_ARRAY_KIND_COUNT; i++) {
+    if (prototype == m_typedArrayPrototypes[i])
+      return i;
+  }
+  return -1;
+}
+
+jobject DuktapeContext::getTypedArray(JNIEnv *env, jlong object) {
+  CHECK_STACK(m_context);
+
+  pushObject(env, object);
+  int kind = getTypedArrayKind(-1);
+
+  jarray array = nullptr;
+  if (kind >= 0 && duk_is_buffer_data(m_context, -1)) {
+    duk_size_t size;
+    void* p = duk_get_buffer_data(m_context, -1, &size);
+    array = TypedArrayClasses::newArray(env, kind, (jsize)(size / TYPED_ARRAY_ELEMENT_SIZES[kind]));
+    if (array != nullptr) {
+      void *elements = env->GetPrimitiveArrayCritical(array, nullptr);
+      memcpy(elements, p, size);
+      env->ReleasePrimitiveArrayCritical(array, elements, 0);
+    }
+  }
+
+  duk_pop(m_context);
+  return array;
+}
+
+jlong DuktapeContext::internKey(JNIEnv *env, jstring key) {
+  CHECK_STACK(m_context);
+
+  // the string is pinned by using it as a key of a stash object, so its heap pointer
+  // remains valid for the lifetime of the heap.
+  duk_push_global_stash(m_context);
+  if (!duk_get_prop_string(m_context, -1, INTERNED_KEYS_PROP_NAME)) {
+    duk_pop(m_context);
+    duk_push_bare_object(m_context);
+    duk_dup_top(m_context);
+    duk_put_prop_string(m_context, -3, INTERNED_KEYS_PROP_NAME);
+  }
+
+  const JString instanceKey(env, key);
+  duk_push_string(m_context, instanceKey);
+  void* ptr = duk_get_heapptr(m_context, -1);
+  duk_push_true(m_context);
+  duk_put_prop(m_context, -3);
+
+  // pop the interned keys and the stash
+  duk_pop_2(m_context);
+  return reinterpret_cast<jlong>(ptr);
+}
+
+jobject DuktapeContext::getKeyInterned(JNIEnv *env, jlong object, jlong key) {
+  CHECK_STACK(m_context);
+
+  pushObject(env, object);
+  duk_push_heapptr(m_context, reinterpret_cast<void*>(key));
+  duk_get_prop(m_context, -2);
+  // pop twice since indexing does not pop the indexed object
+  return popObject2(env);
+}
+
+jboolean DuktapeContext::setKeyInterned(JNIEnv *env, jlong object, jlong key, jobject value) {
+  CHECK_STACK(m_context);
+
+  pushObject(env, object);
+  duk_push_heapptr(m_context, reinterpret_cast<void*>(key));
+  pushObject(env, value, false);
+  duk_bool_t ret = duk_put_prop(m_context, -3);
+
+  // pop indexed object
+  duk_pop(m_context);
+
+  return (jboolean)(ret == 1);
+}
+
+jdouble DuktapeContext::popDouble(JNIEnv *env) const {
+  if (duk_is_number(m_context, -1)) {
+    jdouble ret = duk_get_number(m_context, -1);
+    duk_pop(m_context);
+    return ret;
+  }
+  if (duk_safe_call(m_context, toNumberUnsafe, nullptr, 1, 1) != DUK_EXEC_SUCCESS) {
+    queueJavaExceptionForDuktapeError(env, m_context);
+    return 0;
+  }
+  jdouble ret = duk_get_number(m_context, -1);
+  duk_pop(m_context);
+  return ret;
+}
+
+jint DuktapeContext::popInt(JNIEnv *env) const {
+  if (duk_safe_call(m_context, toInt32Unsafe, nullptr, 1, 1) != DUK_EXEC_SUCCESS) {
+    queueJavaExceptionForDuktapeError(env, m_context);
+    return 0;
+  }
+  jint ret = duk_get_int(m_context, -1);
+  duk_pop(m_context);
+  return ret;
+}
+
+jdouble DuktapeContext::getKeyStringDouble(JNIEnv *env, jlong object, jstring key) {
+  CHECK_STACK(m_context);
+
+  pushObject(env, object);
+  const JString instanceKey(env, key);
+  duk_get_prop_string(m_context, -1, instanceKey);
+  jdouble ret = popDouble(env);
+  // pop indexed object
+  duk_pop(m_context);
+  return ret;
+}
+
+jdouble DuktapeContext::getKeyIntegerDouble(JNIEnv *env, jlong object, jint index) {
+  CHECK_STACK(m_context);
+
+  pushObject(env, object);
+  duk_get_prop_index(m_context, -1, (duk_uarridx_t )index);
+  jdouble ret = popDouble(env);
+  // pop indexed object
+  duk_pop(m_context);
+  return ret;
+}
+
+jint DuktapeContext::getKeyStringInt(JNIEnv *env, jlong object, jstring key) {
+  CHECK_STACK(m_context);
+
+  pushObject(env, object);
+  const JString instanceKey(env, key);
+  duk_get_prop_string(m_context, -1, instanceKey);
+  jint ret = popInt(env);
+  // pop indexed object
+  duk_pop(m_context);
+  return ret;
+}
+
+jint DuktapeContext::getKeyIntegerInt(JNIEnv *env, jlong object, jint index) {
+  CHECK_STACK(m_context);
+
+  pushObject(env, object);
+  duk_get_prop_index(m_context, -1, (duk_uarridx_t )index);
+  jint ret = popInt(env);
+  // pop indexed object
+  duk_pop(m_context);
+  return ret;
+}
+
 jobject DuktapeContext::evaluate(JNIEnv* env, jstring code, jstring fname) {
   CHECK_STACK(m_context);
 
@@ -880,6 +1364,61 @@ jobject DuktapeContext::compile(JNIEnv* env, jstring code, jstring fname) {
   return popObject(env);
 }
 
+// Duktape checks for timeouts every DUK_HTHREAD_INTCTR_DEFAULT bytecode instructions.
+#define DUKTAPE_INSTRUCTIONS_PER_INTERRUPT (256L * 1024L)
+
+void DuktapeContext::setInterruptBudget(JNIEnv *env, jlong maxNanos, jlong maxInstructions) {
+  interruptBudget.reset(maxNanos, maxInstructions, DUKTAPE_INSTRUCTIONS_PER_INTERRUPT);
+}
+
+// DUK_USE_EXEC_TIMEOUT_CHECK, see duk_config.h. udata is the heap udata, the DuktapeContext.
+extern "C" duk_bool_t quack_duktape_exec_timeout_check(void *udata) {
+  return static_cast<DuktapeContext*>(udata)->checkInterrupt() ? 1 : 0;
+}
+
+jbyteArray DuktapeContext::compileBytecode(JNIEnv* env, jstring code, jstring fname, jboolean module) {
+  CHECK_STACK(m_context);
+
+  if (module) {
+    queueIllegalArgumentException(env, "Duktape does not support modules");
+    return nullptr;
+  }
+
+  const JString sourceCode(env, code);
+  const JString fileName(env, fname);
+
+  // compiled as a program, which returns its completion value when called, like evaluate.
+  duk_push_string(m_context, fileName);
+  if (duk_pcompile_string_filename(m_context, 0, sourceCode) != DUK_EXEC_SUCCESS) {
+    queueJavaExceptionForDuktapeError(env, m_context);
+    return nullptr;
+  }
+
+  duk_dump_function(m_context);
+  duk_size_t size;
+  void* buf = duk_get_buffer(m_context, -1, &size);
+  jbyteArray ret = env->NewByteArray(static_cast<jsize>(size));
+  if (ret != nullptr)
+    env->SetByteArrayRegion(ret, 0, static_cast<jsize>(size), static_cast<const jbyte*>(buf));
+  duk_pop(m_context);
+  return ret;
+}
+
+jobject DuktapeContext::evaluateBytecode(JNIEnv* env, jbyteArray bytecode) {
+  CHECK_STACK(m_context);
+
+  jsize length = env->GetArrayLength(bytecode);
+  void* buf = duk_push_fixed_buffer(m_context, static_cast<duk_size_t>(length));
+  env->GetByteArrayRegion(bytecode, 0, length, static_cast<jbyte*>(buf));
+
+  // loading throws on a bytecode version mismatch, so it runs protected along with the call.
+  if (duk_safe_call(m_context, loadAndCallUnsafe, nullptr, 1, 1) != DUK_EXEC_SUCCESS) {
+    queueJavaExceptionForDuktapeError(env, m_context);
+    return nullptr;
+  }
+  return popObject(env);
+}
+
 void DuktapeContext::waitForDebugger(JNIEnv *env, jstring connectionString) {
   duk_trans_socket_init();
   duk_trans_socket_waitconn(&m_DebuggerSocket);
@@ -946,6 +1485,60 @@ jboolean DuktapeContext::setKeyInteger(JNIEnv *env, jlong object, jint index, jo
   return (jboolean)(ret == 1);
 }
 
+jboolean DuktapeContext::setKeyStringDouble(JNIEnv *env, jlong object, jstring key, jdouble value) {
+  CHECK_STACK(m_context);
+
+  pushObject(env, object);
+  duk_push_number(m_context, value);
+  const JString instanceKey(env, key);
+  duk_bool_t ret = duk_put_prop_string(m_context, -2, instanceKey);
+
+  // pop indexed object
+  duk_pop(m_context);
+
+  return (jboolean)(ret == 1);
+}
+
+jboolean DuktapeContext::setKeyIntegerDouble(JNIEnv *env, jlong object, jint index, jdouble value) {
+  CHECK_STACK(m_context);
+
+  pushObject(env, object);
+  duk_push_number(m_context, value);
+  duk_bool_t ret = duk_put_prop_index(m_context, -2, index);
+
+  // pop indexed object
+  duk_pop(m_context);
+
+  return (jboolean)(ret == 1);
+}
+
+jboolean DuktapeContext::setKeyStringInt(JNIEnv *env, jlong object, jstring key, jint value) {
+  CHECK_STACK(m_context);
+
+  pushObject(env, object);
+  duk_push_int(m_context, value);
+  const JString instanceKey(env, key);
+  duk_bool_t ret = duk_put_prop_string(m_context, -2, instanceKey);
+
+  // pop indexed object
+  duk_pop(m_context);
+
+  return (jboolean)(ret == 1);
+}
+
+jboolean DuktapeContext::setKeyIntegerInt(JNIEnv *env, jlong object, jint index, jint value) {
+  CHECK_STACK(m_context);
+
+  pushObject(env, object);
+  duk_push_int(m_context, value);
+  duk_bool_t ret = duk_put_prop_index(m_context, -2, index);
+
+  // pop indexed object
+  duk_pop(m_context);
+
+  return (jboolean)(ret == 1);
+}
+
 jboolean DuktapeContext::setKeyObject(JNIEnv *env, jlong object, jobject key, jobject value) {
   CHECK_STACK(m_context);
 
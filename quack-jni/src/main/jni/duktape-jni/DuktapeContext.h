@@ -22,6 +22,7 @@
 #include "java/JavaType.h"
 #include "../duktape/duk_trans_socket.h"
 #include "../JSContext.h"
+#include "../TypedArrays.h"
 
 class DuktapeContext : public JSContext {
 public:
@@ -33,6 +34,8 @@ public:
   jobject evaluate(JNIEnv* env, jstring sourceCode, jstring fileName);
   jobject evaluateModule(JNIEnv* env, jstring sourceCode, jstring fileName) { return nullptr; }
   jobject compile(JNIEnv* env, jstring code, jstring fileName);
+  jbyteArray compileBytecode(JNIEnv* env, jstring code, jstring fileName, jboolean module);
+  jobject evaluateBytecode(JNIEnv* env, jbyteArray bytecode);
 
   void cooperateDebugger();
   void waitForDebugger(JNIEnv *env, jstring connectionString);
@@ -47,16 +50,38 @@ public:
   jboolean setKeyString(JNIEnv* env, jlong object, jstring key, jobject value);
   jboolean setKeyInteger(JNIEnv* env, jlong object, jint index, jobject value);
   jboolean setKeyObject(JNIEnv* env, jlong object, jobject key, jobject value);
+  jdouble getKeyStringDouble(JNIEnv* env, jlong object, jstring key);
+  jdouble getKeyIntegerDouble(JNIEnv* env, jlong object, jint index);
+  jint getKeyStringInt(JNIEnv* env, jlong object, jstring key);
+  jint getKeyIntegerInt(JNIEnv* env, jlong object, jint index);
+  jboolean setKeyStringDouble(JNIEnv* env, jlong object, jstring key, jdouble value);
+  jboolean setKeyIntegerDouble(JNIEnv* env, jlong object, jint index, jdouble value);
+  jboolean setKeyStringInt(JNIEnv* env, jlong object, jstring key, jint value);
+  jboolean setKeyIntegerInt(JNIEnv* env, jlong object, jint index, jint value);
+  jobjectArray getKeys(JNIEnv* env, jlong object, jobjectArray keys);
+  jboolean setKeys(JNIEnv* env, jlong object, jobjectArray keys, jobjectArray values);
+  jobject newTypedArray(JNIEnv* env, jobject array);
+  jobject getTypedArray(JNIEnv* env, jlong object);
+  jlong internKey(JNIEnv* env, jstring key);
+  jobject getKeyInterned(JNIEnv* env, jlong object, jlong key);
+  jboolean setKeyInterned(JNIEnv* env, jlong object, jlong key, jobject value);
   jobject callConstructor(JNIEnv *env, jlong object, jobjectArray args) { return nullptr; }
   jobject call(JNIEnv* env, jlong object, jobjectArray args);
+  jdouble callDouble(JNIEnv* env, jlong object, jdoubleArray args);
   jobject callMethod(JNIEnv *env, jlong object, jobject thiz, jobjectArray args);
   jobject callProperty(JNIEnv* env, jlong object, jobject target, jobjectArray args);
+  jobject callPropertyInterned(JNIEnv* env, jlong object, jlong key, jobjectArray args);
   jobject getGlobalObject(JNIEnv *env);
   jstring stringify(JNIEnv *env, jlong object);
   void finalizeJavaScriptObjects(JNIEnv *env, jlongArray objects);
   jlong getHeapSize(JNIEnv *env);
+  jstring getBuildId(JNIEnv *env);
   jboolean hasPendingJobs(JNIEnv *env) { return JNI_FALSE; }
-  void runJobs(JNIEnv *env) {}
+  jint runJobs(JNIEnv *env, jint maxJobs, jlong maxNanos) { return 0; }
+  void setInterruptBudget(JNIEnv *env, jlong maxNanos, jlong maxInstructions);
+  void setMemoryLimit(JNIEnv *env, jlong limit);
+  void setGCThreshold(JNIEnv *env, jlong threshold);
+  jlong pollMemoryUsage(JNIEnv *env);
 
   duk_ret_t duktapeHas();
   duk_ret_t duktapeGet();
@@ -65,6 +90,10 @@ public:
 
   jmethodID m_javaObjectGetObject;
   long m_heapSize;
+  // read by the allocator, so these must be initialized before the heap is created.
+  long m_memoryLimit = 0;
+  long m_gcThreshold = 0;
+  bool m_gcRequested = false;
   std::map<void*, size_t> pointers;
   duk_context* m_context;
 
@@ -84,11 +113,26 @@ private:
   jmethodID m_javaScriptObjectConstructor;
   jmethodID m_javaObjectConstructor;
   jmethodID m_byteBufferAllocateDirect;
+  jmethodID m_quackTypedArrayView;
+  jmethodID m_byteBufferArray;
+  jmethodID m_byteBufferArrayOffset;
+  jmethodID m_byteBufferHasArray;
+  jmethodID m_byteBufferDuplicate;
+  jmethodID m_byteBufferGetArray;
+  jmethodID m_bufferGetPosition;
+  jmethodID m_bufferGetLimit;
+  jmethodID m_quackMapNative;
+  jmethodID m_quackUnmapNative;
   jfieldID m_contextField;
   jfieldID m_pointerField;
   jfieldID m_jsonField;
 
   jobject popObject2(JNIEnv* env) const;
+  jobject popJavaScriptObject(JNIEnv* env) const;
+  int getTypedArrayKind(duk_idx_t index) const;
+  void pushBuffer(JNIEnv* env, jobject buffer, int kind);
+  jdouble popDouble(JNIEnv* env) const;
+  jint popInt(JNIEnv* env) const;
   void pushObject(JNIEnv* env, jlong object);
 
   jclass findClass(JNIEnv* env, const char* className);
@@ -97,6 +141,9 @@ private:
   JavaTypeMap m_javaValues;
   const JavaType* m_objectType;
   client_sock_t m_DebuggerSocket;
+  // builtin prototypes, which live as long as the heap.
+  void* m_typedArrayPrototypes[TYPED_ARRAY_KIND_COUNT];
+  TypedArrayClasses m_typedArrayClasses;
 };
 
 #endif // DUKTAPE_ANDROID_DUKTAPE_CONTEXT_H
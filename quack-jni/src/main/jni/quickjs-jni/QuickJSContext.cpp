@@ -1,6 +1,12 @@
 #include "QuickJSContext.h"
 #include <string>
 #include <vector>
+#include <chrono>
+#if defined(__APPLE__)
+#include <malloc/malloc.h>
+#else
+#include <malloc.h>
+#endif
 extern "C" {
 #include "../../../../../../quickjs/quickjs-libc.h"
 }
@@ -120,9 +126,78 @@ static struct JSClassDef quackObjectProxyClassDef = {
     .exotic = &quackObjectProxyMethods,
 };
 
+// the default QuickJS allocator, which also mirrors the allocated size into the context,
+// where it can be read without walking the heap, and reports allocations refused by the limit.
+// the bookkeeping overhead per allocation matches the default allocator.
+#define QUICKJS_MALLOC_OVERHEAD 8
+
+static size_t quickjsMallocUsableSize(const void *ptr) {
+#if defined(__APPLE__)
+    return malloc_size(ptr);
+#else
+    return malloc_usable_size(const_cast<void *>(ptr));
+#endif
+}
+
+static bool quickjsMallocAllowed(JSMallocState *s, size_t size) {
+    if (s->malloc_size + size <= s->malloc_limit)
+        return true;
+    reinterpret_cast<QuickJSContext *>(s->opaque)->onMemoryLimitExceeded();
+    return false;
+}
+
+static void *quickjsMalloc(JSMallocState *s, size_t size) {
+    if (!quickjsMallocAllowed(s, size))
+        return nullptr;
+    void *ptr = malloc(size);
+    if (!ptr)
+        return nullptr;
+    s->malloc_count++;
+    s->malloc_size += quickjsMallocUsableSize(ptr) + QUICKJS_MALLOC_OVERHEAD;
+    reinterpret_cast<QuickJSContext *>(s->opaque)->heapSize = s->malloc_size;
+    return ptr;
+}
+
+static void quickjsFree(JSMallocState *s, void *ptr) {
+    if (!ptr)
+        return;
+    s->malloc_count--;
+    s->malloc_size -= quickjsMallocUsableSize(ptr) + QUICKJS_MALLOC_OVERHEAD;
+    reinterpret_cast<QuickJSContext *>(s->opaque)->heapSize = s->malloc_size;
+    free(ptr);
+}
+
+static void *quickjsRealloc(JSMallocState *s, void *ptr, size_t size) {
+    if (!ptr) {
+        if (size == 0)
+            return nullptr;
+        return quickjsMalloc(s, size);
+    }
+    if (size == 0) {
+        quickjsFree(s, ptr);
+        return nullptr;
+    }
+    size_t oldSize = quickjsMallocUsableSize(ptr);
+    if (size > oldSize && !quickjsMallocAllowed(s, size - oldSize))
+        return nullptr;
+    ptr = realloc(ptr, size);
+    if (!ptr)
+        return nullptr;
+    s->malloc_size += quickjsMallocUsableSize(ptr) - oldSize;
+    reinterpret_cast<QuickJSContext *>(s->opaque)->heapSize = s->malloc_size;
+    return ptr;
+}
+
+static const JSMallocFunctions quickjsMallocFunctions = {
+    quickjsMalloc,
+    quickjsFree,
+    quickjsRealloc,
+    quickjsMallocUsableSize,
+};
+
 QuickJSContext::QuickJSContext(JavaVM* javaVM, jobject javaQuack):
     javaVM(javaVM) {
-    runtime = JS_NewRuntime();
+    runtime = JS_NewRuntime2(&quickjsMallocFunctions, this);
     ctx = JS_NewContext(runtime);
 
     // test
@@ -144,6 +219,12 @@ QuickJSContext::QuickJSContext(JavaVM* javaVM, jobject javaQuack):
     uint8ArrayPrototype = JS_GetPropertyStr(ctx, uint8ArrayConstructor, "prototype");
     auto arrayBufferConstructor = hold(JS_GetPropertyStr(ctx, global, "ArrayBuffer"));
     arrayBufferPrototype = JS_GetPropertyStr(ctx, arrayBufferConstructor, "prototype");
+    for (int i = 0; i < TYPED_ARRAY_KIND_COUNT; i++) {
+        typedArrayConstructors[i] = JS_GetPropertyStr(ctx, global, TYPED_ARRAY_NAMES[i]);
+        typedArrayPrototypes[i] = JS_GetPropertyStr(ctx, typedArrayConstructors[i], "prototype");
+    }
+    auto dataViewConstructor = hold(JS_GetPropertyStr(ctx, global, "DataView"));
+    dataViewPrototype = JS_GetPropertyStr(ctx, dataViewConstructor, "prototype");
 
     const char *thrower_str = "(function() { try { throw new Error(); } catch (e) { return e; } })";
     thrower_function = JS_Eval(ctx, thrower_str, strlen(thrower_str), "<thrower>", JS_EVAL_TYPE_GLOBAL);
@@ -183,12 +264,18 @@ QuickJSContext::QuickJSContext(JavaVM* javaVM, jobject javaQuack):
     // ByteBuffer
     byteBufferClass = findClass(env, "java/nio/ByteBuffer");
     byteBufferAllocateDirect = env->GetStaticMethodID(byteBufferClass, "allocateDirect", "(I)Ljava/nio/ByteBuffer;");
+    byteBufferArray = env->GetMethodID(byteBufferClass, "array", "()[B");
+    byteBufferArrayOffset = env->GetMethodID(byteBufferClass, "arrayOffset", "()I");
+    byteBufferHasArray = env->GetMethodID(byteBufferClass, "hasArray", "()Z");
+    byteBufferDuplicate = env->GetMethodID(byteBufferClass, "duplicate", "()Ljava/nio/ByteBuffer;");
+    byteBufferGetArray = env->GetMethodID(byteBufferClass, "get", "([B)Ljava/nio/ByteBuffer;");
     auto bufferClass = env->FindClass("java/nio/Buffer");
     bufferGetPosition = env->GetMethodID(bufferClass, "position", "()I");
     bufferGetLimit = env->GetMethodID(bufferClass, "limit", "()I");
     bufferSetPosition = env->GetMethodID(bufferClass, "position", "(I)Ljava/nio/Buffer;");
     bufferClear = env->GetMethodID(bufferClass, "clear", "()Ljava/nio/Buffer;");
     env->DeleteLocalRef(bufferClass);
+    typedArrayClasses.init(env);
 
     // Quack
     quackClass = findClass(env, "com/koushikdutta/quack/QuackContext");
@@ -199,6 +286,7 @@ QuickJSContext::QuickJSContext(JavaVM* javaVM, jobject javaQuack):
     quackConstructMethod = env->GetMethodID(quackClass, "quackConstruct", "(Lcom/koushikdutta/quack/QuackObject;[Ljava/lang/Object;)Ljava/lang/Object;");
     quackMapNativeMethod = env->GetMethodID(quackClass, "quackMapNative", "(Ljava/lang/Object;Ljava/lang/Object;)V");
     quackUnmapNativeMethod = env->GetMethodID(quackClass, "quackUnmapNative", "(Ljava/lang/Object;)Ljava/lang/Object;");
+    quackTypedArrayViewMethod = env->GetMethodID(quackClass, "quackTypedArrayView", "(Ljava/nio/ByteBuffer;ILjava/lang/Object;)Ljava/lang/Object;");
     quackGetNativePointer = env->GetMethodID(quackClass, "getNativePointer", "(Lcom/koushikdutta/quack/QuackJavaScriptObject;)J");
 
     quackObjectClass = findClass(env, "com/koushikdutta/quack/QuackObject");
@@ -226,13 +314,137 @@ QuickJSContext::QuickJSContext(JavaVM* javaVM, jobject javaQuack):
     quackExceptionClass = findClass(env, "com/koushikdutta/quack/QuackException");
     addJSStack =env->GetStaticMethodID(quackExceptionClass, "addJSStack","(Ljava/lang/Throwable;Ljava/lang/String;)V");
     addJavaStack = env->GetStaticMethodID(quackExceptionClass, "addJavaStack", "(Ljava/lang/String;Ljava/lang/Throwable;)Ljava/lang/String;");
+
+    // module resolution, which replaces the file loader once the Java hooks are available.
+    quackNormalizeModuleMethod = env->GetMethodID(quackClass, "quackNormalizeModule", "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;");
+    quackLoadModuleMethod = env->GetMethodID(quackClass, "quackLoadModule", "(Ljava/lang/String;)Ljava/lang/Object;");
+    quackCachesModulesMethod = env->GetMethodID(quackClass, "quackCachesModules", "()Z");
+    quackCacheModuleMethod = env->GetMethodID(quackClass, "quackCacheModule", "(Ljava/lang/String;Ljava/lang/String;[B)V");
+    JS_SetModuleLoaderFunc(runtime, quickjsModuleNormalize, quickjsModuleLoader, this);
+    JS_SetInterruptHandler(runtime, quickjsInterruptHandler, this);
+}
+
+// QuickJS calls the interrupt handler every JS_INTERRUPT_COUNTER_INIT ticks (function calls and loop iterations).
+#define QUICKJS_INSTRUCTIONS_PER_INTERRUPT 10000
+
+int QuickJSContext::quickjsInterruptHandler(JSRuntime *rt, void *opaque) {
+    return reinterpret_cast<QuickJSContext *>(opaque)->checkInterrupt() ? 1 : 0;
+}
+
+void QuickJSContext::setInterruptBudget(JNIEnv *env, jlong maxNanos, jlong maxInstructions) {
+    interruptBudget.reset(maxNanos, maxInstructions, QUICKJS_INSTRUCTIONS_PER_INTERRUPT);
+}
+
+void QuickJSContext::setMemoryLimit(JNIEnv *env, jlong limit) {
+    JS_SetMemoryLimit(runtime, limit > 0 ? (size_t)limit : (size_t)-1);
+}
+
+// QuickJS collects when the allocated size crosses the threshold, and then raises it to
+// one and a half times the size of the heap.
+#define QUICKJS_DEFAULT_GC_THRESHOLD (256 * 1024)
+
+void QuickJSContext::setGCThreshold(JNIEnv *env, jlong threshold) {
+    JS_SetGCThreshold(runtime, threshold > 0 ? (size_t)threshold : QUICKJS_DEFAULT_GC_THRESHOLD);
+}
+
+jlong QuickJSContext::pollMemoryUsage(JNIEnv *env) {
+    // QuickJS runs its own collections as it allocates.
+    return (jlong)heapSize;
+}
+
+char *QuickJSContext::quickjsModuleNormalize(JSContext *ctx, const char *base_name, const char *name, void *opaque) {
+    return reinterpret_cast<QuickJSContext *>(opaque)->normalizeModule(base_name, name);
+}
+
+JSModuleDef *QuickJSContext::quickjsModuleLoader(JSContext *ctx, const char *name, void *opaque) {
+    return reinterpret_cast<QuickJSContext *>(opaque)->loadModule(name);
+}
+
+char *QuickJSContext::normalizeModule(const char *baseName, const char *name) {
+    JNIEnv *env = getEnvFromJavaVM(javaVM);
+    const auto jbaseName = LocalRefHolder(env, env->NewStringUTF(baseName));
+    const auto jname = LocalRefHolder(env, env->NewStringUTF(name));
+    const auto normalized = LocalRefHolder(env, env->CallObjectMethod(javaQuack, quackNormalizeModuleMethod, (jobject)jbaseName, (jobject)jname));
+    if (rethrowJavaExceptionToQuickJS(env))
+        return nullptr;
+    if (normalized == nullptr) {
+        JS_ThrowReferenceError(ctx, "could not resolve module '%s' from '%s'", name, baseName);
+        return nullptr;
+    }
+    // freed by QuickJS.
+    return js_strdup(ctx, ::toStdString(env, (jstring)(jobject)normalized).c_str());
+}
+
+JSModuleDef *QuickJSContext::loadModule(const char *name) {
+    JNIEnv *env = getEnvFromJavaVM(javaVM);
+    const auto jname = LocalRefHolder(env, env->NewStringUTF(name));
+    const auto loaded = LocalRefHolder(env, env->CallObjectMethod(javaQuack, quackLoadModuleMethod, (jobject)jname));
+    if (rethrowJavaExceptionToQuickJS(env))
+        return nullptr;
+    // without a module loader, modules are loaded from the file system.
+    if (loaded == nullptr)
+        return js_module_loader(ctx, name, nullptr);
+
+    JSValue module;
+    if (env->IsInstanceOf(loaded, stringClass)) {
+        std::string source = ::toStdString(env, (jstring)(jobject)loaded);
+        module = JS_Eval(ctx, source.c_str(), source.size(), name, JS_EVAL_TYPE_MODULE | JS_EVAL_FLAG_COMPILE_ONLY);
+        // the module cache gets the bytecode of this same module. compiling it again in this
+        // context would register a second module with the same name.
+        if (!JS_IsException(module) && env->CallBooleanMethod(javaQuack, quackCachesModulesMethod))
+            cacheModule(env, (jstring)(jobject)jname, (jobject)loaded, module);
+        if (rethrowJavaExceptionToQuickJS(env)) {
+            JS_FreeValue(ctx, module);
+            return nullptr;
+        }
+    }
+    else {
+        // bytecode cached by the module loader.
+        jbyteArray bytecode = (jbyteArray)(jobject)loaded;
+        jsize length = env->GetArrayLength(bytecode);
+        std::vector<uint8_t> buf((size_t)length);
+        env->GetByteArrayRegion(bytecode, 0, length, reinterpret_cast<jbyte *>(buf.data()));
+        module = JS_ReadObject(ctx, buf.data(), buf.size(), JS_READ_OBJ_BYTECODE);
+    }
+    if (JS_IsException(module))
+        return nullptr;
+
+    js_module_set_import_meta(ctx, module, 0, 0);
+    // the module is owned by the context, which keeps it loaded.
+    auto def = reinterpret_cast<JSModuleDef *>(JS_VALUE_GET_PTR(module));
+    JS_FreeValue(ctx, module);
+    return def;
+}
+
+void QuickJSContext::cacheModule(JNIEnv *env, jstring name, jobject source, JSValue module) {
+    size_t length;
+    uint8_t *buf = JS_WriteObject(ctx, &length, module, JS_WRITE_OBJ_BYTECODE);
+    // failing to cache is not fatal to the import.
+    if (buf == nullptr) {
+        JS_FreeValue(ctx, JS_GetException(ctx));
+        return;
+    }
+    const auto bytecode = LocalRefHolder(env, env->NewByteArray((jsize)length));
+    if (bytecode != nullptr) {
+        env->SetByteArrayRegion((jbyteArray)(jobject)bytecode, 0, (jsize)length, reinterpret_cast<const jbyte *>(buf));
+        env->CallVoidMethod(javaQuack, quackCacheModuleMethod, name, source, (jobject)bytecode);
+    }
+    js_free(ctx, buf);
 }
 
 QuickJSContext::~QuickJSContext() {
     JS_FreeValue(ctx, uint8ArrayPrototype);
     JS_FreeValue(ctx, uint8ArrayConstructor);
     JS_FreeValue(ctx, arrayBufferPrototype);
+    for (int i = 0; i < TYPED_ARRAY_KIND_COUNT; i++) {
+        JS_FreeValue(ctx, typedArrayConstructors[i]);
+        JS_FreeValue(ctx, typedArrayPrototypes[i]);
+    }
+    JS_FreeValue(ctx, dataViewPrototype);
     stash.clear();
+    for (JSAtom atom : internedAtoms) {
+        JS_FreeAtom(ctx, atom);
+    }
     JS_FreeValue(ctx, thrower_function);
     js_debugger_free(runtime, js_debugger_info(runtime));
     JS_FreeContext(ctx);
@@ -331,6 +543,73 @@ JSValue QuickJSContext::toObject(JNIEnv *env, jobject value) {
             value = tempHolder;
             clazz = env->GetObjectClass(value);
         }
+        else {
+            // heap buffers are copied once, straight out of the backing array.
+            // read-only heap buffers don't expose their array, and are read through a
+            // duplicate, which leaves the position of the original untouched.
+            int position = env->CallIntMethod(value, bufferGetPosition);
+            int limit = env->CallIntMethod(value, bufferGetLimit);
+            JSValue lengthArg = JS_NewInt32(ctx, limit - position);
+            JSValue typedArray = JS_CallConstructor(ctx, uint8ArrayConstructor, 1, &lengthArg);
+            if (JS_IsException(typedArray))
+                return typedArray;
+
+            size_t ab_size;
+            auto ab = hold(JS_GetTypedArrayBuffer(ctx, typedArray, nullptr, nullptr, nullptr));
+            uint8_t *ab_ptr = JS_GetArrayBuffer(ctx, &ab_size, ab);
+            jbyteArray array;
+            int offset;
+            if (env->CallBooleanMethod(value, byteBufferHasArray)) {
+                array = (jbyteArray)env->CallObjectMethod(value, byteBufferArray);
+                offset = env->CallIntMethod(value, byteBufferArrayOffset) + position;
+            }
+            else {
+                array = env->NewByteArray(limit - position);
+                offset = 0;
+                if (array != nullptr) {
+                    LocalRefHolder duplicate(env, env->CallObjectMethod(value, byteBufferDuplicate));
+                    if (duplicate != nullptr)
+                        env->DeleteLocalRef(env->CallObjectMethod(duplicate, byteBufferGetArray, array));
+                }
+            }
+            if (array == nullptr || env->ExceptionCheck()) {
+                if (array != nullptr)
+                    env->DeleteLocalRef(array);
+                JS_FreeValue(ctx, typedArray);
+                if (!rethrowJavaExceptionToQuickJS(env))
+                    JS_ThrowInternalError(ctx, "ByteBuffer contents are unavailable");
+                return JS_EXCEPTION;
+            }
+            env->GetByteArrayRegion(array, offset, limit - position, reinterpret_cast<jbyte *>(ab_ptr));
+            env->DeleteLocalRef(array);
+            return typedArray;
+        }
+    }
+    else {
+        // direct typed buffers in native byte order are sent as the matching typed array
+        // over the same memory.
+        int kind = typedArrayClasses.getBufferKind(env, value);
+        if (kind >= 0) {
+            // typed arrays mapped to typed buffers in Java
+            auto nativeValue = env->CallObjectMethod(javaQuack, quackUnmapNativeMethod, value);
+            tempHolder = LocalRefHolder(env, nativeValue);
+            if (nativeValue == nullptr) {
+                size_t elementSize = TYPED_ARRAY_ELEMENT_SIZES[kind];
+                int position = env->CallIntMethod(value, bufferGetPosition);
+                int limit = env->CallIntMethod(value, bufferGetLimit);
+                auto opaque = new ByteBufferOpaque();
+                opaque->context = this;
+                opaque->buffer = env->NewGlobalRef(value);
+                auto buffer = hold(JS_NewArrayBuffer(ctx,
+                    reinterpret_cast<uint8_t *>(env->GetDirectBufferAddress(value)) + position * elementSize,
+                    (size_t)(limit - position) * elementSize, ByteBufferFree, opaque, 0));
+                JSValue args[] = { (JSValue)buffer };
+                return JS_CallConstructor(ctx, typedArrayConstructors[kind], 1, args);
+            }
+
+            value = tempHolder;
+            clazz = env->GetObjectClass(value);
+        }
     }
 
     if (env->IsAssignableFrom(clazz, quackjsonObjectClass)) {
@@ -487,20 +766,62 @@ jobject QuickJSContext::toObject(JNIEnv *env, JSValue value) {
         javaThis = byteBuffer;
         trackJavaScriptObjectInstance = false;
     }
-    else if (JS_VALUE_GET_PTR((JSValue)prototype) == JS_VALUE_GET_PTR(uint8ArrayPrototype)) {
-        size_t offset;
-        size_t size;
-        size_t bpe;
-        auto ab = hold(JS_GetTypedArrayBuffer(ctx, value, &offset, &size, &bpe));
-
-        size_t ab_size;
-        uint8_t *ab_ptr = JS_GetArrayBuffer(ctx, &ab_size, ab);
-
-        jobject byteBuffer = env->NewDirectByteBuffer(ab_ptr + offset, size);
-        // this holds a weak ref to the DirectByteBuffer and a strong ref to the QuickJS Uint8Array.
-        env->CallVoidMethod(javaQuack, quackMapNativeMethod, byteBuffer, javaThis);
-        javaThis = byteBuffer;
-        trackJavaScriptObjectInstance = false;
+    else {
+        // typed arrays and DataViews are received as direct buffers over the same memory:
+        // a ByteBuffer for byte elements and DataViews, otherwise the matching typed buffer
+        // (ie, an IntBuffer for an Int32Array).
+        int kind = -1;
+        for (int i = 0; i < TYPED_ARRAY_KIND_COUNT; i++) {
+            if (JS_VALUE_GET_PTR((JSValue)prototype) == JS_VALUE_GET_PTR(typedArrayPrototypes[i])) {
+                kind = i;
+                break;
+            }
+        }
+        bool isDataView = JS_VALUE_GET_PTR((JSValue)prototype) == JS_VALUE_GET_PTR(dataViewPrototype);
+
+        uint8_t *data = nullptr;
+        size_t size = 0;
+        if (kind >= 0) {
+            size_t offset;
+            size_t bpe;
+            auto ab = hold(JS_GetTypedArrayBuffer(ctx, value, &offset, &size, &bpe));
+            size_t ab_size;
+            uint8_t *ab_ptr = JS_GetArrayBuffer(ctx, &ab_size, ab);
+            if (ab_ptr != nullptr)
+                data = ab_ptr + offset;
+        }
+        else if (isDataView) {
+            auto ab = hold(JS_GetPropertyStr(ctx, value, "buffer"));
+            int64_t offset = 0;
+            int64_t length = 0;
+            JS_ToInt64(ctx, &offset, hold(JS_GetPropertyStr(ctx, value, "byteOffset")));
+            JS_ToInt64(ctx, &length, hold(JS_GetPropertyStr(ctx, value, "byteLength")));
+            size_t ab_size;
+            uint8_t *ab_ptr = JS_GetArrayBuffer(ctx, &ab_size, ab);
+            if (ab_ptr != nullptr) {
+                data = ab_ptr + offset;
+                size = (size_t)length;
+            }
+        }
+        // a detached buffer throws, and remains a JavaScriptObject.
+        if (data == nullptr && (kind >= 0 || isDataView))
+            JS_FreeValue(ctx, JS_GetException(ctx));
+
+        if (data != nullptr) {
+            jobject byteBuffer = env->NewDirectByteBuffer(data, size);
+            if (kind > TYPED_ARRAY_UINT8_CLAMPED) {
+                // the typed view holds a weak ref to the DirectByteBuffer, and is mapped to the typed array.
+                jobject view = env->CallObjectMethod(javaQuack, quackTypedArrayViewMethod, byteBuffer, (jint)kind, javaThis);
+                env->DeleteLocalRef(byteBuffer);
+                javaThis = view;
+            }
+            else {
+                // this holds a weak ref to the DirectByteBuffer and a strong ref to the QuickJS typed array.
+                env->CallVoidMethod(javaQuack, quackMapNativeMethod, byteBuffer, javaThis);
+                javaThis = byteBuffer;
+            }
+            trackJavaScriptObjectInstance = false;
+        }
     }
 
     // set the finalizer on the twin to release the tracked JavaScriptObject
@@ -531,6 +852,24 @@ jobject QuickJSContext::toObjectCheckQuickJSError(JNIEnv *env, JSValue value) {
     return nullptr;
 }
 
+jdouble QuickJSContext::toDoubleCheckQuickJSError(JNIEnv *env, JSValue value) {
+    double ret;
+    if (!JS_IsException(value) && JS_ToFloat64(ctx, &ret, value) >= 0)
+        return ret;
+    auto exception = hold(JS_GetException(ctx));
+    rethrowQuickJSErrorToJava(env, exception);
+    return 0;
+}
+
+jint QuickJSContext::toIntCheckQuickJSError(JNIEnv *env, JSValue value) {
+    int32_t ret;
+    if (!JS_IsException(value) && JS_ToInt32(ctx, &ret, value) >= 0)
+        return ret;
+    auto exception = hold(JS_GetException(ctx));
+    rethrowQuickJSErrorToJava(env, exception);
+    return 0;
+}
+
 jobject QuickJSContext::evaluateInternal(JNIEnv *env, jstring code, jstring filename, int flags) {
     auto codeStr = env->GetStringUTFChars(code, 0);
     size_t len = strlen(codeStr);
@@ -559,6 +898,42 @@ jobject QuickJSContext::compile(JNIEnv* env, jstring code, jstring filename) {
     return toObjectCheckQuickJSError(env, result);
 }
 
+jbyteArray QuickJSContext::compileBytecode(JNIEnv* env, jstring code, jstring filename, jboolean module) {
+    std::string source = ::toStdString(env, code);
+    std::string fileName = ::toStdString(env, filename);
+    int flags = (module ? JS_EVAL_TYPE_MODULE : JS_EVAL_TYPE_GLOBAL) | JS_EVAL_FLAG_COMPILE_ONLY;
+    auto compiled = hold(JS_Eval(ctx, source.c_str(), source.size(), fileName.c_str(), flags));
+    if (JS_IsException(compiled)) {
+        toObjectCheckQuickJSError(env, compiled);
+        return nullptr;
+    }
+
+    size_t length;
+    uint8_t *buf = JS_WriteObject(ctx, &length, compiled, JS_WRITE_OBJ_BYTECODE);
+    if (buf == nullptr) {
+        toObjectCheckQuickJSError(env, JS_EXCEPTION);
+        return nullptr;
+    }
+    jbyteArray ret = env->NewByteArray((jsize)length);
+    if (ret != nullptr)
+        env->SetByteArrayRegion(ret, 0, (jsize)length, reinterpret_cast<const jbyte *>(buf));
+    js_free(ctx, buf);
+    return ret;
+}
+
+jobject QuickJSContext::evaluateBytecode(JNIEnv* env, jbyteArray bytecode) {
+    jsize length = env->GetArrayLength(bytecode);
+    std::vector<uint8_t> buf((size_t)length);
+    env->GetByteArrayRegion(bytecode, 0, length, reinterpret_cast<jbyte *>(buf.data()));
+
+    JSValue function = JS_ReadObject(ctx, buf.data(), buf.size(), JS_READ_OBJ_BYTECODE);
+    if (JS_IsException(function))
+        return toObjectCheckQuickJSError(env, function);
+    // the function is freed by the evaluation.
+    auto result = hold(JS_EvalFunction(ctx, function));
+    return toObjectCheckQuickJSError(env, result);
+}
+
 jobject QuickJSContext::getGlobalObject(JNIEnv *env) {
     return toObject(env, hold(JS_GetGlobalObject(ctx)));
 }
@@ -620,6 +995,25 @@ jobject QuickJSContext::call(JNIEnv *env, jlong object, jobjectArray args) {
     return callInternal(env, func, global, args);
 }
 
+jdouble QuickJSContext::callDouble(JNIEnv *env, jlong object, jdoubleArray args) {
+    auto global = hold(JS_GetGlobalObject(ctx));
+    auto func = toValueAsLocal(object);
+
+    std::vector<JSValue> valueArgs;
+    if (args != nullptr) {
+        int length = env->GetArrayLength(args);
+        jdouble* elements = env->GetDoubleArrayElements(args, nullptr);
+        for (int i = 0; i < length; i++) {
+            // numbers are not reference counted, and need not be freed.
+            valueArgs.push_back(JS_NewFloat64(ctx, elements[i]));
+        }
+        env->ReleaseDoubleArrayElements(args, elements, JNI_ABORT);
+    }
+
+    auto ret = hold(JS_Call(ctx, func, global, valueArgs.size(), valueArgs.data()));
+    return toDoubleCheckQuickJSError(env, ret);
+}
+
 jobject QuickJSContext::callProperty(JNIEnv *env, jlong object, jobject property, jobjectArray args) {
     auto thiz = toValueAsLocal(object);
     auto propertyJSValue = hold(toObject(env, property));
@@ -630,6 +1024,12 @@ jobject QuickJSContext::callProperty(JNIEnv *env, jlong object, jobject property
     return callInternal(env, func, thiz, args);
 }
 
+jobject QuickJSContext::callPropertyInterned(JNIEnv *env, jlong object, jlong key, jobjectArray args) {
+    auto thiz = toValueAsLocal(object);
+    auto func = hold(JS_GetProperty(ctx, thiz, (JSAtom)key));
+    return callInternal(env, func, thiz, args);
+}
+
 jobject QuickJSContext::callMethod(JNIEnv *env, jlong method, jobject object, jobjectArray args) {
     auto thiz = hold(toObject(env, object));
     auto func = toValueAsLocal(method);
@@ -665,6 +1065,175 @@ jboolean QuickJSContext::setKeyInteger(JNIEnv* env, jlong object, jint index, jo
     return checkQuickJSErrorAndThrow(env, JS_SetPropertyUint32(ctx, thiz, (uint32_t)index, JS_DupValue(ctx, set)));
 }
 
+jdouble QuickJSContext::getKeyStringDouble(JNIEnv* env, jlong object, jstring key) {
+    auto keyStr = env->GetStringUTFChars(key, 0);
+    auto value = hold(JS_GetPropertyStr(ctx, toValueAsLocal(object), keyStr));
+    env->ReleaseStringUTFChars(key, keyStr);
+    return toDoubleCheckQuickJSError(env, value);
+}
+
+jdouble QuickJSContext::getKeyIntegerDouble(JNIEnv* env, jlong object, jint index) {
+    return toDoubleCheckQuickJSError(env, hold(JS_GetPropertyUint32(ctx, toValueAsLocal(object), (uint32_t)index)));
+}
+
+jint QuickJSContext::getKeyStringInt(JNIEnv* env, jlong object, jstring key) {
+    auto keyStr = env->GetStringUTFChars(key, 0);
+    auto value = hold(JS_GetPropertyStr(ctx, toValueAsLocal(object), keyStr));
+    env->ReleaseStringUTFChars(key, keyStr);
+    return toIntCheckQuickJSError(env, value);
+}
+
+jint QuickJSContext::getKeyIntegerInt(JNIEnv* env, jlong object, jint index) {
+    return toIntCheckQuickJSError(env, hold(JS_GetPropertyUint32(ctx, toValueAsLocal(object), (uint32_t)index)));
+}
+
+jboolean QuickJSContext::setKeyStringDouble(JNIEnv* env, jlong object, jstring key, jdouble value) {
+    auto keyStr = env->GetStringUTFChars(key, 0);
+    int ret = JS_SetPropertyStr(ctx, toValueAsLocal(object), keyStr, JS_NewFloat64(ctx, value));
+    env->ReleaseStringUTFChars(key, keyStr);
+    return checkQuickJSErrorAndThrow(env, ret);
+}
+
+jboolean QuickJSContext::setKeyIntegerDouble(JNIEnv* env, jlong object, jint index, jdouble value) {
+    return checkQuickJSErrorAndThrow(env, JS_SetPropertyUint32(ctx, toValueAsLocal(object), (uint32_t)index, JS_NewFloat64(ctx, value)));
+}
+
+jboolean QuickJSContext::setKeyStringInt(JNIEnv* env, jlong object, jstring key, jint value) {
+    auto keyStr = env->GetStringUTFChars(key, 0);
+    int ret = JS_SetPropertyStr(ctx, toValueAsLocal(object), keyStr, JS_NewInt32(ctx, value));
+    env->ReleaseStringUTFChars(key, keyStr);
+    return checkQuickJSErrorAndThrow(env, ret);
+}
+
+jboolean QuickJSContext::setKeyIntegerInt(JNIEnv* env, jlong object, jint index, jint value) {
+    return checkQuickJSErrorAndThrow(env, JS_SetPropertyUint32(ctx, toValueAsLocal(object), (uint32_t)index, JS_NewInt32(ctx, value)));
+}
+
+jobjectArray QuickJSContext::getKeys(JNIEnv* env, jlong object, jobjectArray keys) {
+    auto thiz = toValueAsLocal(object);
+    jsize length = env->GetArrayLength(keys);
+    jobjectArray ret = env->NewObjectArray(length, objectClass, nullptr);
+    for (jsize i = 0; i < length; i++) {
+        auto key = LocalRefHolder(env, env->GetObjectArrayElement(keys, i));
+        auto keyStr = env->GetStringUTFChars((jstring)(jobject)key, 0);
+        auto value = hold(JS_GetPropertyStr(ctx, thiz, keyStr));
+        env->ReleaseStringUTFChars((jstring)(jobject)key, keyStr);
+        jobject element = toObjectCheckQuickJSError(env, value);
+        if (env->ExceptionCheck()) {
+            env->DeleteLocalRef(ret);
+            return nullptr;
+        }
+        env->SetObjectArrayElement(ret, i, element);
+        env->DeleteLocalRef(element);
+    }
+    return ret;
+}
+
+jboolean QuickJSContext::setKeys(JNIEnv* env, jlong object, jobjectArray keys, jobjectArray values) {
+    auto thiz = toValueAsLocal(object);
+    jsize length = env->GetArrayLength(keys);
+    jboolean ret = JNI_TRUE;
+    for (jsize i = 0; i < length; i++) {
+        auto key = LocalRefHolder(env, env->GetObjectArrayElement(keys, i));
+        auto value = LocalRefHolder(env, env->GetObjectArrayElement(values, i));
+        auto set = hold(toObject(env, value));
+        auto keyStr = env->GetStringUTFChars((jstring)(jobject)key, 0);
+        int result = JS_SetPropertyStr(ctx, thiz, keyStr, JS_DupValue(ctx, set));
+        env->ReleaseStringUTFChars((jstring)(jobject)key, keyStr);
+        if (!checkQuickJSErrorAndThrow(env, result)) {
+            if (env->ExceptionCheck())
+                return JNI_FALSE;
+            ret = JNI_FALSE;
+        }
+    }
+    return ret;
+}
+
+jobject QuickJSContext::newTypedArray(JNIEnv* env, jobject array) {
+    int kind = typedArrayClasses.getArrayKind(env, array);
+    if (kind < 0)
+        return nullptr;
+
+    jsize length = env->GetArrayLength((jarray)array);
+    size_t size = length * TYPED_ARRAY_ELEMENT_SIZES[kind];
+    JSValue lengthArg = JS_NewInt32(ctx, length);
+    auto typedArray = hold(JS_CallConstructor(ctx, typedArrayConstructors[kind], 1, &lengthArg));
+    if (JS_IsException(typedArray))
+        return toObjectCheckQuickJSError(env, typedArray);
+
+    size_t offset;
+    size_t byteLength;
+    size_t bpe;
+    auto ab = hold(JS_GetTypedArrayBuffer(ctx, typedArray, &offset, &byteLength, &bpe));
+    if (JS_IsException(ab))
+        return toObjectCheckQuickJSError(env, ab);
+    size_t ab_size;
+    uint8_t *ab_ptr = JS_GetArrayBuffer(ctx, &ab_size, ab);
+    if (ab_ptr == nullptr)
+        return toObjectCheckQuickJSError(env, JS_EXCEPTION);
+
+    // no JavaScript may run while the Java array is pinned.
+    void *elements = env->GetPrimitiveArrayCritical((jarray)array, nullptr);
+    memcpy(ab_ptr + offset, elements, size);
+    env->ReleasePrimitiveArrayCritical((jarray)array, elements, JNI_ABORT);
+
+    return toObject(env, typedArray);
+}
+
+jobject QuickJSContext::getTypedArray(JNIEnv* env, jlong object) {
+    auto value = toValueAsLocal(object);
+    auto prototype = hold(JS_GetPrototype(ctx, value));
+    int kind = -1;
+    for (int i = 0; i < TYPED_ARRAY_KIND_COUNT; i++) {
+        if (JS_VALUE_GET_PTR((JSValue)prototype) == JS_VALUE_GET_PTR(typedArrayPrototypes[i])) {
+            kind = i;
+            break;
+        }
+    }
+    if (kind < 0)
+        return nullptr;
+
+    size_t offset;
+    size_t size;
+    size_t bpe;
+    auto ab = hold(JS_GetTypedArrayBuffer(ctx, value, &offset, &size, &bpe));
+    if (JS_IsException(ab)) {
+        JS_FreeValue(ctx, JS_GetException(ctx));
+        return nullptr;
+    }
+    size_t ab_size;
+    uint8_t *ab_ptr = JS_GetArrayBuffer(ctx, &ab_size, ab);
+    // detached
+    if (ab_ptr == nullptr)
+        return nullptr;
+
+    jarray array = TypedArrayClasses::newArray(env, kind, (jsize)(size / TYPED_ARRAY_ELEMENT_SIZES[kind]));
+    if (array == nullptr)
+        return nullptr;
+    void *elements = env->GetPrimitiveArrayCritical(array, nullptr);
+    memcpy(elements, ab_ptr + offset, size);
+    env->ReleasePrimitiveArrayCritical(array, elements, 0);
+    return array;
+}
+
+jlong QuickJSContext::internKey(JNIEnv* env, jstring key) {
+    auto keyStr = env->GetStringUTFChars(key, 0);
+    JSAtom atom = JS_NewAtom(ctx, keyStr);
+    env->ReleaseStringUTFChars(key, keyStr);
+    internedAtoms.push_back(atom);
+    return (jlong)atom;
+}
+
+jobject QuickJSContext::getKeyInterned(JNIEnv* env, jlong object, jlong key) {
+    return toObjectCheckQuickJSError(env, hold(JS_GetProperty(ctx, toValueAsLocal(object), (JSAtom)key)));
+}
+
+jboolean QuickJSContext::setKeyInterned(JNIEnv* env, jlong object, jlong key, jobject value) {
+    auto thiz = toValueAsLocal(object);
+    auto set = hold(toObject(env, value));
+    return checkQuickJSErrorAndThrow(env, JS_SetProperty(ctx, thiz, (JSAtom)key, JS_DupValue(ctx, set)));
+}
+
 jboolean QuickJSContext::setKeyInternal(JNIEnv* env, JSValue thiz, jobject key, jobject value) {
     auto set = hold(toObject(env, value));
     auto propertyJSValue = hold(toObject(env, key));
@@ -858,8 +1427,17 @@ jboolean QuickJSContext::hasPendingJobs(JNIEnv *env) {
     return (jboolean)(JS_IsJobPending(JS_GetRuntime(ctx)) ? JNI_TRUE : JNI_FALSE);
 }
 
-void QuickJSContext::runJobs(JNIEnv *env) {
+jint QuickJSContext::runJobs(JNIEnv *env, jint maxJobs, jlong maxNanos) {
+    auto start = std::chrono::steady_clock::now();
+    jint count = 0;
     while (JS_IsJobPending(runtime)) {
+        if (maxJobs > 0 && count >= maxJobs)
+            break;
+        if (maxNanos > 0 && count > 0
+            && std::chrono::duration_cast<std::chrono::nanoseconds>(std::chrono::steady_clock::now() - start).count() >= maxNanos)
+            break;
+        count++;
+
         JSContext *pctx;
 //        if (JS_ExecutePendingJob(runtime, &pctx))
 //            JS_FreeValue(ctx, JS_GetException(ctx));
@@ -869,6 +1447,7 @@ void QuickJSContext::runJobs(JNIEnv *env) {
         if (JS_ExecutePendingJob(runtime, &pctx) < 0)
             printf("uhhh\n");
     }
+    return count;
 }
 
 jlong QuickJSContext::getHeapSize(JNIEnv* env) {
@@ -877,6 +1456,24 @@ jlong QuickJSContext::getHeapSize(JNIEnv* env) {
     return (jlong)usage.memory_used_size;
 }
 
+jstring QuickJSContext::getBuildId(JNIEnv *env) {
+    // QuickJS has no version API, but the first byte of anything it writes is the
+    // bytecode format version.
+    size_t length;
+    uint8_t *buf = JS_WriteObject(ctx, &length, JS_NULL, 0);
+    int bytecodeVersion = buf != nullptr && length > 0 ? buf[0] : -1;
+    js_free(ctx, buf);
+#ifdef CONFIG_VERSION
+    std::string id = "quickjs " CONFIG_VERSION;
+#else
+    std::string id = "quickjs";
+#endif
+    id += " bytecode " + std::to_string(bytecodeVersion)
+            + " format " + std::to_string(QUACK_BYTECODE_FORMAT)
+            + " " + std::to_string(sizeof(void *) * 8) + " bit";
+    return env->NewStringUTF(id.c_str());
+}
+
 void QuickJSContext::waitForDebugger(JNIEnv *env, jstring connectionString) {
     js_debugger_wait_connection(ctx, ::toStdString(env, connectionString).c_str());
 }
@@ -7,6 +7,7 @@
 #include "../../../../../../quickjs/quickjs.h"
 #include "../../../../../../quickjs/quickjs-debugger.h"
 #include "../JSContext.h"
+#include "../TypedArrays.h"
 #include <vector>
 #include <map>
 
@@ -123,6 +124,8 @@ public:
 
     jobject toObject(JNIEnv *env, JSValue value);
     jobject toObjectCheckQuickJSError(JNIEnv *env, JSValue value);
+    jdouble toDoubleCheckQuickJSError(JNIEnv *env, JSValue value);
+    jint toIntCheckQuickJSError(JNIEnv *env, JSValue value);
     JSValue toObject(JNIEnv *env, jobject value);
  
     inline JSValueHolder toValueAsLocal(jlong object);
@@ -136,6 +139,8 @@ public:
     jobject evaluate(JNIEnv *env, jstring code, jstring filename) { return evaluateInternal(env, code, filename, JS_EVAL_TYPE_GLOBAL); }
     jobject evaluateModule(JNIEnv *env, jstring code, jstring filename) { return evaluateInternal(env, code, filename, JS_EVAL_TYPE_MODULE | JS_EVAL_FLAG_COMPILE_ONLY); }
     jobject compile(JNIEnv* env, jstring code, jstring filename);
+    jbyteArray compileBytecode(JNIEnv* env, jstring code, jstring filename, jboolean module);
+    jobject evaluateBytecode(JNIEnv* env, jbyteArray bytecode);
 
     jobject getGlobalObject(JNIEnv *env);
     jstring stringify(JNIEnv *env, jlong object);
@@ -147,22 +152,52 @@ public:
     jboolean setKeyInteger(JNIEnv* env, jlong object, jint index, jobject value);
     jboolean setKeyInternal(JNIEnv* env, JSValue thiz, jobject key, jobject value);
     jboolean setKeyObject(JNIEnv* env, jlong object, jobject key, jobject value);
+    jdouble getKeyStringDouble(JNIEnv* env, jlong object, jstring key);
+    jdouble getKeyIntegerDouble(JNIEnv* env, jlong object, jint index);
+    jint getKeyStringInt(JNIEnv* env, jlong object, jstring key);
+    jint getKeyIntegerInt(JNIEnv* env, jlong object, jint index);
+    jboolean setKeyStringDouble(JNIEnv* env, jlong object, jstring key, jdouble value);
+    jboolean setKeyIntegerDouble(JNIEnv* env, jlong object, jint index, jdouble value);
+    jboolean setKeyStringInt(JNIEnv* env, jlong object, jstring key, jint value);
+    jboolean setKeyIntegerInt(JNIEnv* env, jlong object, jint index, jint value);
+    jobjectArray getKeys(JNIEnv* env, jlong object, jobjectArray keys);
+    jboolean setKeys(JNIEnv* env, jlong object, jobjectArray keys, jobjectArray values);
+    jobject newTypedArray(JNIEnv* env, jobject array);
+    jobject getTypedArray(JNIEnv* env, jlong object);
+    jlong internKey(JNIEnv* env, jstring key);
+    jobject getKeyInterned(JNIEnv* env, jlong object, jlong key);
+    jboolean setKeyInterned(JNIEnv* env, jlong object, jlong key, jobject value);
 
     bool callArgs(JNIEnv *env, jobjectArray args, std::vector<JSValue> &valueArgs);
     jobject callInternal(JNIEnv *env, JSValue func, JSValue thiz, jobjectArray args);
     jobject callConstructor(JNIEnv *env, jlong object, jobjectArray args);
     jobject call(JNIEnv *env, jlong object, jobjectArray args);
+    jdouble callDouble(JNIEnv *env, jlong object, jdoubleArray args);
     jobject callProperty(JNIEnv *env, jlong object, jobject property, jobjectArray args);
+    jobject callPropertyInterned(JNIEnv *env, jlong object, jlong key, jobjectArray args);
     jobject callMethod(JNIEnv *env, jlong method, jobject object, jobjectArray args);
 
     jboolean hasPendingJobs(JNIEnv *env);
-    void runJobs(JNIEnv *env);
+    jint runJobs(JNIEnv *env, jint maxJobs, jlong maxNanos);
 
     void waitForDebugger(JNIEnv *env, jstring connectionString);
     void cooperateDebugger();
     jboolean isDebugging();
     void debuggerAppNotify(JNIEnv *env, jobjectArray args) {}
     jlong getHeapSize(JNIEnv* env);
+    jstring getBuildId(JNIEnv *env);
+    void setInterruptBudget(JNIEnv *env, jlong maxNanos, jlong maxInstructions);
+    static int quickjsInterruptHandler(JSRuntime *rt, void *opaque);
+    void setMemoryLimit(JNIEnv *env, jlong limit);
+    void setGCThreshold(JNIEnv *env, jlong threshold);
+    jlong pollMemoryUsage(JNIEnv *env);
+
+    // module hooks
+    static char *quickjsModuleNormalize(JSContext *ctx, const char *base_name, const char *name, void *opaque);
+    static JSModuleDef *quickjsModuleLoader(JSContext *ctx, const char *name, void *opaque);
+    char *normalizeModule(const char *baseName, const char *name);
+    JSModuleDef *loadModule(const char *name);
+    void cacheModule(JNIEnv *env, jstring name, jobject source, JSValue module);
 
     // QuackObject class traps
     int quickjs_has(jobject object, JSAtom atom);
@@ -179,7 +214,11 @@ public:
     jobject javaQuack;
     JSRuntime *runtime;
     JSContext *ctx;
+    // the allocated size of the runtime, mirrored by the tracked allocator.
+    size_t heapSize = 0;
     std::map<jlong, JSValueHolder> stash;
+    // atoms handed out by internKey, freed with the context.
+    std::vector<JSAtom> internedAtoms;
     JSValue thrower_function;
 
     jclass objectClass;
@@ -199,10 +238,20 @@ public:
     jmethodID quackApplyMethod;
     jmethodID quackMapNativeMethod;
     jmethodID quackUnmapNativeMethod;
+    jmethodID quackTypedArrayViewMethod;
+    jmethodID quackNormalizeModuleMethod;
+    jmethodID quackLoadModuleMethod;
+    jmethodID quackCachesModulesMethod;
+    jmethodID quackCacheModuleMethod;
     jmethodID quackConstructMethod;
     jmethodID javaScriptObjectConstructor;
     jmethodID javaObjectConstructor;
     jmethodID byteBufferAllocateDirect;
+    jmethodID byteBufferArray;
+    jmethodID byteBufferArrayOffset;
+    jmethodID byteBufferHasArray;
+    jmethodID byteBufferDuplicate;
+    jmethodID byteBufferGetArray;
     jmethodID bufferGetLimit;
     jmethodID bufferGetPosition;
     jmethodID bufferSetPosition;
@@ -236,6 +285,10 @@ public:
     JSValue uint8ArrayConstructor;
     JSValue arrayBufferPrototype;
     JSValue uint8ArrayPrototype;
+    JSValue typedArrayConstructors[TYPED_ARRAY_KIND_COUNT];
+    JSValue typedArrayPrototypes[TYPED_ARRAY_KIND_COUNT];
+    JSValue dataViewPrototype;
+    TypedArrayClasses typedArrayClasses;
 };
 
 #endif